@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import org.apache.commons.math3.random.MersenneTwister;
+
+import com.github.rinde.dynurg.Generator.ArrivalTimeSampling;
+import com.github.rinde.dynurg.Generator.TimeSeriesType;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.generator.ScenarioGenerator;
+
+/**
+ * Creates the scenario generators and scenarios that are used as input by the
+ * benchmarks. All scenarios are created with the settings of the
+ * {@link Generator}, only the number of orders is varied.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+final class BenchmarkScenarios {
+  /**
+   * Urgency (in ms) of all benchmark scenarios.
+   */
+  static final long URGENCY = 20 * 60 * 1000L;
+
+  private BenchmarkScenarios() {}
+
+  static long officeHoursLength() {
+    return Generator.officeHoursLength(URGENCY);
+  }
+
+  static ScenarioGenerator generator(TimeSeriesType type,
+      ArrivalTimeSampling sampling, int numOrders) {
+    return Generator.createGenerator(Generator.SCENARIO_LENGTH, URGENCY,
+        sampling.createTimeSeries(type, officeHoursLength(), numOrders,
+            Generator.uniformSineHeights()),
+        Generator.distinctLocationsSupplier().get());
+  }
+
+  static Scenario create(int numOrders, long seed) {
+    // conditional sampling always yields exactly numOrders orders
+    return generator(TimeSeriesType.HOMOGENOUS,
+        ArrivalTimeSampling.CONDITIONAL, numOrders)
+            .generate(new MersenneTwister(seed), "benchmark");
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.measure.Metrics;
+import com.google.common.primitives.Doubles;
+
+/**
+ * Benchmarks the dynamism and urgency measures. The dynamism computation of
+ * {@link DynamismComputationExample} is the same as that of {@link Metrics}
+ * and {@link DynamismKernel}, these two implementations are therefore
+ * compared.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class DynamismBenchmark {
+  @Param({ "50", "360", "1000" })
+  public int numOrders;
+
+  Scenario scenario;
+  long lengthOfDay;
+  List<Double> arrivalTimes;
+  double[] arrivalTimesArray;
+  DynamismKernel kernel;
+
+  /**
+   * Creates the scenario and its arrival times.
+   */
+  @Setup
+  public void setUp() {
+    scenario = BenchmarkScenarios.create(numOrders, 123L);
+    lengthOfDay = BenchmarkScenarios.officeHoursLength();
+    final List<Long> times = Metrics.getArrivalTimes(scenario);
+    arrivalTimesArray = new double[times.size()];
+    for (int i = 0; i < times.size(); i++) {
+      arrivalTimesArray[i] = times.get(i);
+    }
+    arrivalTimes = Doubles.asList(arrivalTimesArray);
+    kernel = new DynamismKernel(numOrders);
+  }
+
+  /**
+   * @return The dynamism computed by {@link Metrics}.
+   */
+  @Benchmark
+  public double metrics() {
+    return Metrics.measureDynamism(arrivalTimes, lengthOfDay);
+  }
+
+  /**
+   * @return The dynamism of the scenario computed by {@link Metrics}.
+   */
+  @Benchmark
+  public double metricsScenario() {
+    return Metrics.measureDynamism(scenario, lengthOfDay);
+  }
+
+  /**
+   * @return The dynamism computed by {@link DynamismKernel}.
+   */
+  @Benchmark
+  public double kernel() {
+    return kernel.measure(arrivalTimesArray, lengthOfDay);
+  }
+
+  /**
+   * @return The dynamism of the scenario computed by {@link DynamismKernel}.
+   */
+  @Benchmark
+  public double kernelScenario() {
+    return kernel.measure(scenario, lengthOfDay);
+  }
+
+  /**
+   * @return The dynamism computed by adding all arrival times to an
+   *         {@link OnlineDynamism} tracker.
+   */
+  @Benchmark
+  public double online() {
+    final OnlineDynamism tracker = new OnlineDynamism(lengthOfDay,
+        numOrders);
+    for (final double time : arrivalTimesArray) {
+      tracker.add(time);
+    }
+    return tracker.dynamism();
+  }
+
+  /**
+   * @return The urgency computed by {@link Metrics}.
+   */
+  @Benchmark
+  public StatisticalSummary urgency() {
+    return Metrics.measureUrgency(scenario);
+  }
+}
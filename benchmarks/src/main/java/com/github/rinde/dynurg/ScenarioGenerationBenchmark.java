@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.dynurg.Generator.ArrivalTimeSampling;
+import com.github.rinde.dynurg.Generator.TimeSeriesType;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.generator.ScenarioGenerator;
+
+/**
+ * Benchmarks the generation of a complete scenario for each arrival time
+ * process and sampling method used by {@link Generator}. Note that with
+ * {@link ArrivalTimeSampling#FILTERED} the time per scenario includes the
+ * time series that are rejected because they have the wrong number of orders.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ScenarioGenerationBenchmark {
+  @Param({ "50", "360", "1000" })
+  public int numOrders;
+
+  @Param({ "SINE", "HOMOGENOUS", "NORMAL", "UNIFORM" })
+  public String timeSeriesType;
+
+  @Param({ "FILTERED", "CONDITIONAL" })
+  public String arrivalTimes;
+
+  ScenarioGenerator generator;
+  RandomGenerator rng;
+
+  /**
+   * Creates the scenario generator.
+   */
+  @Setup
+  public void setUp() {
+    generator = BenchmarkScenarios.generator(
+        TimeSeriesType.valueOf(timeSeriesType),
+        ArrivalTimeSampling.valueOf(arrivalTimes), numOrders);
+    rng = new MersenneTwister(123L);
+  }
+
+  /**
+   * @return A newly generated scenario.
+   */
+  @Benchmark
+  public Scenario generate() {
+    return generator.generate(rng, "benchmark");
+  }
+}
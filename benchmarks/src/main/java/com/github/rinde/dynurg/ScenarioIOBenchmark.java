@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+
+/**
+ * Benchmarks the (de)serialization of scenarios, both in memory and to and
+ * from a file, in the JSON and in the binary format.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ScenarioIOBenchmark {
+  @Param({ "50", "360", "1000" })
+  public int numOrders;
+
+  Scenario scenario;
+  String serialized;
+  Path file;
+  Path binaryFile;
+
+  /**
+   * Creates the scenario and writes it to a temporary file.
+   * @throws IOException If the file can not be written.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    scenario = BenchmarkScenarios.create(numOrders, 123L);
+    serialized = ScenarioIO.write(scenario);
+    file = Files.createTempFile("dyn-urg-benchmark", ".scen");
+    ScenarioIO.write(scenario, file);
+    binaryFile = Files.createTempFile("dyn-urg-benchmark",
+        BinaryScenarioIO.EXTENSION);
+    BinaryScenarioIO.write(scenario, binaryFile);
+  }
+
+  /**
+   * Deletes the temporary file.
+   * @throws IOException If the file can not be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(binaryFile);
+  }
+
+  /**
+   * @return The serialized scenario.
+   */
+  @Benchmark
+  public String write() {
+    return ScenarioIO.write(scenario);
+  }
+
+  /**
+   * @return The deserialized scenario.
+   */
+  @Benchmark
+  public Scenario read() {
+    return ScenarioIO.read(serialized);
+  }
+
+  /**
+   * Writes the scenario to a file.
+   * @throws IOException If the file can not be written.
+   */
+  @Benchmark
+  public void writeFile() throws IOException {
+    ScenarioIO.write(scenario, file);
+  }
+
+  /**
+   * @return The scenario read from a file.
+   * @throws IOException If the file can not be read.
+   */
+  @Benchmark
+  public Scenario readFile() throws IOException {
+    return ScenarioIO.read(file);
+  }
+
+  /**
+   * Writes the scenario to a file in the binary format.
+   * @throws IOException If the file can not be written.
+   */
+  @Benchmark
+  public void writeBinaryFile() throws IOException {
+    BinaryScenarioIO.write(scenario, binaryFile);
+  }
+
+  /**
+   * @return The number of events of the scenario read from a binary file, all
+   *         events are decoded.
+   * @throws IOException If the file can not be read.
+   */
+  @Benchmark
+  public int readBinaryFile() throws IOException {
+    return BinaryScenarioIO.read(binaryFile).asList().size();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.dynurg.Generator.CustomTimeWindowGenerator;
+import com.github.rinde.dynurg.Generator.TimeWindowRandomness;
+import com.github.rinde.rinsim.core.pdptw.ParcelDTO;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.scenario.generator.ScenarioGenerator.TravelTimes;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Benchmarks {@link CustomTimeWindowGenerator}, time windows are generated for
+ * all orders of a scenario per invocation. Both sources of randomness are
+ * compared, see {@link TimeWindowRandomness}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TimeWindowBenchmark {
+  static final double AREA_WIDTH = 10d;
+  static final long SERVICE_DURATION = 5 * 60 * 1000L;
+
+  @Param({ "50", "360", "1000" })
+  public int numOrders;
+
+  @Param({ "LEGACY", "SPLIT_MIX" })
+  public TimeWindowRandomness randomness;
+
+  CustomTimeWindowGenerator generator;
+  TravelTimes travelTimes;
+  List<ParcelDTO.Builder> parcels;
+  long[] seeds;
+
+  /**
+   * Creates the orders for which time windows are generated.
+   */
+  @Setup
+  public void setUp() {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    final long officeHours = BenchmarkScenarios.officeHoursLength();
+    final ImmutableList.Builder<ParcelDTO.Builder> builder =
+        ImmutableList.builder();
+    seeds = new long[numOrders];
+    for (int i = 0; i < numOrders; i++) {
+      builder.add(ParcelDTO
+          .builder(randomPoint(rng), randomPoint(rng))
+          .orderAnnounceTime((long) (rng.nextDouble() * officeHours))
+          .pickupDuration(SERVICE_DURATION)
+          .deliveryDuration(SERVICE_DURATION));
+      seeds[i] = rng.nextLong();
+    }
+    parcels = builder.build();
+    generator = new CustomTimeWindowGenerator(BenchmarkScenarios.URGENCY,
+        randomness);
+    travelTimes = new EuclideanTravelTimes(
+        new Point(AREA_WIDTH / 2d, AREA_WIDTH / 2d), 50d);
+  }
+
+  /**
+   * Generates time windows for all orders.
+   * @return The last order, such that the generated time windows are used.
+   */
+  @Benchmark
+  public ParcelDTO.Builder generate() {
+    for (int i = 0; i < numOrders; i++) {
+      generator.generate(seeds[i], parcels.get(i), travelTimes,
+          Generator.SCENARIO_LENGTH);
+    }
+    return parcels.get(numOrders - 1);
+  }
+
+  static Point randomPoint(RandomGenerator rng) {
+    return new Point(rng.nextDouble() * AREA_WIDTH,
+        rng.nextDouble() * AREA_WIDTH);
+  }
+
+  // travel times in ms on a plane with distances in km
+  static class EuclideanTravelTimes implements TravelTimes {
+    final Point depot;
+    final double speedKmh;
+
+    EuclideanTravelTimes(Point d, double speed) {
+      depot = d;
+      speedKmh = speed;
+    }
+
+    @Override
+    public long getShortestTravelTime(Point from, Point to) {
+      return (long) Math.ceil(Point.distance(from, to) / speedKmh
+          * 60 * 60 * 1000);
+    }
+
+    @Override
+    public long getTravelTimeToNearestDepot(Point from) {
+      return getShortestTravelTime(from, depot);
+    }
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.github.rinde.rinsim.core.pdptw.ParcelDTO;
+import com.github.rinde.rinsim.core.pdptw.VehicleDTO;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.scenario.AddDepotEvent;
+import com.github.rinde.rinsim.scenario.AddParcelEvent;
+import com.github.rinde.rinsim.scenario.AddVehicleEvent;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+import com.github.rinde.rinsim.scenario.TimedEvent;
+import com.github.rinde.rinsim.util.TimeWindow;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Reads and writes scenarios in a compact binary format. Only the properties
+ * of a scenario (problem class, models, time window, etc.) are stored as JSON
+ * (see {@link ScenarioIO}), the events are stored as fixed size binary
+ * records. A file is memory mapped when it is read, its events are decoded
+ * directly from the mapped records. The result is a regular {@link Scenario},
+ * it can be serialized with {@link ScenarioIO} like any other scenario (e.g.
+ * to send it to a JPPF node).
+ * <p>
+ * All numbers are big endian. A file consists of:
+ * <ul>
+ * <li><code>int</code> magic number {@link #MAGIC},</li>
+ * <li><code>int</code> format version {@link #VERSION},</li>
+ * <li><code>int</code> length followed by the UTF-8 encoded JSON of the
+ * scenario without events,</li>
+ * <li><code>int</code> number of event types, followed by the enum class name
+ * and constant name of each type (see
+ * {@link java.io.DataOutput#writeUTF(String)}),</li>
+ * <li><code>int</code> number of events, followed by one record of
+ * {@link #RECORD_SIZE} bytes per event: kind (<code>byte</code>), time
+ * (<code>long</code>), event type index (<code>int</code>) and the payload of
+ * the kind, padded with zeros.</li>
+ * </ul>
+ * Supported events are {@link AddDepotEvent}, {@link AddVehicleEvent},
+ * {@link AddParcelEvent} and plain {@link TimedEvent}s, which are all the
+ * events of the generated scenarios.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class BinaryScenarioIO {
+  /**
+   * The magic number at the start of each file: 'DUSC'.
+   */
+  public static final int MAGIC = 0x44555343;
+
+  /**
+   * The current version of the format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The file extension of binary scenario files.
+   */
+  public static final String EXTENSION = ".bscen";
+
+  /**
+   * The size of an event record in bytes.
+   */
+  public static final int RECORD_SIZE = 105;
+
+  static final String TEXT_EXTENSION = ".scen";
+  static final byte TIMED_EVENT = 0;
+  static final byte ADD_DEPOT = 1;
+  static final byte ADD_VEHICLE = 2;
+  static final byte ADD_PARCEL = 3;
+  // kind + time + type index
+  static final int PAYLOAD_OFFSET = 13;
+
+  private BinaryScenarioIO() {}
+
+  /**
+   * Converts all <code>.scen</code> files in a directory to the binary format,
+   * the binary files are written next to the originals.
+   * @param args The directory, default is <code>files/dataset/</code>.
+   * @throws IOException If a file can not be read or written.
+   */
+  public static void main(String[] args) throws IOException {
+    final Path dir = Paths.get(args.length > 0 ? args[0] : "files/dataset/");
+    int converted = 0;
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+        "*" + TEXT_EXTENSION)) {
+      for (final Path file : files) {
+        write(ScenarioIO.read(file), binaryFile(file));
+        converted++;
+      }
+    }
+    System.out.println("Converted " + converted + " scenarios in " + dir);
+  }
+
+  /**
+   * Creates a reader that reads the binary version of a scenario file when it
+   * exists: for <code>x.scen</code> the file <code>x.bscen</code> is read if
+   * present, otherwise <code>x.scen</code> is read with {@link ScenarioIO}.
+   * Binary files can also be read directly.
+   * @return The reader.
+   */
+  public static Function<Path, Scenario> reader() {
+    return new Function<Path, Scenario>() {
+      @Override
+      public Scenario apply(Path input) {
+        try {
+          final Path binary = binaryFile(input);
+          if (Files.exists(binary)) {
+            return read(binary);
+          }
+          return ScenarioIO.read(input);
+        } catch (final IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+  }
+
+  static Path binaryFile(Path file) {
+    final String name = file.getFileName().toString();
+    if (name.endsWith(EXTENSION)) {
+      return file;
+    }
+    final int dot = name.lastIndexOf('.');
+    return file.resolveSibling((dot < 0 ? name : name.substring(0, dot))
+        + EXTENSION);
+  }
+
+  /**
+   * Writes a scenario in the binary format.
+   * @param scenario The scenario.
+   * @param file The file to write to.
+   * @throws IOException If the file can not be written.
+   * @throws IllegalArgumentException If the scenario contains an event that is
+   *           not supported.
+   */
+  public static void write(Scenario scenario, Path file) throws IOException {
+    final List<Enum<?>> types = ImmutableList.copyOf(scenario
+        .getPossibleEventTypes());
+    final Scenario properties = Scenario.builder(scenario.getProblemClass())
+        .copyProperties(scenario)
+        .clearEvents()
+        .build();
+    final byte[] json = ScenarioIO.write(properties).getBytes(
+        StandardCharsets.UTF_8);
+
+    try (final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(json.length);
+      out.write(json);
+      out.writeInt(types.size());
+      for (final Enum<?> type : types) {
+        out.writeUTF(type.getDeclaringClass().getName());
+        out.writeUTF(type.name());
+      }
+      out.writeInt(scenario.size());
+      final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+      for (final TimedEvent event : scenario.asList()) {
+        record.clear();
+        encode(event, types, record);
+        out.write(record.array());
+      }
+    }
+  }
+
+  /**
+   * Reads a scenario that was written in the binary format. The file is
+   * memory mapped and all events are decoded.
+   * @param file The file to read.
+   * @return The scenario.
+   * @throws IOException If the file can not be read or has an invalid format.
+   */
+  public static Scenario read(Path file) throws IOException {
+    final ByteBuffer buffer;
+    try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+        final FileChannel channel = raf.getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    return read(buffer, file.toString());
+  }
+
+  /**
+   * Reads a scenario from a buffer that contains a complete binary scenario
+   * file.
+   * @param buffer The buffer, its position is at the start of the file.
+   * @param source The name of the source of the buffer, used in messages.
+   * @return The scenario.
+   * @throws IOException If the buffer has an invalid format.
+   */
+  static Scenario read(ByteBuffer buffer, String source) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException(source + " is not a binary scenario file.");
+    }
+    final int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version: " + version);
+    }
+    final byte[] json = new byte[buffer.getInt()];
+    buffer.get(json);
+    final Scenario properties = ScenarioIO.read(new String(json,
+        StandardCharsets.UTF_8));
+
+    final int numTypes = buffer.getInt();
+    final List<Enum<?>> types = Lists.newArrayListWithCapacity(numTypes);
+    for (int i = 0; i < numTypes; i++) {
+      types.add(enumConstant(readUTF(buffer), readUTF(buffer)));
+    }
+    final int numEvents = buffer.getInt();
+    if (buffer.remaining() != numEvents * RECORD_SIZE) {
+      throw new IOException(source + " is truncated.");
+    }
+    final ByteBuffer records = buffer.slice();
+    final List<TimedEvent> events = Lists.newArrayListWithCapacity(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      events.add(decode(records, i, types));
+    }
+    return Scenario.builder(properties.getProblemClass())
+        .copyProperties(properties)
+        .addEvents(events)
+        .build();
+  }
+
+  static void encode(TimedEvent event, List<Enum<?>> types, ByteBuffer out) {
+    final Class<?> cls = event.getClass();
+    final byte kind;
+    if (cls == AddParcelEvent.class) {
+      kind = ADD_PARCEL;
+    } else if (cls == AddVehicleEvent.class) {
+      kind = ADD_VEHICLE;
+    } else if (cls == AddDepotEvent.class) {
+      kind = ADD_DEPOT;
+    } else {
+      checkArgument(cls == TimedEvent.class, "Unsupported event: %s.", cls);
+      kind = TIMED_EVENT;
+    }
+    out.put(kind);
+    out.putLong(event.time);
+    out.putInt(types.indexOf(event.getEventType()));
+    if (kind == ADD_PARCEL) {
+      final ParcelDTO dto = ((AddParcelEvent) event).parcelDTO;
+      putPoint(out, dto.pickupLocation);
+      putPoint(out, dto.deliveryLocation);
+      putTimeWindow(out, dto.pickupTimeWindow);
+      putTimeWindow(out, dto.deliveryTimeWindow);
+      out.putInt(dto.neededCapacity);
+      out.putLong(dto.orderAnnounceTime);
+      out.putLong(dto.pickupDuration);
+      out.putLong(dto.deliveryDuration);
+    } else if (kind == ADD_VEHICLE) {
+      final VehicleDTO dto = ((AddVehicleEvent) event).vehicleDTO;
+      putPoint(out, dto.startPosition);
+      out.putDouble(dto.speed);
+      out.putInt(dto.capacity);
+      putTimeWindow(out, dto.availabilityTimeWindow);
+    } else if (kind == ADD_DEPOT) {
+      putPoint(out, ((AddDepotEvent) event).position);
+    }
+  }
+
+  // decodes the record at the specified index using absolute reads only, such
+  // that the buffer can be shared between threads
+  static TimedEvent decode(ByteBuffer records, int index,
+      List<Enum<?>> types) {
+    final int offset = index * RECORD_SIZE;
+    final byte kind = records.get(offset);
+    final long time = records.getLong(offset + 1);
+    int pos = offset + PAYLOAD_OFFSET;
+    switch (kind) {
+    case ADD_PARCEL:
+      final Point pickup = getPoint(records, pos);
+      final Point delivery = getPoint(records, pos + 16);
+      pos += 32;
+      return new AddParcelEvent(ParcelDTO.builder(pickup, delivery)
+          .pickupTimeWindow(getTimeWindow(records, pos))
+          .deliveryTimeWindow(getTimeWindow(records, pos + 16))
+          .neededCapacity(records.getInt(pos + 32))
+          .orderAnnounceTime(records.getLong(pos + 36))
+          .pickupDuration(records.getLong(pos + 44))
+          .deliveryDuration(records.getLong(pos + 52))
+          .build());
+    case ADD_VEHICLE:
+      return new AddVehicleEvent(time, VehicleDTO.builder()
+          .startPosition(getPoint(records, pos))
+          .speed(records.getDouble(pos + 16))
+          .capacity(records.getInt(pos + 24))
+          .availabilityTimeWindow(getTimeWindow(records, pos + 28))
+          .build());
+    case ADD_DEPOT:
+      return new AddDepotEvent(time, getPoint(records, pos));
+    case TIMED_EVENT:
+      return new TimedEvent(types.get(records.getInt(offset + 9)), time);
+    default:
+      throw new IllegalStateException("Unknown event kind: " + kind);
+    }
+  }
+
+  static void putPoint(ByteBuffer out, Point p) {
+    out.putDouble(p.x);
+    out.putDouble(p.y);
+  }
+
+  static void putTimeWindow(ByteBuffer out, TimeWindow tw) {
+    out.putLong(tw.begin);
+    out.putLong(tw.end);
+  }
+
+  static Point getPoint(ByteBuffer in, int pos) {
+    return new Point(in.getDouble(pos), in.getDouble(pos + 8));
+  }
+
+  static TimeWindow getTimeWindow(ByteBuffer in, int pos) {
+    return new TimeWindow(in.getLong(pos), in.getLong(pos + 8));
+  }
+
+  // reads a string that was written with DataOutput.writeUTF, only the
+  // ASCII subset is used by class and enum names
+  static String readUTF(ByteBuffer in) {
+    final byte[] bytes = new byte[in.getShort() & 0xFFFF];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static Enum<?> enumConstant(String className, String name)
+      throws IOException {
+    try {
+      final Class<?> cls = Class.forName(className);
+      for (final Object constant : cls.getEnumConstants()) {
+        if (((Enum<?>) constant).name().equals(name)) {
+          return (Enum<?>) constant;
+        }
+      }
+    } catch (final ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+    throw new IOException("Unknown event type: " + className + "." + name);
+  }
+}
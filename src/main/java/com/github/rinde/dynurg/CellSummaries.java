@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Ordering;
+
+/**
+ * Online summaries of the results of an experiment per cell: configuration,
+ * urgency level and dynamism level. Of each metric in {@link #METRICS} a cell
+ * keeps the count, mean, variance and a {@link QuantileSketch}. The memory
+ * usage does not depend on the number of results, and the summaries of
+ * different workers or runs can be merged (see {@link #merge(CellSummaries)}
+ * and {@link #main(String[])}) with the same result as if all results were
+ * added to a single instance, except for rounding.
+ * <p>
+ * The summaries are updated with result rows (see
+ * {@link Experimentation#resultWriter(File)}), the results of deterministic
+ * configurations are therefore counted once per repetition, as in the result
+ * files.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class CellSummaries implements Serializable {
+  /**
+   * The summarized columns of the result rows.
+   */
+  public static final ImmutableList<String> METRICS = ImmutableList.of(
+      "cost", "tardiness", "travel_time", "comp_time");
+
+  static final ImmutableList<Double> QUANTILES = ImmutableList.of(.1, .5, .9);
+  static final double ACCURACY = .02;
+  static final double MIN_VALUE = .1;
+  static final double MAX_VALUE = 1e9;
+  static final String CONFIGURATION = "configuration";
+  static final String SCENARIO_ID = "scenario_id";
+
+  private static final long serialVersionUID = -2870613614254383457L;
+
+  final Map<List<Object>, Cell> cells;
+
+  /**
+   * Creates a new instance without results.
+   */
+  public CellSummaries() {
+    cells = newLinkedHashMap();
+  }
+
+  /**
+   * Merges the snapshots of several workers or runs and writes the summary.
+   * @param args The summary file to write, followed by the snapshot files,
+   *          see {@link #save(File)}.
+   * @throws IOException If a file can not be read or written.
+   */
+  public static void main(String[] args) throws IOException {
+    checkArgument(args.length > 1,
+        "Usage: <summary file> <snapshot file> [<snapshot file> ...]");
+    final CellSummaries merged = new CellSummaries();
+    for (final String snapshot : Arrays.asList(args).subList(1,
+        args.length)) {
+      merged.merge(load(new File(snapshot)));
+    }
+    merged.writeCsv(new File(args[0]));
+    System.out.println("Merged " + (args.length - 1) + " snapshots, "
+        + merged.cells().size() + " cells.");
+  }
+
+  /**
+   * Adds a result row.
+   * @param configuration The name of the configuration.
+   * @param row The values of the row by column name, must contain the
+   *          scenario id and all {@link #METRICS}.
+   */
+  public synchronized void add(String configuration, Map<String, ?> row) {
+    final String scenarioId = row.get(SCENARIO_ID).toString();
+    final String problemClass = scenarioId.substring(0,
+        scenarioId.lastIndexOf('#'));
+    final Cell cell = cell(configuration,
+        DatasetManifest.urgencyLevel(problemClass),
+        DatasetManifest.dynamismLevel(problemClass));
+    for (final String metric : METRICS) {
+      cell.metrics.get(metric).add(Double.parseDouble(row.get(metric)
+          .toString()));
+    }
+  }
+
+  /**
+   * Adds all rows of the result files of the specified configurations, files
+   * that do not exist are skipped. This is used to include the results of a
+   * previous run when resuming.
+   * @param dir The directory of the result files.
+   * @param configs The names of the configurations.
+   * @throws IOException If a file can not be read.
+   */
+  public synchronized void addResults(File dir, Iterable<String> configs)
+      throws IOException {
+    for (final String config : configs) {
+      final File file = new File(dir, config
+          + ResultWriter.Format.CSV.extension);
+      if (file.exists()) {
+        for (final ImmutableMap<String, String> row : ResultWriter
+            .readCsv(file)) {
+          add(config, row);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds all results of other summaries to these summaries.
+   * @param other The summaries to merge.
+   */
+  public synchronized void merge(CellSummaries other) {
+    for (final Cell c : other.cells()) {
+      final Cell cell = cell(c.configuration, c.urgency, c.dynamism);
+      for (final String metric : METRICS) {
+        cell.metrics.get(metric).merge(c.metrics.get(metric));
+      }
+    }
+  }
+
+  /**
+   * @return All cells ordered by configuration, urgency and dynamism.
+   */
+  public synchronized ImmutableList<Cell> cells() {
+    return ImmutableList.copyOf(Ordering.from(Cell.ORDER).sortedCopy(
+        cells.values()));
+  }
+
+  /**
+   * Writes one row per cell to a CSV file. The file is replaced atomically,
+   * it can be read while an experiment is running.
+   * @param file The file to write to.
+   * @throws IOException If the file can not be written.
+   */
+  public synchronized void writeCsv(File file) throws IOException {
+    final List<String> header = newArrayList(CONFIGURATION, "urgency",
+        "dynamism", "count");
+    for (final String metric : METRICS) {
+      header.add(metric + "_mean");
+      header.add(metric + "_var");
+      for (final double q : QUANTILES) {
+        header.add(metric + "_p" + Math.round(q * 100));
+      }
+    }
+    final List<String> lines = newArrayList(Joiner.on(',').join(header));
+    for (final Cell cell : cells()) {
+      final List<Object> row = newArrayList((Object) cell.configuration,
+          cell.urgency, cell.dynamism, cell.count());
+      for (final String metric : METRICS) {
+        final Summary s = cell.metrics.get(metric);
+        row.add(s.mean());
+        row.add(s.variance());
+        for (final double q : QUANTILES) {
+          row.add(s.quantile(q));
+        }
+      }
+      lines.add(Joiner.on(',').join(row));
+    }
+    final File tmp = new File(file.getPath() + ".tmp");
+    com.google.common.io.Files.createParentDirs(file);
+    Files.write(tmp.toPath(), lines, Charsets.UTF_8);
+    Files.move(tmp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes a compressed snapshot that can be read with {@link #load(File)}.
+   * @param file The file to write to, it is replaced atomically.
+   * @throws IOException If the file can not be written.
+   */
+  public synchronized void save(File file) throws IOException {
+    final File tmp = new File(file.getPath() + ".tmp");
+    com.google.common.io.Files.createParentDirs(file);
+    try (final ObjectOutputStream out = new ObjectOutputStream(
+        new GZIPOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(tmp.toPath()))))) {
+      out.writeObject(this);
+    }
+    Files.move(tmp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a snapshot that was written with {@link #save(File)}.
+   * @param file The snapshot file.
+   * @return The summaries.
+   * @throws IOException If the file can not be read.
+   */
+  public static CellSummaries load(File file) throws IOException {
+    try (final ObjectInputStream in = new ObjectInputStream(
+        new GZIPInputStream(new BufferedInputStream(
+            Files.newInputStream(file.toPath()))))) {
+      return (CellSummaries) in.readObject();
+    } catch (final ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+
+  Cell cell(String configuration, long urgency, double dynamism) {
+    final List<Object> key = ImmutableList.<Object> of(configuration,
+        urgency, dynamism);
+    if (!cells.containsKey(key)) {
+      cells.put(key, new Cell(configuration, urgency, dynamism));
+    }
+    return cells.get(key);
+  }
+
+  /**
+   * The summaries of a configuration in a cell of the dynamism-urgency plane.
+   */
+  public static final class Cell implements Serializable {
+    static final Comparator<Cell> ORDER =
+        new Comparator<Cell>() {
+          @Override
+          public int compare(Cell o1, Cell o2) {
+            return ComparisonChain.start()
+                .compare(o1.configuration, o2.configuration)
+                .compare(o1.urgency, o2.urgency)
+                .compare(o1.dynamism, o2.dynamism)
+                .result();
+          }
+        };
+    private static final long serialVersionUID = 3215377640375744536L;
+
+    /**
+     * The name of the configuration.
+     */
+    public final String configuration;
+
+    /**
+     * The urgency level in minutes.
+     */
+    public final long urgency;
+
+    /**
+     * The dynamism level.
+     */
+    public final double dynamism;
+
+    final Map<String, Summary> metrics;
+
+    Cell(String config, long urg, double dyn) {
+      configuration = config;
+      urgency = urg;
+      dynamism = dyn;
+      metrics = newLinkedHashMap();
+      for (final String metric : METRICS) {
+        metrics.put(metric, new Summary());
+      }
+    }
+
+    /**
+     * @return The number of results in the cell.
+     */
+    public long count() {
+      return metrics.get(METRICS.get(0)).count;
+    }
+
+    /**
+     * @param metric One of {@link #METRICS}.
+     * @return The summary of the metric.
+     */
+    public Summary get(String metric) {
+      checkArgument(metrics.containsKey(metric), "Unknown metric: %s.",
+          metric);
+      return metrics.get(metric);
+    }
+  }
+
+  /**
+   * Count, mean, variance and quantiles of the values of a metric. The mean
+   * and variance are updated with the method of Welford and merged with the
+   * method of Chan, Golub and LeVeque.
+   */
+  public static final class Summary implements Serializable {
+    private static final long serialVersionUID = -1394425233606581743L;
+
+    final QuantileSketch sketch;
+    long count;
+    double mean;
+    // sum of squared differences from the mean
+    double m2;
+
+    Summary() {
+      sketch = new QuantileSketch(ACCURACY, MIN_VALUE, MAX_VALUE);
+    }
+
+    void add(double value) {
+      count++;
+      final double delta = value - mean;
+      mean += delta / count;
+      m2 += delta * (value - mean);
+      // the metrics are non-negative, the sketch does not accept rounding
+      // errors below zero
+      sketch.add(Math.max(0d, value));
+    }
+
+    void merge(Summary other) {
+      if (other.count == 0) {
+        return;
+      }
+      final long total = count + other.count;
+      final double delta = other.mean - mean;
+      mean += delta * other.count / total;
+      m2 += other.m2 + delta * delta * count * other.count / total;
+      count = total;
+      sketch.merge(other.sketch);
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * @return The mean, <code>NaN</code> if there are no values.
+     */
+    public double mean() {
+      return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return The sample variance, <code>NaN</code> if there are less than two
+     *         values.
+     */
+    public double variance() {
+      return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    /**
+     * @param q The quantile, in [0,1].
+     * @return The estimated quantile, within a relative distance of 2% of the
+     *         exact quantile, <code>NaN</code> if there are no values.
+     */
+    public double quantile(double q) {
+      return count == 0 ? Double.NaN : sketch.quantile(q);
+    }
+  }
+
+  /**
+   * A {@link ResultWriter.RowListener} that updates summaries with the rows
+   * of the result writers and refreshes a live summary file periodically,
+   * such that trends can be inspected while an experiment is running. The
+   * files are refreshed when a writer is flushed and at least the refresh
+   * interval has passed since the last refresh, and when a writer is closed.
+   * The listener can be shared by several writers.
+   * <p>
+   * The directory contains <code>summary.csv</code>, see
+   * {@link CellSummaries#writeCsv(File)}, and a snapshot
+   * <code>summary.ser.gz</code> for merging, see {@link CellSummaries#main}.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Listener implements ResultWriter.RowListener {
+    static final String SUMMARY = "summary.csv";
+    static final String SNAPSHOT = "summary.ser.gz";
+
+    final CellSummaries summaries;
+    final File directory;
+    final long refreshInterval;
+    long lastRefresh;
+    boolean changed;
+
+    /**
+     * Creates a new listener.
+     * @param dir The directory of the summary files.
+     * @param intervalMs The minimum time between two refreshes in ms.
+     */
+    public Listener(File dir, long intervalMs) {
+      summaries = new CellSummaries();
+      directory = dir;
+      refreshInterval = intervalMs;
+    }
+
+    /**
+     * @return The summaries that are updated by this listener.
+     */
+    public CellSummaries summaries() {
+      return summaries;
+    }
+
+    @Override
+    public synchronized void receive(String name,
+        ImmutableMap<String, Object> row) {
+      summaries.add(name, row);
+      changed = true;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      if (changed
+          && System.currentTimeMillis() - lastRefresh >= refreshInterval) {
+        refresh();
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (changed) {
+        refresh();
+      }
+    }
+
+    void refresh() throws IOException {
+      summaries.writeCsv(new File(directory, SUMMARY));
+      summaries.save(new File(directory, SNAPSHOT));
+      lastRefresh = System.currentTimeMillis();
+      changed = false;
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reads a result file that was written by {@link ResultWriter} in the
+ * {@link ResultWriter.Format#COLUMNAR} format. The file is memory mapped and
+ * each column is copied in a primitive array.
+ * <p>
+ * All numbers are big endian. The file starts with a header:
+ * <ul>
+ * <li><code>int</code> magic number {@link #MAGIC},</li>
+ * <li><code>int</code> format version {@link #VERSION},</li>
+ * <li><code>int</code> number of columns, followed by the name (modified
+ * UTF-8, see {@link java.io.DataOutput#writeUTF(String)}) and the type (one
+ * byte, the ordinal of {@link ColumnType}) of each column.</li>
+ * </ul>
+ * The header is followed by blocks of rows. Each block starts with the number
+ * of rows <code>n</code> as <code>int</code> followed by the values of each
+ * column: <code>n</code> doubles, longs, ints or bytes (booleans). A string
+ * column consists of <code>n+1</code> int offsets followed by the UTF-8
+ * encoded strings.
+ * <p>
+ * An incomplete last block (e.g. of a file that was being written when an
+ * experiment was interrupted) is ignored.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class ColumnarResults {
+  /**
+   * The magic number at the start of each file: 'DURC'.
+   */
+  public static final int MAGIC = 0x44555243;
+
+  /**
+   * The current version of the format.
+   */
+  public static final int VERSION = 1;
+
+  final ImmutableList<String> names;
+  final ImmutableList<ColumnType> types;
+  final Object[] values;
+  final int numRows;
+
+  ColumnarResults(List<String> ns, List<ColumnType> ts, Object[] vals,
+      int rows) {
+    names = ImmutableList.copyOf(ns);
+    types = ImmutableList.copyOf(ts);
+    values = vals;
+    numRows = rows;
+  }
+
+  /**
+   * @return The names of the columns in order.
+   */
+  public ImmutableList<String> getColumnNames() {
+    return names;
+  }
+
+  /**
+   * @return The number of rows.
+   */
+  public int size() {
+    return numRows;
+  }
+
+  /**
+   * @param column The name of a {@link ColumnType#DOUBLE} column.
+   * @return The values of the column.
+   */
+  public double[] doubles(String column) {
+    return (double[]) column(column, ColumnType.DOUBLE);
+  }
+
+  /**
+   * @param column The name of a {@link ColumnType#LONG} column.
+   * @return The values of the column.
+   */
+  public long[] longs(String column) {
+    return (long[]) column(column, ColumnType.LONG);
+  }
+
+  /**
+   * @param column The name of a {@link ColumnType#INT} column.
+   * @return The values of the column.
+   */
+  public int[] ints(String column) {
+    return (int[]) column(column, ColumnType.INT);
+  }
+
+  /**
+   * @param column The name of a {@link ColumnType#BOOLEAN} column.
+   * @return The values of the column.
+   */
+  public boolean[] booleans(String column) {
+    return (boolean[]) column(column, ColumnType.BOOLEAN);
+  }
+
+  /**
+   * @param column The name of a {@link ColumnType#STRING} column.
+   * @return The values of the column.
+   */
+  public String[] strings(String column) {
+    return (String[]) column(column, ColumnType.STRING);
+  }
+
+  Object column(String name, ColumnType type) {
+    final int index = names.indexOf(name);
+    checkArgument(index >= 0, "There is no column named %s.", name);
+    checkArgument(types.get(index) == type, "Column %s has type %s.", name,
+        types.get(index));
+    return values[index];
+  }
+
+  /**
+   * Reads a file, an incomplete last block is ignored.
+   * @param file The file to read.
+   * @return The contents of the file.
+   * @throws IOException If the file can not be read or has an invalid format.
+   */
+  public static ColumnarResults read(Path file) throws IOException {
+    try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+        final FileChannel channel = raf.getChannel()) {
+      final MappedByteBuffer buffer = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final ImmutableList.Builder<String> names = ImmutableList.builder();
+      final ImmutableList.Builder<ColumnType> types = ImmutableList.builder();
+      final int numColumns;
+      try {
+        if (buffer.getInt() != MAGIC) {
+          throw new IOException(file + " is not a columnar result file.");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+          throw new IOException("Unsupported version: " + version);
+        }
+        numColumns = buffer.getInt();
+        for (int i = 0; i < numColumns; i++) {
+          final byte[] name = new byte[buffer.getShort() & 0xFFFF];
+          buffer.get(name);
+          names.add(new String(name, StandardCharsets.UTF_8));
+          types.add(ColumnType.values()[buffer.get()]);
+        }
+      } catch (final BufferUnderflowException e) {
+        throw new IOException("The header of " + file + " is incomplete.", e);
+      }
+      final List<ColumnType> columnTypes = types.build();
+      final int dataStart = buffer.position();
+
+      // first pass: count the rows of the complete blocks
+      int numRows = 0;
+      int dataEnd = dataStart;
+      while (buffer.remaining() >= 4) {
+        final int n = buffer.getInt();
+        if (n < 0) {
+          throw new IOException(file + " contains a block with " + n
+              + " rows.");
+        }
+        if (!skipBlock(buffer, columnTypes, n)) {
+          break;
+        }
+        numRows += n;
+        dataEnd = buffer.position();
+      }
+
+      // second pass: copy the values
+      final Object[] values = new Object[numColumns];
+      for (int i = 0; i < numColumns; i++) {
+        values[i] = allocate(columnTypes.get(i), numRows);
+      }
+      buffer.position(dataStart);
+      int row = 0;
+      while (buffer.position() < dataEnd) {
+        final int n = buffer.getInt();
+        for (int i = 0; i < numColumns; i++) {
+          copy(buffer, columnTypes.get(i), values[i], row, n);
+        }
+        row += n;
+      }
+      return new ColumnarResults(names.build(), columnTypes, values, numRows);
+    }
+  }
+
+  // moves the position past a block of n rows, returns false if the block is
+  // incomplete
+  static boolean skipBlock(ByteBuffer buffer, List<ColumnType> types, int n) {
+    for (final ColumnType type : types) {
+      final long size;
+      if (type == ColumnType.STRING) {
+        final long offsets = 4L * (n + 1);
+        if (buffer.remaining() < offsets) {
+          return false;
+        }
+        size = offsets + buffer.getInt(buffer.position() + 4 * n);
+      } else {
+        size = (long) type.width * n;
+      }
+      if (size < 0 || buffer.remaining() < size) {
+        return false;
+      }
+      buffer.position(buffer.position() + (int) size);
+    }
+    return true;
+  }
+
+  static void skip(ByteBuffer buffer, ColumnType type, int n) {
+    if (type == ColumnType.STRING) {
+      final int length = buffer.getInt(buffer.position() + 4 * n);
+      buffer.position(buffer.position() + 4 * (n + 1) + length);
+    } else {
+      buffer.position(buffer.position() + type.width * n);
+    }
+  }
+
+  static Object allocate(ColumnType type, int n) {
+    switch (type) {
+    case DOUBLE:
+      return new double[n];
+    case LONG:
+      return new long[n];
+    case INT:
+      return new int[n];
+    case BOOLEAN:
+      return new boolean[n];
+    default:
+      return new String[n];
+    }
+  }
+
+  // copies n values at the current position, the position is moved past them
+  static void copy(ByteBuffer buffer, ColumnType type, Object target,
+      int from, int n) {
+    switch (type) {
+    case DOUBLE:
+      buffer.asDoubleBuffer().get((double[]) target, from, n);
+      break;
+    case LONG:
+      buffer.asLongBuffer().get((long[]) target, from, n);
+      break;
+    case INT:
+      buffer.asIntBuffer().get((int[]) target, from, n);
+      break;
+    case BOOLEAN:
+      final boolean[] booleans = (boolean[]) target;
+      for (int i = 0; i < n; i++) {
+        booleans[from + i] = buffer.get(buffer.position() + i) != 0;
+      }
+      break;
+    default:
+      final String[] strings = (String[]) target;
+      final int start = buffer.position() + 4 * (n + 1);
+      for (int i = 0; i < n; i++) {
+        final int begin = buffer.getInt(buffer.position() + 4 * i);
+        final int end = buffer.getInt(buffer.position() + 4 * (i + 1));
+        final byte[] bytes = new byte[end - begin];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(start + begin);
+        view.get(bytes);
+        strings[from + i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+    }
+    skip(buffer, type, n);
+  }
+}
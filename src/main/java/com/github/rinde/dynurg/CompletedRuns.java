@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+/**
+ * The simulations that have already been computed, as found in the CSV result
+ * files of a previous (interrupted) run. A simulation is identified by its
+ * configuration, scenario and random seed.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class CompletedRuns {
+  final Table<String, String, Set<Long>> runs;
+  final int size;
+
+  CompletedRuns(Table<String, String, Set<Long>> r, int s) {
+    runs = r;
+    size = s;
+  }
+
+  /**
+   * @param config The name of the configuration.
+   * @param scenarioId The id of the scenario (problem class + instance id).
+   * @param seed The random seed.
+   * @return <code>true</code> if the simulation has been computed.
+   */
+  public boolean contains(String config, String scenarioId, long seed) {
+    final Set<Long> seeds = runs.get(config, scenarioId);
+    return seeds != null && seeds.contains(seed);
+  }
+
+  /**
+   * @param config The name of the configuration.
+   * @param scenarioId The id of the scenario (problem class + instance id).
+   * @param repetitions The number of repetitions of each simulation.
+   * @return <code>true</code> if all repetitions have been computed.
+   */
+  public boolean isComplete(String config, String scenarioId,
+      int repetitions) {
+    final Set<Long> seeds = runs.get(config, scenarioId);
+    return seeds != null && seeds.size() >= repetitions;
+  }
+
+  /**
+   * @return The number of computed simulations.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Creates a predicate that accepts the scenario files of a configuration
+   * for which not all repetitions have been computed.
+   * @param config The name of the configuration.
+   * @param repetitions The number of repetitions of each simulation.
+   * @return A new predicate.
+   */
+  public Predicate<Path> incompleteScenarios(final String config,
+      final int repetitions) {
+    return new Predicate<Path>() {
+      @Override
+      public boolean apply(Path input) {
+        return !isComplete(config,
+            ScenarioIndex.FILE_TO_SCENARIO_ID.apply(input), repetitions);
+      }
+    };
+  }
+
+  /**
+   * @return A predicate that accepts the results of simulations that have
+   *         already been computed.
+   */
+  public Predicate<SimulationResult> completedResults() {
+    return new Predicate<SimulationResult>() {
+      @Override
+      public boolean apply(SimulationResult input) {
+        return contains(input.masConfiguration.toString(),
+            input.scenario.getProblemClass().getId()
+                + input.scenario.getProblemInstanceId(),
+            input.seed);
+      }
+    };
+  }
+
+  /**
+   * Reads the CSV result files of the specified configurations. Files that do
+   * not exist are ignored, as is an incomplete last line (e.g. of a file that
+   * was being written when the experiment was interrupted).
+   * @param dir The directory that contains the result files.
+   * @param configs The names of the configurations.
+   * @return The completed runs.
+   * @throws IOException If a file can not be read or contains rows that do
+   *           not match its header.
+   */
+  public static CompletedRuns read(File dir, Iterable<String> configs)
+      throws IOException {
+    final Table<String, String, Set<Long>> runs = HashBasedTable
+        .create();
+    int size = 0;
+    for (final String config : configs) {
+      final File file = new File(dir, config + ResultWriter.Format.CSV
+          .extension);
+      if (!file.exists()) {
+        continue;
+      }
+      for (final Map<String, String> row : ResultWriter.readCsv(file)) {
+        checkArgument(row.containsKey("scenario_id")
+            && row.containsKey("random_seed"),
+            "%s has no scenario_id and random_seed columns.", file);
+        final String scenarioId = row.get("scenario_id");
+        final long seed = Long.parseLong(row.get("random_seed"));
+        if (!runs.contains(config, scenarioId)) {
+          runs.put(config, scenarioId, new HashSet<Long>());
+        }
+        if (runs.get(config, scenarioId).add(seed)) {
+          size++;
+        }
+      }
+    }
+    return new CompletedRuns(runs, size);
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions.IntensityFunction;
+import com.github.rinde.rinsim.scenario.generator.TimeSeries;
+import com.github.rinde.rinsim.scenario.generator.TimeSeries.TimeSeriesGenerator;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
+
+/**
+ * Time series generators that always generate exactly the specified number of
+ * events. Each generator has the same distribution as the corresponding
+ * generator in {@link TimeSeries} when it is filtered using
+ * {@link TimeSeries#numEventsPredicate(int)}, but without generating and
+ * discarding complete time series.
+ * <p>
+ * For Poisson processes the number of events is sampled in one pass: given
+ * that exactly <code>n</code> events occur, the event times are independent
+ * and distributed according to the (normalized) intensity function. The
+ * normal and uniform time series are renewal processes for which no such
+ * property exists, these generators still reject samples but they decide as
+ * early as possible and only use primitive arrays.
+ * <p>
+ * All generators are thread safe.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class ConditionalTimeSeries {
+  // number of intervals used for integrating intensity functions
+  static final int INTEGRATION_INTERVALS = 4096;
+  // same as in TimeSeries.UniformTimeSeries
+  static final double SMALLEST_DEVIATION = .0000001;
+
+  private ConditionalTimeSeries() {}
+
+  /**
+   * Creates a homogenous Poisson process of the specified length conditioned
+   * on having exactly <code>numEvents</code> events.
+   * @param length The length of the time series, all generated times will be
+   *          in the interval [0,length).
+   * @param numEvents The number of events.
+   * @return A new generator.
+   * @see TimeSeries#homogenousPoisson(double, int)
+   */
+  public static TimeSeriesGenerator homogenousPoisson(double length,
+      int numEvents) {
+    checkArgument(length > 0d);
+    checkArgument(numEvents > 0);
+    return new HomogenousPoisson(length, numEvents);
+  }
+
+  /**
+   * Creates a non-homogenous Poisson process of the specified length
+   * conditioned on having exactly <code>numEvents</code> events. The intensity
+   * function is drawn from the supplier. Since the expected number of events
+   * depends on the intensity function, intensity functions are accepted with
+   * a probability that is proportional to the probability of observing
+   * exactly <code>numEvents</code> events.
+   * @param length The length of the time series, all generated times will be
+   *          in the interval [0,length).
+   * @param numEvents The number of events.
+   * @param lambdSup The supplier of intensity functions.
+   * @return A new generator.
+   * @see TimeSeries#nonHomogenousPoisson(double, StochasticSupplier)
+   */
+  public static TimeSeriesGenerator nonHomogenousPoisson(double length,
+      int numEvents, StochasticSupplier<IntensityFunction> lambdSup) {
+    checkArgument(length > 0d);
+    checkArgument(numEvents > 0);
+    return new NonHomogenousPoisson(length, numEvents, lambdSup);
+  }
+
+  /**
+   * Creates a time series with normally distributed inter arrival times
+   * conditioned on having exactly <code>numEvents</code> events.
+   * @param length The length of the time series, all generated times will be
+   *          in the interval [0,length).
+   * @param numEvents The number of events.
+   * @param sd The standard deviation of the inter arrival times.
+   * @return A new generator.
+   * @see TimeSeries#normal(double, int, double)
+   */
+  public static TimeSeriesGenerator normal(double length, int numEvents,
+      double sd) {
+    checkArgument(length > 0d);
+    checkArgument(numEvents > 0);
+    // this is exactly the same supplier as in TimeSeries.normal(..)
+    final StochasticSupplier<Double> interArrivalTimes = StochasticSuppliers
+        .normal()
+        .mean(length / numEvents)
+        .std(sd)
+        .lowerBound(0d)
+        .redrawWhenOutOfBounds()
+        .scaleMean()
+        .buildDouble();
+    return new SuppliedRenewal(length, numEvents, interArrivalTimes);
+  }
+
+  /**
+   * Creates a time series with uniformly distributed inter arrival times
+   * conditioned on having exactly <code>numEvents</code> events.
+   * @param length The length of the time series, all generated times will be
+   *          in the interval [0,length).
+   * @param numEvents The number of events.
+   * @param maxDeviation The supplier of the maximum deviation of the inter
+   *          arrival times from their average.
+   * @return A new generator.
+   * @see TimeSeries#uniform(double, int, StochasticSupplier)
+   */
+  public static TimeSeriesGenerator uniform(double length, int numEvents,
+      StochasticSupplier<Double> maxDeviation) {
+    checkArgument(length > 0d);
+    checkArgument(numEvents > 0);
+    return new UniformRenewal(length, numEvents, maxDeviation);
+  }
+
+  /**
+   * Integrates the intensity function over [0,length) using the composite
+   * Simpson's rule.
+   */
+  static double integrate(IntensityFunction lambda, double length) {
+    final int n = INTEGRATION_INTERVALS;
+    final double h = length / n;
+    double sum = lambda.apply(0d) + lambda.apply(length);
+    for (int i = 1; i < n; i++) {
+      sum += (i % 2 == 0 ? 2 : 4) * lambda.apply(i * h);
+    }
+    return sum * h / 3d;
+  }
+
+  /**
+   * Computes P(X = n) / P(Y = n) where X ~ Poisson(mean) and Y ~ Poisson(n).
+   * Since a Poisson probability P(X = n) is maximal when mean = n, the result
+   * can be used as an acceptance probability.
+   */
+  static double poissonAcceptanceProbability(int n, double mean) {
+    if (mean <= 0d) {
+      return 0d;
+    }
+    return Math.exp(n - mean + n * Math.log(mean / n));
+  }
+
+  static ImmutableList<Double> toList(double[] times) {
+    Arrays.sort(times);
+    return ImmutableList.copyOf(Doubles.asList(times));
+  }
+
+  static class HomogenousPoisson implements TimeSeriesGenerator {
+    final double length;
+    final int numEvents;
+
+    HomogenousPoisson(double len, int num) {
+      length = len;
+      numEvents = num;
+    }
+
+    @Override
+    public ImmutableList<Double> generate(long seed) {
+      final RandomGenerator rng = new MersenneTwister(seed);
+      final double[] times = new double[numEvents];
+      for (int i = 0; i < numEvents; i++) {
+        times[i] = rng.nextDouble() * length;
+      }
+      return toList(times);
+    }
+  }
+
+  static class NonHomogenousPoisson implements TimeSeriesGenerator {
+    final double length;
+    final int numEvents;
+    final StochasticSupplier<IntensityFunction> lambdSup;
+
+    NonHomogenousPoisson(double len, int num,
+        StochasticSupplier<IntensityFunction> sup) {
+      length = len;
+      numEvents = num;
+      lambdSup = sup;
+    }
+
+    @Override
+    public ImmutableList<Double> generate(long seed) {
+      final RandomGenerator rng = new MersenneTwister(seed);
+      IntensityFunction lambda;
+      do {
+        lambda = lambdSup.get(rng.nextLong());
+      } while (rng.nextDouble() > poissonAcceptanceProbability(numEvents,
+          integrate(lambda, length)));
+
+      // thinning without a time limit: each accepted time is distributed
+      // according to lambda(t) / integral of lambda
+      final double lambdaMax = lambda.getMax();
+      final double[] times = new double[numEvents];
+      int i = 0;
+      while (i < numEvents) {
+        final double t = rng.nextDouble() * length;
+        if (rng.nextDouble() <= lambda.apply(t) / lambdaMax) {
+          times[i] = t;
+          i++;
+        }
+      }
+      return toList(times);
+    }
+  }
+
+  /**
+   * A renewal process conditioned on the number of events. A sample is
+   * accepted iff the n-th event occurs before the end and the (n+1)-th event
+   * occurs after the end. Samples are rejected as soon as one of these
+   * conditions can no longer hold.
+   */
+  abstract static class ConditionedRenewal implements TimeSeriesGenerator {
+    final double length;
+    final int numEvents;
+
+    ConditionedRenewal(double len, int num) {
+      length = len;
+      numEvents = num;
+    }
+
+    @Override
+    public ImmutableList<Double> generate(long seed) {
+      final RandomGenerator rng = new MersenneTwister(seed);
+      final double[] times = new double[numEvents];
+      while (!sample(rng, times)) {}
+      return ImmutableList.copyOf(Doubles.asList(times));
+    }
+
+    /**
+     * Attempts to fill <code>times</code> with a sample.
+     * @param rng The random number generator.
+     * @param times The array to fill.
+     * @return <code>true</code> if the sample is accepted, <code>false</code>
+     *         otherwise.
+     */
+    abstract boolean sample(RandomGenerator rng, double[] times);
+
+    boolean sampleRenewal(RandomGenerator rng, double[] times, double param) {
+      double time = 0d;
+      for (int i = 0; i < numEvents; i++) {
+        time += nextInterArrivalTime(rng, param);
+        if (time >= length) {
+          return false;
+        }
+        times[i] = time;
+      }
+      return time + nextInterArrivalTime(rng, param) >= length;
+    }
+
+    abstract double nextInterArrivalTime(RandomGenerator rng, double param);
+  }
+
+  static class SuppliedRenewal extends ConditionedRenewal {
+    final StochasticSupplier<Double> interArrivalTimes;
+
+    SuppliedRenewal(double len, int num, StochasticSupplier<Double> sup) {
+      super(len, num);
+      interArrivalTimes = sup;
+    }
+
+    @Override
+    boolean sample(RandomGenerator rng, double[] times) {
+      return sampleRenewal(rng, times, 0d);
+    }
+
+    @Override
+    double nextInterArrivalTime(RandomGenerator rng, double param) {
+      return interArrivalTimes.get(rng.nextLong());
+    }
+  }
+
+  static class UniformRenewal extends ConditionedRenewal {
+    final double average;
+    final StochasticSupplier<Double> deviationSupplier;
+
+    UniformRenewal(double len, int num, StochasticSupplier<Double> sup) {
+      super(len, num);
+      average = len / num;
+      deviationSupplier = sup;
+    }
+
+    @Override
+    boolean sample(RandomGenerator rng, double[] times) {
+      // the deviation is part of the sample: it is conditioned as well
+      final double deviation = Math.min(average,
+          deviationSupplier.get(rng.nextLong()));
+      checkArgument(deviation >= 0d, "Deviation may not be negative: %s.",
+          deviation);
+      if (deviation < SMALLEST_DEVIATION) {
+        // fixed inter arrival times always yield exactly numEvents events
+        times[0] = rng.nextDouble() * average;
+        for (int i = 1; i < numEvents; i++) {
+          times[i] = times[i - 1] + average;
+        }
+        return times[numEvents - 1] < length;
+      }
+      return sampleRenewal(rng, times, deviation);
+    }
+
+    @Override
+    double nextInterArrivalTime(RandomGenerator rng, double deviation) {
+      double value;
+      do {
+        final double u = rng.nextDouble();
+        value = u * (average + deviation) + (1 - u) * (average - deviation);
+      } while (value <= 0d);
+      return value;
+    }
+  }
+}
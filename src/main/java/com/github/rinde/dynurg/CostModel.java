@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+/**
+ * Predicts the computation time of a simulation from the metadata of its
+ * scenario and its configuration. The prediction is the mean
+ * <code>comp_time</code> of past results of the same configuration in the same
+ * cell of the dynamism-urgency plane, scenarios are grouped per dynamism level
+ * (steps of {@link #DYNAMISM_STEP}) and per urgency (in minutes). If a cell
+ * has no results, the mean of the configuration is used, or otherwise the
+ * mean of all results. Without any past results, scenarios with a lower
+ * dynamism are assumed to be more expensive.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class CostModel {
+  /**
+   * The width of the dynamism cells.
+   */
+  public static final double DYNAMISM_STEP = .05;
+
+  final Map<List<Object>, Mean> cells;
+  final Map<String, Mean> configs;
+  final Mean global;
+
+  CostModel() {
+    cells = newHashMap();
+    configs = newHashMap();
+    global = new Mean();
+  }
+
+  /**
+   * Predicts the computation time of a simulation.
+   * @param config The name of the configuration.
+   * @param scenario The metadata of the scenario.
+   * @return The predicted computation time.
+   */
+  public double predict(String config, ScenarioIndex.Entry scenario) {
+    final Mean cell = cells.get(key(config, scenario.dynamism,
+        scenario.urgencyMean));
+    if (cell != null) {
+      return cell.get();
+    }
+    return predict(config) * (global.count == 0 ? 2 - scenario.dynamism : 1);
+  }
+
+  /**
+   * Predicts the computation time of a simulation of which the scenario is
+   * unknown.
+   * @param config The name of the configuration.
+   * @return The mean computation time of the configuration, or of all
+   *         configurations if there are no results of the configuration.
+   */
+  public double predict(String config) {
+    final Mean mean = configs.get(config);
+    if (mean != null) {
+      return mean.get();
+    }
+    return global.count == 0 ? 1d : global.get();
+  }
+
+  /**
+   * @return The number of results on which the predictions are based.
+   */
+  public long size() {
+    return global.count;
+  }
+
+  /**
+   * Orders scenarios by their total predicted computation time over all
+   * configurations, the most expensive scenario comes first.
+   * @param <T> The type of scenario identifier.
+   * @param scenarioIds The ids of the scenarios.
+   * @param configNames The names of the configurations.
+   * @param index The metadata of the scenarios.
+   * @param toId Converts an identifier to a scenario id, see
+   *          {@link ScenarioIndex#get(String)}.
+   * @return The ordered scenarios.
+   */
+  public <T> ImmutableList<T> longestFirst(Iterable<T> scenarioIds,
+      final Iterable<String> configNames, final ScenarioIndex index,
+      final Function<? super T, String> toId) {
+    return ImmutableList.copyOf(Ordering.natural().reverse()
+        .onResultOf(new Function<T, Double>() {
+          @Override
+          public Double apply(T input) {
+            final ScenarioIndex.Entry entry = index.get(toId.apply(input));
+            double total = 0;
+            for (final String config : configNames) {
+              total += predict(config, entry);
+            }
+            return total;
+          }
+        }).sortedCopy(scenarioIds));
+  }
+
+  /**
+   * Creates a model of the results in the CSV result files of the specified
+   * configurations. Files that do not exist are ignored.
+   * @param dir The directory that contains the result files.
+   * @param configNames The names of the configurations.
+   * @return A new model.
+   * @throws IOException If a file can not be read.
+   */
+  public static CostModel fit(File dir, Iterable<String> configNames)
+      throws IOException {
+    final CostModel model = new CostModel();
+    for (final String config : configNames) {
+      final File file = new File(dir, config + ResultWriter.Format.CSV
+          .extension);
+      if (!file.exists()) {
+        continue;
+      }
+      for (final Map<String, String> row : ResultWriter.readCsv(file)) {
+        model.add(config, Double.parseDouble(row.get("dynamism")),
+            Double.parseDouble(row.get("urgency_mean")),
+            Double.parseDouble(row.get("comp_time")));
+      }
+    }
+    return model;
+  }
+
+  void add(String config, double dynamism, double urgency, double cost) {
+    final List<Object> key = key(config, dynamism, urgency);
+    if (!cells.containsKey(key)) {
+      cells.put(key, new Mean());
+    }
+    if (!configs.containsKey(config)) {
+      configs.put(config, new Mean());
+    }
+    cells.get(key).add(cost);
+    configs.get(config).add(cost);
+    global.add(cost);
+  }
+
+  static List<Object> key(String config, double dynamism, double urgency) {
+    return ImmutableList.<Object> of(config,
+        Math.round(dynamism / DYNAMISM_STEP), Math.round(urgency / 60000d));
+  }
+
+  static class Mean {
+    double sum;
+    long count;
+
+    void add(double value) {
+      sum += value;
+      count++;
+    }
+
+    double get() {
+      return sum / count;
+    }
+  }
+}
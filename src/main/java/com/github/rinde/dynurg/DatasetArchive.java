@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A dataset packed in a single file. Of each scenario, the files that are
+ * written by {@link Generator} (properties, points, times, scenario and binary
+ * scenario) are stored as separately compressed parts. An index at the end of
+ * the file contains the offset of every part, opening an archive reads only
+ * the index and a part is read and decompressed when it is requested. A
+ * single scenario can therefore be read by its problem class and instance id
+ * without reading the rest of the dataset.
+ * <p>
+ * All numbers are big endian. A file consists of:
+ * <ul>
+ * <li><code>int</code> magic number {@link #MAGIC}, <code>int</code> format
+ * version {@link #VERSION},</li>
+ * <li>the parts, each compressed with {@link Deflater},</li>
+ * <li>the index: <code>int</code> number of scenarios, for each scenario the
+ * problem class id and instance id (see
+ * {@link java.io.DataOutput#writeUTF(String)}) and the <code>int</code> number
+ * of parts, for each part the file extension, <code>long</code> offset,
+ * <code>int</code> compressed length and <code>int</code> length,</li>
+ * <li><code>long</code> offset of the index, <code>int</code> magic number.
+ * </li>
+ * </ul>
+ * An archive of which the writer was not closed has no index and can not be
+ * opened. An opened archive can be read by multiple threads concurrently.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class DatasetArchive implements Closeable {
+  /**
+   * The magic number at the start and end of each file: 'DUDA'.
+   */
+  public static final int MAGIC = 0x44554441;
+
+  /**
+   * The current version of the format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The file extension of dataset archives.
+   */
+  public static final String EXTENSION = ".dsa";
+
+  static final String PROPERTIES = ".properties";
+  static final int HEADER_SIZE = 8;
+  // index offset + magic
+  static final int FOOTER_SIZE = 12;
+
+  final Path file;
+  final FileChannel channel;
+  // by scenario id, in the order in which the scenarios were written
+  final ImmutableMap<String, Entry> entries;
+
+  DatasetArchive(Path f, FileChannel ch, ImmutableMap<String, Entry> es) {
+    file = f;
+    channel = ch;
+    entries = es;
+  }
+
+  /**
+   * Packs all scenarios of a dataset directory in an archive.
+   * @param args The directory, default is <code>files/dataset/</code>, and
+   *          optionally the archive file, default is the directory name
+   *          followed by {@link #EXTENSION}.
+   * @throws IOException If a file can not be read or written.
+   */
+  public static void main(String[] args) throws IOException {
+    final Path dir = Paths.get(args.length > 0 ? args[0] : "files/dataset/");
+    final Path archive = args.length > 1 ? Paths.get(args[1]) : dir
+        .resolveSibling(dir.getFileName() + EXTENSION);
+    final int packed = pack(dir, archive);
+    System.out.println("Packed " + packed + " scenarios in " + archive);
+  }
+
+  /**
+   * Packs all scenarios of a dataset directory in an archive. A scenario is
+   * identified by its <code>.properties</code> file, all files with the same
+   * name are added as parts.
+   * @param dir The dataset directory.
+   * @param archive The archive file, an existing file is replaced.
+   * @return The number of packed scenarios.
+   * @throws IOException If a file can not be read or written.
+   */
+  public static int pack(Path dir, Path archive) throws IOException {
+    int packed = 0;
+    try (final Writer writer = writer(archive);
+        final DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+            "*" + PROPERTIES)) {
+      for (final Path file : files) {
+        final Map<String, String> props = ScenarioIndex.parseProperties(
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        final String name = file.toString();
+        writer.addFiles(props.get("problem_class"), props.get("id"),
+            name.substring(0, name.length() - PROPERTIES.length()));
+        packed++;
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Opens an archive, only the index is read.
+   * @param file The archive file.
+   * @return The archive, it must be closed after use.
+   * @throws IOException If the file can not be read or is not a complete
+   *           archive.
+   */
+  public static DatasetArchive open(Path file) throws IOException {
+    final FileChannel channel = FileChannel.open(file,
+        StandardOpenOption.READ);
+    try {
+      return new DatasetArchive(file, channel, readIndex(file, channel));
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a writer of a new archive.
+   * @param file The archive file, an existing file is replaced.
+   * @return The writer, the archive is complete when the writer is closed.
+   * @throws IOException If the file can not be created.
+   */
+  public static Writer writer(Path file) throws IOException {
+    return new Writer(file);
+  }
+
+  /**
+   * @return All scenarios in the order in which they were written.
+   */
+  public ImmutableCollection<Entry> entries() {
+    return entries.values();
+  }
+
+  /**
+   * @return The number of scenarios in the archive.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @param scenarioId The id of the scenario: the problem class id followed by
+   *          the instance id.
+   * @return <code>true</code> if the archive contains the scenario.
+   */
+  public boolean contains(String scenarioId) {
+    return entries.containsKey(scenarioId);
+  }
+
+  /**
+   * Looks up a scenario.
+   * @param problemClass The id of the problem class of the scenario.
+   * @param instanceId The instance id of the scenario.
+   * @return The entry of the scenario.
+   * @throws IllegalArgumentException if the scenario is not in the archive.
+   */
+  public Entry get(String problemClass, String instanceId) {
+    return get(problemClass + instanceId);
+  }
+
+  /**
+   * Looks up a scenario.
+   * @param scenarioId The id of the scenario: the problem class id followed by
+   *          the instance id (e.g. <code>5-0.50#3</code>).
+   * @return The entry of the scenario.
+   * @throws IllegalArgumentException if the scenario is not in the archive.
+   */
+  public Entry get(String scenarioId) {
+    final Entry entry = entries.get(scenarioId);
+    checkArgument(entry != null, "There is no scenario %s in %s.", scenarioId,
+        file);
+    return entry;
+  }
+
+  /**
+   * Reads and decompresses a part of a scenario.
+   * @param entry The scenario.
+   * @param extension The file extension of the part, e.g.
+   *          <code>.properties</code>.
+   * @return The contents of the part.
+   * @throws IOException If the part can not be read or is corrupt.
+   * @throws IllegalArgumentException if the scenario has no such part.
+   */
+  public byte[] read(Entry entry, String extension) throws IOException {
+    final Part part = entry.parts.get(extension);
+    checkArgument(part != null, "Scenario %s has no %s part.",
+        entry.scenarioId(), extension);
+    final byte[] contents = ByteStreams.toByteArray(new InflaterInputStream(
+        new ByteArrayInputStream(read(channel, part.offset,
+            part.compressedLength).array())));
+    if (contents.length != part.length) {
+      throw new IOException("Part " + extension + " of scenario "
+          + entry.scenarioId() + " in " + file + " is corrupt.");
+    }
+    return contents;
+  }
+
+  /**
+   * Reads a scenario, the binary version is read if present.
+   * @param entry The scenario.
+   * @return The scenario.
+   * @throws IOException If the scenario can not be read.
+   */
+  public Scenario readScenario(Entry entry) throws IOException {
+    if (entry.parts.containsKey(BinaryScenarioIO.EXTENSION)) {
+      return BinaryScenarioIO.read(
+          ByteBuffer.wrap(read(entry, BinaryScenarioIO.EXTENSION)),
+          file + "!" + entry.scenarioId());
+    }
+    return ScenarioIO.read(new String(
+        read(entry, BinaryScenarioIO.TEXT_EXTENSION), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Lists the scenario files as if the archive was unpacked in a directory.
+   * These files do not exist but can be read with {@link #reader()} and
+   * converted to scenario ids with {@link ScenarioIndex#FILE_TO_SCENARIO_ID}.
+   * @param dir The directory.
+   * @return The <code>.scen</code> file of each scenario.
+   */
+  public ImmutableList<Path> files(Path dir) {
+    final ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (final String scenarioId : entries.keySet()) {
+      files.add(dir.resolve(scenarioId + BinaryScenarioIO.TEXT_EXTENSION));
+    }
+    return files.build();
+  }
+
+  /**
+   * Creates a reader of the scenarios in this archive. The reader accepts the
+   * files of {@link #files(Path)}, only the file name is used.
+   * @return The reader.
+   */
+  public Function<Path, Scenario> reader() {
+    return new Function<Path, Scenario>() {
+      @Override
+      public Scenario apply(Path input) {
+        try {
+          return readScenario(get(ScenarioIndex.FILE_TO_SCENARIO_ID
+              .apply(input)));
+        } catch (final IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  static ImmutableMap<String, Entry> readIndex(Path file, FileChannel channel)
+      throws IOException {
+    final long size = channel.size();
+    if (size < HEADER_SIZE + FOOTER_SIZE) {
+      throw new IOException(file + " is not a complete dataset archive.");
+    }
+    final ByteBuffer header = read(channel, 0, HEADER_SIZE);
+    final ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+    final long indexOffset = footer.getLong();
+    if (header.getInt() != MAGIC || footer.getInt() != MAGIC) {
+      throw new IOException(file + " is not a complete dataset archive.");
+    }
+    final int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version: " + version);
+    }
+    if (indexOffset < HEADER_SIZE || indexOffset > size - FOOTER_SIZE) {
+      throw new IOException(file + " has an invalid index offset.");
+    }
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        read(channel, indexOffset, (int) (size - FOOTER_SIZE - indexOffset))
+            .array()));
+    final int numEntries = in.readInt();
+    final ImmutableMap.Builder<String, Entry> entries = ImmutableMap.builder();
+    for (int i = 0; i < numEntries; i++) {
+      final String problemClass = in.readUTF();
+      final String instanceId = in.readUTF();
+      final int numParts = in.readInt();
+      final ImmutableMap.Builder<String, Part> parts = ImmutableMap.builder();
+      for (int j = 0; j < numParts; j++) {
+        final String extension = in.readUTF();
+        final Part part = new Part(in.readLong(), in.readInt(), in.readInt());
+        if (part.offset < HEADER_SIZE
+            || part.offset + part.compressedLength > indexOffset) {
+          throw new IOException(file + " has an invalid index.");
+        }
+        parts.put(extension, part);
+      }
+      final Entry entry = new Entry(problemClass, instanceId, parts.build());
+      entries.put(entry.scenarioId(), entry);
+    }
+    return entries.build();
+  }
+
+  // positional reads do not change the position of the channel, this is what
+  // allows concurrent reads
+  static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * A scenario in an archive.
+   */
+  public static final class Entry {
+    /**
+     * The id of the problem class.
+     */
+    public final String problemClass;
+
+    /**
+     * The instance id.
+     */
+    public final String instanceId;
+
+    // by file extension
+    final ImmutableMap<String, Part> parts;
+
+    Entry(String pc, String id, ImmutableMap<String, Part> ps) {
+      problemClass = pc;
+      instanceId = id;
+      parts = ps;
+    }
+
+    /**
+     * @return The id of the scenario: the problem class id followed by the
+     *         instance id.
+     */
+    public String scenarioId() {
+      return problemClass + instanceId;
+    }
+
+    /**
+     * @return The file extensions of the parts of the scenario.
+     */
+    public ImmutableSet<String> extensions() {
+      return parts.keySet();
+    }
+
+    @Override
+    public String toString() {
+      return scenarioId();
+    }
+  }
+
+  static final class Part {
+    final long offset;
+    final int compressedLength;
+    final int length;
+
+    Part(long off, int compressed, int len) {
+      offset = off;
+      compressedLength = compressed;
+      length = len;
+    }
+  }
+
+  /**
+   * Writes a new archive, scenarios are appended one at a time and the index
+   * is written when the writer is closed. Not thread safe.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static final class Writer implements Closeable {
+    final CountingOutputStream counter;
+    final DataOutputStream out;
+    final Map<String, Entry> entries;
+    boolean closed;
+
+    Writer(Path file) throws IOException {
+      counter = new CountingOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(file)));
+      out = new DataOutputStream(counter);
+      entries = new LinkedHashMap<>();
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    }
+
+    /**
+     * Appends a scenario.
+     * @param problemClass The id of the problem class of the scenario.
+     * @param instanceId The instance id of the scenario.
+     * @param parts The contents of the parts by file extension, at least the
+     *          <code>.properties</code> and a scenario part are required.
+     * @return This, as per the builder pattern.
+     * @throws IOException If the archive can not be written.
+     */
+    public Writer add(String problemClass, String instanceId,
+        Map<String, byte[]> parts) throws IOException {
+      checkState(!closed, "The writer is closed.");
+      final String scenarioId = problemClass + instanceId;
+      checkArgument(!entries.containsKey(scenarioId),
+          "Scenario %s is already in the archive.", scenarioId);
+      checkArgument(parts.containsKey(PROPERTIES)
+          && (parts.containsKey(BinaryScenarioIO.TEXT_EXTENSION)
+          || parts.containsKey(BinaryScenarioIO.EXTENSION)),
+          "The properties and the scenario of %s are required.", scenarioId);
+
+      final ImmutableMap.Builder<String, Part> index = ImmutableMap.builder();
+      for (final Map.Entry<String, byte[]> part : parts.entrySet()) {
+        final long offset = counter.getCount();
+        final Deflater deflater = new Deflater();
+        try {
+          final DeflaterOutputStream deflated = new DeflaterOutputStream(
+              counter, deflater);
+          deflated.write(part.getValue());
+          // does not close the archive
+          deflated.finish();
+        } finally {
+          deflater.end();
+        }
+        index.put(part.getKey(), new Part(offset,
+            (int) (counter.getCount() - offset), part.getValue().length));
+      }
+      entries.put(scenarioId, new Entry(problemClass, instanceId,
+          index.build()));
+      return this;
+    }
+
+    /**
+     * Appends a scenario of which the files are written by {@link Generator},
+     * the files that do not exist are skipped.
+     * @param problemClass The id of the problem class of the scenario.
+     * @param instanceId The instance id of the scenario.
+     * @param fileName The name of the files of the scenario without
+     *          extension.
+     * @return This, as per the builder pattern.
+     * @throws IOException If a file can not be read or the archive can not be
+     *           written.
+     */
+    public Writer addFiles(String problemClass, String instanceId,
+        String fileName) throws IOException {
+      final ImmutableMap.Builder<String, byte[]> parts = ImmutableMap
+          .builder();
+      for (final String extension : DatasetWriter.EXTENSIONS) {
+        final Path file = Paths.get(fileName + extension);
+        if (Files.exists(file)) {
+          parts.put(extension, Files.readAllBytes(file));
+        }
+      }
+      return add(problemClass, instanceId, parts.build());
+    }
+
+    /**
+     * @return The number of scenarios written so far.
+     */
+    public int size() {
+      return entries.size();
+    }
+
+    /**
+     * Writes the index and closes the file.
+     * @throws IOException If the archive can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        final long indexOffset = counter.getCount();
+        out.writeInt(entries.size());
+        for (final Entry entry : entries.values()) {
+          out.writeUTF(entry.problemClass);
+          out.writeUTF(entry.instanceId);
+          out.writeInt(entry.parts.size());
+          for (final Map.Entry<String, Part> part : entry.parts.entrySet()) {
+            out.writeUTF(part.getKey());
+            out.writeLong(part.getValue().offset);
+            out.writeInt(part.getValue().compressedLength);
+            out.writeInt(part.getValue().length);
+          }
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC);
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
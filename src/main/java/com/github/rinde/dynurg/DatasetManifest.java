@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.primitives.Doubles;
+
+/**
+ * A single file that lists the metadata of all scenarios of a dataset:
+ * problem class, instance id, dynamism, urgency and time series type. It is
+ * written by {@link Generator} as <code>manifest.csv</code> in the dataset
+ * directory, for existing datasets it can be created with
+ * {@link #main(String[])}.
+ * <p>
+ * A {@link Selector} selects scenarios from the manifest with predicates on
+ * the metadata, the selection is resolved in memory. The selected files are
+ * the same as those of a {@link com.github.rinde.rinsim.io.FileProvider} of
+ * the dataset directory, but no directory is listed.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class DatasetManifest {
+  /**
+   * The name of the manifest file in the dataset directory.
+   */
+  public static final String FILE_NAME = "manifest.csv";
+
+  static final ImmutableList<String> HEADER = ImmutableList.of("problem_class",
+      "instance_id", "dynamism", "urgency_mean", "urgency_sd", "time_series");
+  // problem class ids contain the levels as formatted strings
+  static final double EPSILON = 1e-9;
+
+  final ImmutableList<Entry> entries;
+
+  DatasetManifest(ImmutableList<Entry> es) {
+    entries = es;
+  }
+
+  /**
+   * Creates the manifest of a dataset directory from its
+   * <code>.properties</code> files.
+   * @param args The directory, default is <code>files/dataset/</code>.
+   * @throws IOException If a file can not be read or written.
+   */
+  public static void main(String[] args) throws IOException {
+    final Path dir = Paths.get(args.length > 0 ? args[0] : "files/dataset/");
+    final DatasetManifest manifest = of(ScenarioIndex.load(dir));
+    manifest.write(dir.resolve(FILE_NAME));
+    System.out.println("Wrote manifest of " + manifest.size()
+        + " scenarios in " + dir);
+  }
+
+  /**
+   * Creates the manifest of the scenarios in an index.
+   * @param index The index.
+   * @return A new manifest.
+   */
+  public static DatasetManifest of(ScenarioIndex index) {
+    final ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+    for (final ScenarioIndex.Entry e : index.entries.values()) {
+      builder.add(new Entry(e.problemClass, e.instanceId, e.dynamism,
+          e.urgencyMean, e.urgencySd,
+          timeSeriesType(e.properties.get("time_series"))));
+    }
+    return new DatasetManifest(builder.build());
+  }
+
+  /**
+   * Reads a manifest.
+   * @param file The manifest file.
+   * @return The manifest.
+   * @throws IOException If the file can not be read or has an invalid format.
+   */
+  public static DatasetManifest read(Path file) throws IOException {
+    final List<String> lines = Files.readAllLines(file, Charsets.UTF_8);
+    if (lines.isEmpty()
+        || !Splitter.on(',').splitToList(lines.get(0)).equals(HEADER)) {
+      throw new IOException(file + " is not a dataset manifest.");
+    }
+    final ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+    for (final String line : lines.subList(1, lines.size())) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      final List<String> row = Splitter.on(',').splitToList(line);
+      if (row.size() != HEADER.size()) {
+        throw new IOException("Invalid line in " + file + ": " + line);
+      }
+      builder.add(new Entry(row.get(0), row.get(1),
+          Double.parseDouble(row.get(2)), Double.parseDouble(row.get(3)),
+          Double.parseDouble(row.get(4)), row.get(5)));
+    }
+    return new DatasetManifest(builder.build());
+  }
+
+  /**
+   * Writes the manifest.
+   * @param file The file to write to.
+   * @throws IOException If the file can not be written.
+   */
+  public void write(Path file) throws IOException {
+    final List<String> lines = newArrayList();
+    lines.add(Joiner.on(',').join(HEADER));
+    for (final Entry e : entries) {
+      lines.add(Joiner.on(',').join(e.problemClass, e.instanceId, e.dynamism,
+          e.urgencyMean, e.urgencySd, e.timeSeries));
+    }
+    Files.write(file, lines, Charsets.UTF_8);
+  }
+
+  /**
+   * @return All scenarios in the manifest.
+   */
+  public ImmutableList<Entry> entries() {
+    return entries;
+  }
+
+  /**
+   * @return The number of scenarios in the manifest.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Creates an index of the metadata of all scenarios in the manifest, the
+   * properties of the index entries are limited to the columns of the
+   * manifest.
+   * @return A new index.
+   */
+  public ScenarioIndex index() {
+    final ImmutableTable.Builder<String, String, ScenarioIndex.Entry> builder =
+        ImmutableTable.builder();
+    for (final Entry e : entries) {
+      builder.put(e.problemClass, e.instanceId, new ScenarioIndex.Entry(
+          ImmutableMap.<String, String> builder()
+              .put("problem_class", e.problemClass)
+              .put("id", e.instanceId)
+              .put("dynamism", Double.toString(e.dynamism))
+              .put("urgency_mean", Double.toString(e.urgencyMean))
+              .put("urgency_sd", Double.toString(e.urgencySd))
+              .put("time_series", e.timeSeries)
+              .build()));
+    }
+    return new ScenarioIndex(builder.build());
+  }
+
+  /**
+   * @return A new selector that selects all scenarios.
+   */
+  public static Selector selector() {
+    return new Selector();
+  }
+
+  /**
+   * Parses the urgency level of a problem class.
+   * @param problemClass The id of the problem class, e.g. <code>5-0.50</code>.
+   * @return The urgency level in minutes.
+   */
+  public static long urgencyLevel(String problemClass) {
+    return Long.parseLong(problemClass.substring(0, separator(problemClass)));
+  }
+
+  /**
+   * Parses the dynamism level of a problem class.
+   * @param problemClass The id of the problem class, e.g. <code>5-0.50</code>.
+   * @return The dynamism level.
+   */
+  public static double dynamismLevel(String problemClass) {
+    return Double.parseDouble(problemClass.substring(
+        separator(problemClass) + 1));
+  }
+
+  static int separator(String problemClass) {
+    final int separator = problemClass.indexOf('-');
+    checkArgument(separator > 0, "Invalid problem class: %s.", problemClass);
+    return separator;
+  }
+
+  // the time_series property of the generator, e.g. 'sine Poisson', starts
+  // with the name of the type
+  static String timeSeriesType(String property) {
+    checkArgument(property != null, "The time series type is missing.");
+    return Splitter.on(' ').omitEmptyStrings().split(property).iterator()
+        .next().toUpperCase();
+  }
+
+  /**
+   * The metadata of a scenario.
+   */
+  public static final class Entry {
+    /**
+     * The id of the problem class, e.g. <code>5-0.50</code>.
+     */
+    public final String problemClass;
+
+    /**
+     * The instance id, e.g. <code>#3</code>.
+     */
+    public final String instanceId;
+
+    /**
+     * The number of the instance within its problem class.
+     */
+    public final int instance;
+
+    /**
+     * The urgency level of the problem class in minutes.
+     */
+    public final long urgency;
+
+    /**
+     * The dynamism level of the problem class.
+     */
+    public final double dynamismLevel;
+
+    /**
+     * The dynamism of the scenario.
+     */
+    public final double dynamism;
+
+    /**
+     * The mean urgency of the scenario.
+     */
+    public final double urgencyMean;
+
+    /**
+     * The standard deviation of the urgency of the scenario.
+     */
+    public final double urgencySd;
+
+    /**
+     * The type of the time series of the order arrivals: <code>SINE</code>,
+     * <code>HOMOGENOUS</code>, <code>NORMAL</code> or <code>UNIFORM</code>.
+     */
+    public final String timeSeries;
+
+    Entry(String pc, String id, double dyn, double urgMean, double urgSd,
+        String ts) {
+      problemClass = pc;
+      instanceId = id;
+      dynamism = dyn;
+      urgencyMean = urgMean;
+      urgencySd = urgSd;
+      timeSeries = ts;
+      checkArgument(id.startsWith("#"), "Invalid instance id: %s.", id);
+      urgency = urgencyLevel(pc);
+      dynamismLevel = dynamismLevel(pc);
+      instance = Integer.parseInt(id.substring(1));
+    }
+
+    /**
+     * @return The id of the scenario: the problem class id followed by the
+     *         instance id.
+     */
+    public String scenarioId() {
+      return problemClass + instanceId;
+    }
+
+    /**
+     * @return The name of the scenario file, relative to the dataset
+     *         directory.
+     */
+    public String fileName() {
+      return scenarioId() + BinaryScenarioIO.TEXT_EXTENSION;
+    }
+
+    @Override
+    public String toString() {
+      return scenarioId();
+    }
+  }
+
+  /**
+   * Selects scenarios from a manifest, a scenario is selected if it satisfies
+   * all conditions. For example, <code>selector().dynamism(.2, .6)
+   * .maxUrgency(20).instances(6)</code> selects the first six instances of the
+   * problem classes with a dynamism level in [0.2,0.6] and an urgency level of
+   * at most 20 minutes.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Selector implements Predicate<Entry> {
+    final List<Predicate<? super Entry>> conditions;
+
+    Selector() {
+      conditions = newArrayList();
+    }
+
+    /**
+     * Selects the problem classes with a dynamism level in [lb,ub].
+     * @param lb The lower bound.
+     * @param ub The upper bound.
+     * @return This, as per the builder pattern.
+     */
+    public Selector dynamism(final double lb, final double ub) {
+      checkArgument(lb <= ub, "Invalid dynamism range [%s,%s].", lb, ub);
+      return filter(new Predicate<Entry>() {
+        @Override
+        public boolean apply(Entry input) {
+          return input.dynamismLevel >= lb - EPSILON
+              && input.dynamismLevel <= ub + EPSILON;
+        }
+      });
+    }
+
+    /**
+     * Selects the problem classes with one of the specified dynamism levels.
+     * @param levels The dynamism levels.
+     * @return This, as per the builder pattern.
+     */
+    public Selector dynamismLevels(final double... levels) {
+      final ImmutableList<Double> values = ImmutableList.copyOf(Doubles
+          .asList(levels));
+      return filter(new Predicate<Entry>() {
+        @Override
+        public boolean apply(Entry input) {
+          for (final double level : values) {
+            if (Math.abs(input.dynamismLevel - level) < EPSILON) {
+              return true;
+            }
+          }
+          return false;
+        }
+      });
+    }
+
+    /**
+     * Selects the problem classes with an urgency level in [lb,ub].
+     * @param lb The lower bound in minutes.
+     * @param ub The upper bound in minutes.
+     * @return This, as per the builder pattern.
+     */
+    public Selector urgency(final long lb, final long ub) {
+      checkArgument(lb <= ub, "Invalid urgency range [%s,%s].", lb, ub);
+      return filter(new Predicate<Entry>() {
+        @Override
+        public boolean apply(Entry input) {
+          return input.urgency >= lb && input.urgency <= ub;
+        }
+      });
+    }
+
+    /**
+     * Selects the problem classes with an urgency level of at most the
+     * specified number of minutes.
+     * @param ub The upper bound in minutes.
+     * @return This, as per the builder pattern.
+     */
+    public Selector maxUrgency(long ub) {
+      return urgency(Long.MIN_VALUE, ub);
+    }
+
+    /**
+     * Selects the first instances of each problem class.
+     * @param num The number of instances.
+     * @return This, as per the builder pattern.
+     */
+    public Selector instances(final int num) {
+      return filter(new Predicate<Entry>() {
+        @Override
+        public boolean apply(Entry input) {
+          return input.instance < num;
+        }
+      });
+    }
+
+    /**
+     * Selects the scenarios with one of the specified time series types.
+     * @param types The types, see {@link Entry#timeSeries}.
+     * @return This, as per the builder pattern.
+     */
+    public Selector timeSeries(String... types) {
+      final ImmutableSet<String> values = ImmutableSet.copyOf(types);
+      return filter(new Predicate<Entry>() {
+        @Override
+        public boolean apply(Entry input) {
+          return values.contains(input.timeSeries);
+        }
+      });
+    }
+
+    /**
+     * Adds a condition.
+     * @param condition The condition.
+     * @return This, as per the builder pattern.
+     */
+    public Selector filter(Predicate<? super Entry> condition) {
+      conditions.add(condition);
+      return this;
+    }
+
+    @Override
+    public boolean apply(Entry input) {
+      return Predicates.and(conditions).apply(input);
+    }
+
+    /**
+     * @param manifest The manifest.
+     * @return The selected scenarios in the order of the manifest.
+     */
+    public ImmutableList<Entry> select(DatasetManifest manifest) {
+      return FluentIterable.from(manifest.entries).filter(this).toList();
+    }
+
+    /**
+     * Resolves the selection to scenario files without listing the
+     * directory.
+     * @param manifest The manifest.
+     * @param dir The dataset directory.
+     * @return The <code>.scen</code> files of the selected scenarios.
+     */
+    public ImmutableSet<Path> files(DatasetManifest manifest, Path dir) {
+      final ImmutableSet.Builder<Path> files = ImmutableSet.builder();
+      for (final Entry entry : select(manifest)) {
+        files.add(dir.resolve(entry.fileName()));
+      }
+      return files.build();
+    }
+
+    /**
+     * Creates a filter for a {@link com.github.rinde.rinsim.io.FileProvider}
+     * of the dataset directory that accepts the <code>.scen</code> files of
+     * the selected scenarios.
+     * @param manifest The manifest.
+     * @return The filter.
+     */
+    public Predicate<Path> pathFilter(DatasetManifest manifest) {
+      final ImmutableSet<String> names = FluentIterable
+          .from(select(manifest))
+          .transform(new Function<Entry, String>() {
+            @Override
+            public String apply(Entry input) {
+              return input.fileName();
+            }
+          })
+          .toSet();
+      return new Predicate<Path>() {
+        @Override
+        public boolean apply(Path input) {
+          return names.contains(input.getFileName().toString());
+        }
+      };
+    }
+  }
+}
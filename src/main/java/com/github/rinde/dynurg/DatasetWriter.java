@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+
+import com.github.rinde.dynurg.Generator.GeneratorSettings;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.Scenario.ProblemClass;
+import com.github.rinde.rinsim.scenario.Scenario.SimpleProblemClass;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+import com.github.rinde.rinsim.scenario.measure.Metrics;
+import com.github.rinde.rinsim.scenario.measure.MetricsIO;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+/**
+ * Writes the files of accepted scenarios in a background thread, such that
+ * generation continues while the files are written. Scenarios are queued in a
+ * bounded queue, {@link #write(Entry)} blocks when the queue is full. The
+ * writer thread takes the queued scenarios in batches and creates each
+ * directory once.
+ * <p>
+ * {@link #close()} waits until all queued scenarios are written and verifies
+ * that all files of all scenarios exist and are not empty. A failure of the
+ * writer thread is rethrown by the next call to {@link #write(Entry)} or by
+ * {@link #close()}, an accepted scenario is therefore never lost silently.
+ * <p>
+ * When all scenarios are written, the {@link DatasetManifest} of the written
+ * scenarios is written. Optionally, the files of each scenario are also packed
+ * in a {@link DatasetArchive} which is completed and verified by
+ * {@link #close()}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+final class DatasetWriter implements Closeable {
+  static final int DEFAULT_CAPACITY = 64;
+  static final int DEFAULT_BATCH_SIZE = 16;
+  static final ImmutableList<String> EXTENSIONS = ImmutableList.of(
+      ".properties", ".points", ".times", ".scen", BinaryScenarioIO.EXTENSION);
+
+  // marks the end of the queue
+  static final Entry END = new Entry(null, null, 0d, null, null, null, null);
+
+  final BlockingQueue<Entry> queue;
+  final int batchSize;
+  final List<Entry> submitted;
+  final Set<File> directories;
+  final Path manifestFile;
+  // only accessed by the writer thread until it is finished
+  final List<DatasetManifest.Entry> manifest;
+  final Optional<Path> archiveFile;
+  final Optional<DatasetArchive.Writer> archive;
+  final Thread thread;
+  volatile Throwable failure;
+  boolean closed;
+
+  DatasetWriter(Path manifestPath, Optional<Path> archivePath)
+      throws IOException {
+    this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, manifestPath, archivePath);
+  }
+
+  DatasetWriter(int capacity, int batch, Path manifestPath,
+      Optional<Path> archivePath) throws IOException {
+    checkArgument(capacity > 0 && batch > 0,
+        "Capacity and batch size must be positive.");
+    queue = new ArrayBlockingQueue<>(capacity);
+    batchSize = batch;
+    submitted = newArrayList();
+    directories = newHashSet();
+    manifestFile = manifestPath;
+    manifest = newArrayList();
+    archiveFile = archivePath;
+    if (archivePath.isPresent()) {
+      archive = Optional.of(DatasetArchive.writer(archivePath.get()));
+    } else {
+      archive = Optional.absent();
+    }
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeBatches();
+        } catch (final Throwable e) {
+          failure = e;
+          // unblock the producer
+          queue.clear();
+        }
+      }
+    }, "dataset-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Queues a scenario for writing, blocks while the queue is full.
+   * @param entry The scenario and its metadata.
+   */
+  void write(Entry entry) {
+    checkState(!closed, "The writer is closed.");
+    rethrowFailure();
+    submitted.add(entry);
+    try {
+      while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+        rethrowFailure();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Waits until all queued scenarios are written and verifies their files.
+   * @throws IOException If a file is missing or empty.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      while (thread.isAlive()
+          && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+        rethrowFailure();
+      }
+      thread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    rethrowFailure();
+    verify();
+  }
+
+  void verify() throws IOException {
+    final List<File> missing = newArrayList();
+    for (final Entry entry : submitted) {
+      for (final String ext : EXTENSIONS) {
+        final File file = new File(entry.fileName + ext);
+        if (!file.isFile() || file.length() == 0) {
+          missing.add(file);
+        }
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new IOException("Missing or empty dataset files: " + missing);
+    }
+    verifyManifest();
+    if (archiveFile.isPresent()) {
+      verifyArchive(archiveFile.get());
+    }
+    System.out.println("Wrote and verified " + submitted.size()
+        + " scenarios.");
+  }
+
+  void verifyManifest() throws IOException {
+    final Set<String> listed = newHashSet();
+    for (final DatasetManifest.Entry entry : DatasetManifest.read(
+        manifestFile).entries()) {
+      listed.add(entry.scenarioId());
+    }
+    final List<String> missing = newArrayList();
+    for (final Entry entry : submitted) {
+      if (!listed.contains(entry.problemClassId + entry.instanceId)) {
+        missing.add(entry.problemClassId + entry.instanceId);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new IOException("Missing scenarios in " + manifestFile + ": "
+          + missing);
+    }
+  }
+
+  void verifyArchive(Path file) throws IOException {
+    final List<String> missing = newArrayList();
+    try (final DatasetArchive packed = DatasetArchive.open(file)) {
+      for (final Entry entry : submitted) {
+        final String scenarioId = entry.problemClassId + entry.instanceId;
+        if (!packed.contains(scenarioId)
+            || !packed.get(scenarioId).extensions().containsAll(EXTENSIONS)) {
+          missing.add(scenarioId);
+        }
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new IOException("Missing or incomplete scenarios in " + file
+          + ": " + missing);
+    }
+  }
+
+  void rethrowFailure() {
+    if (failure != null) {
+      throw new IllegalStateException("Writing the dataset failed.", failure);
+    }
+  }
+
+  void writeBatches() throws IOException, InterruptedException {
+    final List<Entry> batch = newArrayList();
+    while (true) {
+      batch.add(queue.take());
+      queue.drainTo(batch, batchSize - 1);
+      for (final Entry entry : batch) {
+        if (entry == END) {
+          Files.createParentDirs(manifestFile.toFile());
+          new DatasetManifest(ImmutableList.copyOf(manifest))
+              .write(manifestFile);
+          // after a failure the archive is not closed, it has no index and
+          // can therefore not be mistaken for a complete archive
+          if (archive.isPresent()) {
+            archive.get().close();
+          }
+          return;
+        }
+        final File dir = new File(entry.fileName).getParentFile();
+        if (directories.add(dir)) {
+          Files.createParentDirs(new File(entry.fileName));
+        }
+        entry.write();
+        manifest.add(entry.manifestEntry());
+        if (archive.isPresent()) {
+          archive.get().addFiles(entry.problemClassId, entry.instanceId,
+              entry.fileName);
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * An accepted scenario and its metadata.
+   */
+  static final class Entry {
+    final Scenario scenario;
+    final StatisticalSummary urgency;
+    final double dynamism;
+    final String problemClassId;
+    final String instanceId;
+    final GeneratorSettings settings;
+    final String fileName;
+
+    Entry(Scenario scen, StatisticalSummary urg, double dyn, String pcId,
+        String id, GeneratorSettings s, String file) {
+      scenario = scen;
+      urgency = urg;
+      dynamism = dyn;
+      problemClassId = pcId;
+      instanceId = id;
+      settings = s;
+      fileName = file;
+    }
+
+    DatasetManifest.Entry manifestEntry() {
+      return new DatasetManifest.Entry(problemClassId, instanceId, dynamism,
+          urgency.getMean(), urgency.getStandardDeviation(),
+          settings.timeSeriesType.name());
+    }
+
+    void write() throws IOException {
+      Generator.writePropertiesFile(scenario, urgency, dynamism,
+          problemClassId, instanceId, settings, fileName);
+      MetricsIO.writeLocationList(Metrics.getServicePoints(scenario),
+          new File(fileName + ".points"));
+      MetricsIO.writeTimes(scenario.getTimeWindow().end,
+          Metrics.getArrivalTimes(scenario), new File(fileName + ".times"));
+
+      final ProblemClass pc = new SimpleProblemClass(problemClassId);
+      final Scenario finalScenario = Scenario.builder(pc)
+          .copyProperties(scenario)
+          .problemClass(pc)
+          .instanceId(instanceId)
+          .build();
+
+      ScenarioIO.write(finalScenario, new File(fileName + ".scen").toPath());
+      BinaryScenarioIO.write(finalScenario,
+          new File(fileName + BinaryScenarioIO.EXTENSION).toPath());
+    }
+  }
+}
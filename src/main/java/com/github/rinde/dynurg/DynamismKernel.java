@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.rinde.rinsim.scenario.AddParcelEvent;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.TimedEvent;
+import com.github.rinde.rinsim.scenario.measure.Metrics;
+
+/**
+ * Computes dynamism on primitive arrays of arrival times. The computation is
+ * exactly the same as {@link Metrics#measureDynamism(Iterable, double)} (see
+ * also {@link DynamismComputationExample}), the results are identical up to
+ * the last bit. Arrival times are copied in a scratch buffer that is reused
+ * between invocations, once the buffer is large enough no memory is
+ * allocated.
+ * <p>
+ * Instances are not thread safe, each thread should use its own instance.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class DynamismKernel {
+  double[] scratch;
+
+  /**
+   * Creates a new kernel with an empty scratch buffer.
+   */
+  public DynamismKernel() {
+    this(0);
+  }
+
+  /**
+   * Creates a new kernel.
+   * @param capacity The initial capacity of the scratch buffer, should be the
+   *          expected number of arrival times.
+   */
+  public DynamismKernel(int capacity) {
+    scratch = new double[capacity];
+  }
+
+  /**
+   * Measures the dynamism of the specified arrival times, the array is not
+   * modified.
+   * @param arrivalTimes The arrival times, in any order.
+   * @param lengthOfDay The length of the day, all times must be in
+   *          [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public double measure(double[] arrivalTimes, double lengthOfDay) {
+    return measure(arrivalTimes, arrivalTimes.length, lengthOfDay);
+  }
+
+  /**
+   * Measures the dynamism of the first <code>numTimes</code> arrival times,
+   * the array is not modified.
+   * @param arrivalTimes The arrival times, in any order.
+   * @param numTimes The number of arrival times.
+   * @param lengthOfDay The length of the day, all times must be in
+   *          [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public double measure(double[] arrivalTimes, int numTimes,
+      double lengthOfDay) {
+    final double[] buffer = buffer(numTimes);
+    System.arraycopy(arrivalTimes, 0, buffer, 0, numTimes);
+    return measureInPlace(buffer, numTimes, lengthOfDay);
+  }
+
+  /**
+   * Measures the dynamism of the first <code>numTimes</code> arrival times,
+   * the array is not modified.
+   * @param arrivalTimes The arrival times, in any order.
+   * @param numTimes The number of arrival times.
+   * @param lengthOfDay The length of the day, all times must be in
+   *          [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public double measure(long[] arrivalTimes, int numTimes,
+      double lengthOfDay) {
+    final double[] buffer = buffer(numTimes);
+    for (int i = 0; i < numTimes; i++) {
+      buffer[i] = arrivalTimes[i];
+    }
+    return measureInPlace(buffer, numTimes, lengthOfDay);
+  }
+
+  /**
+   * Measures the dynamism of the specified arrival times, the list is not
+   * modified.
+   * @param arrivalTimes The arrival times, in any order.
+   * @param lengthOfDay The length of the day, all times must be in
+   *          [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public double measure(List<? extends Number> arrivalTimes,
+      double lengthOfDay) {
+    final int numTimes = arrivalTimes.size();
+    final double[] buffer = buffer(numTimes);
+    for (int i = 0; i < numTimes; i++) {
+      buffer[i] = arrivalTimes.get(i).doubleValue();
+    }
+    return measureInPlace(buffer, numTimes, lengthOfDay);
+  }
+
+  /**
+   * Measures the dynamism of the order arrival times of a scenario, this
+   * yields the same result as {@link Metrics#measureDynamism(Scenario, long)}.
+   * @param scenario The scenario.
+   * @param lengthOfDay The length of the day, all order announce times must be
+   *          in [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public double measure(Scenario scenario, long lengthOfDay) {
+    final List<TimedEvent> events = scenario.asList();
+    final double[] buffer = buffer(events.size());
+    int numTimes = 0;
+    for (int i = 0; i < events.size(); i++) {
+      final TimedEvent event = events.get(i);
+      if (event instanceof AddParcelEvent) {
+        buffer[numTimes] =
+            ((AddParcelEvent) event).parcelDTO.orderAnnounceTime;
+        numTimes++;
+      }
+    }
+    return measureInPlace(buffer, numTimes, lengthOfDay);
+  }
+
+  double[] buffer(int capacity) {
+    if (scratch.length < capacity) {
+      scratch = new double[Math.max(capacity, 2 * scratch.length)];
+    }
+    return scratch;
+  }
+
+  /**
+   * Measures the dynamism of the first <code>numTimes</code> arrival times.
+   * The array is sorted in place, no memory is allocated.
+   * @param arrivalTimes The arrival times, in any order. The first
+   *          <code>numTimes</code> elements will be sorted.
+   * @param numTimes The number of arrival times.
+   * @param lengthOfDay The length of the day, all times must be in
+   *          [0,lengthOfDay).
+   * @return The dynamism.
+   */
+  public static double measureInPlace(double[] arrivalTimes, int numTimes,
+      double lengthOfDay) {
+    if (numTimes < 2) {
+      throw new IllegalArgumentException(String.format(
+          "At least two arrival times are required, found %s time(s).",
+          numTimes));
+    }
+    for (int i = 0; i < numTimes; i++) {
+      final double time = arrivalTimes[i];
+      if (!(time >= 0 && time < lengthOfDay)) {
+        throw new IllegalArgumentException(String.format(
+            "all specified times should be >= 0 and < %s. Found %s.",
+            lengthOfDay, time));
+      }
+    }
+    Arrays.sort(arrivalTimes, 0, numTimes);
+    return measureSorted(arrivalTimes, numTimes, lengthOfDay);
+  }
+
+  /**
+   * Computes the dynamism of sorted arrival times, no checks are performed.
+   * The order of all floating point operations is the same as in
+   * {@link Metrics#measureDynamism(Iterable, double)}.
+   */
+  static double measureSorted(double[] times, int numEvents,
+      double lengthOfDay) {
+    // this is the expected interarrival time
+    final double expectedInterArrivalTime = lengthOfDay / numEvents;
+
+    // deviation to expectedInterArrivalTime
+    double sumDeviation = 0;
+    double maxDeviation = (numEvents - 1) * expectedInterArrivalTime;
+    double prevDeviation = 0;
+    for (int i = 0; i < numEvents - 1; i++) {
+      // compute interarrival time
+      final double delta = times[i + 1] - times[i];
+      if (delta < expectedInterArrivalTime) {
+        final double diff = expectedInterArrivalTime - delta;
+        final double scaledPrev = diff / expectedInterArrivalTime
+            * prevDeviation;
+        final double cur = diff + scaledPrev;
+        sumDeviation += cur;
+        maxDeviation += scaledPrev;
+        prevDeviation = cur;
+      } else {
+        prevDeviation = 0;
+      }
+    }
+    return 1d - sumDeviation / maxDeviation;
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions;
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions.IntensityFunction;
+import com.github.rinde.rinsim.scenario.generator.TimeSeries.TimeSeriesGenerator;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.math.DoubleMath;
+import com.google.common.primitives.Ints;
+
+/**
+ * The dynamism of sine Poisson time series as a function of the height of the
+ * sine intensity function. The range of heights is divided in cells, for each
+ * cell a number of time series is sampled and the number of time series that
+ * have a dynamism close to each dynamism level is counted. The phase shift has
+ * no noticeable influence on the dynamism when the time series spans multiple
+ * periods, it is therefore always drawn uniformly, as in {@link Generator}.
+ * <p>
+ * Computing a landscape takes some time, therefore it is cached in a file.
+ * The landscape can be used to draw heights that are likely to yield a time
+ * series with a dynamism close to one of the target levels, see
+ * {@link #targetedHeights(double, double)}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class DynamismLandscape {
+  final double minHeight;
+  final double cellWidth;
+  final double stepSize;
+  final int cells;
+  final int numLevels;
+  // counts[cell][level]
+  final int[][] counts;
+
+  DynamismLandscape(Builder b, int[][] cnts) {
+    minHeight = b.minHeight;
+    cellWidth = b.cellWidth();
+    stepSize = b.stepSize;
+    cells = b.cells;
+    numLevels = b.numLevels();
+    counts = cnts;
+  }
+
+  /**
+   * Creates a supplier of heights that are likely to yield a time series with
+   * a dynamism close to one of the dynamism levels in [lb,ub]. For each
+   * height, a target level is drawn uniformly, then a cell is drawn
+   * proportional to the number of hits of the target level in that cell.
+   * Every cell has a non-zero probability of being drawn. The returned
+   * supplier is thread safe.
+   * @param lb The lower bound of the dynamism levels (inclusive).
+   * @param ub The upper bound of the dynamism levels (inclusive).
+   * @return A new supplier of heights.
+   */
+  public StochasticSupplier<Double> targetedHeights(double lb, double ub) {
+    final List<Integer> levels = newArrayList();
+    for (int i = 0; i < numLevels; i++) {
+      final double level = i * stepSize;
+      if (level >= lb && level <= ub) {
+        levels.add(i);
+      }
+    }
+    checkArgument(!levels.isEmpty(), "There are no levels in [%s,%s].", lb,
+        ub);
+    final double[][] cumulative = new double[levels.size()][];
+    for (int i = 0; i < levels.size(); i++) {
+      cumulative[i] = new double[cells];
+      double sum = 0d;
+      for (int c = 0; c < cells; c++) {
+        // add-one smoothing: cells without hits remain reachable
+        sum += counts[c][levels.get(i)] + 1;
+        cumulative[i][c] = sum;
+      }
+    }
+    return new TargetedHeights(minHeight, cellWidth, cumulative);
+  }
+
+  /**
+   * @param level The index of the dynamism level.
+   * @return The number of sampled time series per cell that has a dynamism
+   *         close to the specified level.
+   */
+  public ImmutableList<Integer> hits(int level) {
+    final int[] hits = new int[cells];
+    for (int c = 0; c < cells; c++) {
+      hits[c] = counts[c][level];
+    }
+    return ImmutableList.copyOf(Ints.asList(hits));
+  }
+
+  /**
+   * @return A new builder for constructing a landscape.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  static int[][] compute(Builder b) {
+    final int[][] counts = new int[b.cells][b.numLevels()];
+    final RandomGenerator rng = new MersenneTwister(b.seed);
+    final double cellWidth = b.cellWidth();
+    final double[] arrivalTimes = new double[b.numEvents];
+    for (int c = 0; c < b.cells; c++) {
+      final double lb = b.minHeight + c * cellWidth;
+      final TimeSeriesGenerator tsg = ConditionalTimeSeries
+          .nonHomogenousPoisson(b.length, b.numEvents, b.sineIntensity(
+              StochasticSuppliers.uniformDouble(lb, lb + cellWidth)));
+      for (int i = 0; i < b.samplesPerCell; i++) {
+        final List<Double> times = tsg.generate(rng.nextLong());
+        for (int j = 0; j < b.numEvents; j++) {
+          // orders are announced at the floor of the generated times
+          arrivalTimes[j] = DoubleMath.roundToLong(times.get(j),
+              RoundingMode.FLOOR);
+        }
+        final int level = b.level(DynamismKernel.measureInPlace(arrivalTimes,
+            b.numEvents, b.length));
+        if (level >= 0) {
+          counts[c][level]++;
+        }
+      }
+    }
+    return counts;
+  }
+
+  static String header(Builder b) {
+    return Joiner.on(",").join(b.length, b.numEvents, b.period, b.minHeight,
+        b.maxHeight, b.stepSize, b.bandwidth, b.cells, b.samplesPerCell,
+        b.seed);
+  }
+
+  static void write(Builder b, int[][] counts, File file) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(header(b));
+    for (final int[] cell : counts) {
+      sb.append(System.lineSeparator())
+          .append(Joiner.on(",").join(Ints.asList(cell)));
+    }
+    try {
+      Files.createParentDirs(file);
+      Files.write(sb.toString(), file, Charsets.UTF_8);
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static int[][] read(Builder b, File file) throws IOException {
+    final List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    if (lines.size() != b.cells + 1 || !lines.get(0).equals(header(b))) {
+      throw new IOException("Landscape in " + file
+          + " was computed with different settings.");
+    }
+    final int[][] counts = new int[b.cells][];
+    for (int c = 0; c < b.cells; c++) {
+      final List<String> parts = Splitter.on(",").splitToList(
+          lines.get(c + 1));
+      if (parts.size() != b.numLevels()) {
+        throw new IOException("Malformed landscape in " + file + ".");
+      }
+      counts[c] = new int[parts.size()];
+      for (int l = 0; l < parts.size(); l++) {
+        counts[c][l] = Integer.parseInt(parts.get(l));
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Builder for {@link DynamismLandscape}.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Builder {
+    static final int DEFAULT_CELLS = 100;
+    static final int DEFAULT_SAMPLES_PER_CELL = 200;
+    static final long DEFAULT_SEED = 123L;
+
+    double length;
+    int numEvents;
+    double period;
+    double minHeight;
+    double maxHeight;
+    double stepSize;
+    double bandwidth;
+    int cells;
+    int samplesPerCell;
+    long seed;
+    File cacheDir;
+
+    Builder() {
+      length = -1;
+      numEvents = -1;
+      period = -1;
+      minHeight = -.99;
+      maxHeight = 3d;
+      stepSize = .05;
+      bandwidth = .01;
+      cells = DEFAULT_CELLS;
+      samplesPerCell = DEFAULT_SAMPLES_PER_CELL;
+      seed = DEFAULT_SEED;
+      cacheDir = new File("files/cache/");
+    }
+
+    /**
+     * Sets the length of the time series, must be set.
+     * @param len The length.
+     * @return This, as per the builder pattern.
+     */
+    public Builder length(double len) {
+      length = len;
+      return this;
+    }
+
+    /**
+     * Sets the number of events of each time series, must be set.
+     * @param num The number of events.
+     * @return This, as per the builder pattern.
+     */
+    public Builder numEvents(int num) {
+      numEvents = num;
+      return this;
+    }
+
+    /**
+     * Sets the period of the sine intensity function, must be set.
+     * @param p The period.
+     * @return This, as per the builder pattern.
+     */
+    public Builder period(double p) {
+      period = p;
+      return this;
+    }
+
+    /**
+     * Sets the range of heights, default is [-.99,3).
+     * @param min The minimum height.
+     * @param max The maximum height.
+     * @return This, as per the builder pattern.
+     */
+    public Builder heights(double min, double max) {
+      minHeight = min;
+      maxHeight = max;
+      return this;
+    }
+
+    /**
+     * Sets the dynamism levels, default is a step size of <code>.05</code>
+     * and a bandwidth of <code>.01</code>.
+     * @param step The distance between two consecutive levels.
+     * @param band A dynamism value is close to a level if the distance is
+     *          smaller than the bandwidth.
+     * @return This, as per the builder pattern.
+     */
+    public Builder dynamismLevels(double step, double band) {
+      stepSize = step;
+      bandwidth = band;
+      return this;
+    }
+
+    /**
+     * Sets the number of cells and the number of time series that are sampled
+     * per cell.
+     * @param numCells The number of cells.
+     * @param samples The number of samples per cell.
+     * @return This, as per the builder pattern.
+     */
+    public Builder resolution(int numCells, int samples) {
+      cells = numCells;
+      samplesPerCell = samples;
+      return this;
+    }
+
+    /**
+     * Sets the directory in which landscapes are cached, default is
+     * <code>files/cache/</code>.
+     * @param dir The directory.
+     * @return This, as per the builder pattern.
+     */
+    public Builder cacheDir(File dir) {
+      cacheDir = dir;
+      return this;
+    }
+
+    /**
+     * Loads the landscape from the cache directory, or computes and caches it
+     * when it is not yet available.
+     * @return The landscape.
+     */
+    public DynamismLandscape build() {
+      checkArgument(length > 0d, "Length must be set.");
+      checkArgument(numEvents > 0, "Number of events must be set.");
+      checkArgument(period > 0d, "Period must be set.");
+      checkArgument(minHeight < maxHeight);
+      checkArgument(bandwidth > 0d && bandwidth <= stepSize / 2d);
+      checkArgument(cells > 0 && samplesPerCell > 0);
+
+      final File file = new File(cacheDir, String.format(
+          "sine-dynamism-landscape-%d-%d-%d.csv", (long) length, numEvents,
+          (long) period));
+      if (file.exists()) {
+        try {
+          return new DynamismLandscape(this, read(this, file));
+        } catch (final IOException e) {
+          System.out.println(e.getMessage() + " Recomputing..");
+        }
+      }
+      System.out.println("Computing dynamism landscape: " + file);
+      final int[][] counts = compute(this);
+      write(this, counts, file);
+      return new DynamismLandscape(this, counts);
+    }
+
+    int numLevels() {
+      return (int) Math.round(1d / stepSize) + 1;
+    }
+
+    double cellWidth() {
+      return (maxHeight - minHeight) / cells;
+    }
+
+    int level(double dynamism) {
+      final double rem = dynamism % stepSize;
+      if (rem < bandwidth || rem > stepSize - bandwidth) {
+        return (int) Math.round(dynamism / stepSize);
+      }
+      return -1;
+    }
+
+    StochasticSupplier<IntensityFunction> sineIntensity(
+        StochasticSupplier<Double> heights) {
+      return IntensityFunctions
+          .sineIntensity()
+          .area(numEvents / (length / period))
+          .period(period)
+          .height(heights)
+          .phaseShift(StochasticSuppliers.uniformDouble(0, period))
+          .buildStochasticSupplier();
+    }
+  }
+
+  static class TargetedHeights
+      extends StochasticSuppliers.AbstractStochasticSupplier<Double> {
+    private static final long serialVersionUID = -2795282146934012153L;
+    final double minHeight;
+    final double cellWidth;
+    final double[][] cumulative;
+
+    TargetedHeights(double min, double width, double[][] cumul) {
+      minHeight = min;
+      cellWidth = width;
+      cumulative = cumul;
+    }
+
+    @Override
+    public Double get(long seed) {
+      final RandomGenerator rng = new MersenneTwister(seed);
+      final double[] cells = cumulative[rng.nextInt(cumulative.length)];
+      final double u = rng.nextDouble() * cells[cells.length - 1];
+      int index = Arrays.binarySearch(cells, u);
+      index = index < 0 ? -index - 1 : index + 1;
+      index = Math.min(index, cells.length - 1);
+      return minHeight + (index + rng.nextDouble()) * cellWidth;
+    }
+  }
+}
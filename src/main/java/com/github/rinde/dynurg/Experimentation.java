@@ -15,47 +15,58 @@
  */
 package com.github.rinde.dynurg;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static java.util.Arrays.asList;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
 
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
 import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic;
 import com.github.rinde.logistics.pdptw.solver.Opt2;
 import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.Solver;
 import com.github.rinde.rinsim.cli.ArgHandler;
 import com.github.rinde.rinsim.cli.ArgumentParser;
 import com.github.rinde.rinsim.cli.Menu;
+import com.github.rinde.rinsim.cli.NoArgHandler;
 import com.github.rinde.rinsim.cli.Option;
 import com.github.rinde.rinsim.experiment.CommandLineProgress;
 import com.github.rinde.rinsim.experiment.Experiment;
 import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
 import com.github.rinde.rinsim.experiment.ExperimentCli;
-import com.github.rinde.rinsim.experiment.ExperimentResults;
 import com.github.rinde.rinsim.experiment.MASConfiguration;
-import com.github.rinde.rinsim.io.FileProvider;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
 import com.github.rinde.rinsim.scenario.AddVehicleEvent;
 import com.github.rinde.rinsim.scenario.Scenario;
-import com.github.rinde.rinsim.scenario.ScenarioIO;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
-import com.google.common.base.Charsets;
+import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.FluentIterable;
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.io.Files;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
 
 /**
  * This is the main experimentation class.
@@ -68,69 +79,613 @@ public class Experimentation {
   static final ObjectiveFunction DISTANCE = new DistanceObjectiveFunction();
   static final ObjectiveFunction TARDINESS = new TardinessObjectiveFunction();
 
+  // the results of these configurations do not depend on the random seed,
+  // they are simulated once per scenario and the result is used for all
+  // repetitions
+  static final Predicate<MASConfiguration> DETERMINISTIC =
+      new Predicate<MASConfiguration>() {
+        final ImmutableSet<String> names = ImmutableSet.copyOf(
+            names(deterministicConfigurations()));
+
+        @Override
+        public boolean apply(MASConfiguration input) {
+          return names.contains(input.toString());
+        }
+      };
+
   static final String DATASET = "files/dataset/";
+  // when present the scenarios are read from the archive instead of the
+  // dataset directory
+  static final String ARCHIVE = "files/dataset" + DatasetArchive.EXTENSION;
   static final String RESULTS = "files/results/";
+  static final String PROFILE = "profile/";
+  static final String CELLS = "cells/";
+
+  static final int REPETITIONS = 10;
+  static final int INSTANCES = 6;
+  static final long RANDOM_SEED = 123L;
+  // in robust mode a simulation times out when it takes much longer than
+  // predicted by the cost model
+  static final long MIN_TIMEOUT_MS = 10 * 60 * 1000L;
+  static final double TIMEOUT_FACTOR = 10d;
+  // the live summaries of all result writers are refreshed at most once per
+  // minute
+  static final long SUMMARY_INTERVAL_MS = 60 * 1000L;
+  static final CellSummaries.Listener CELL_SUMMARIES =
+      new CellSummaries.Listener(new File(RESULTS + CELLS),
+          SUMMARY_INTERVAL_MS);
+
+  // the archive is opened once per JVM and stays open
+  static final Supplier<Optional<DatasetArchive>> DATASET_ARCHIVE = Suppliers
+      .memoize(new Supplier<Optional<DatasetArchive>>() {
+        @Override
+        public Optional<DatasetArchive> get() {
+          final Path file = Paths.get(ARCHIVE);
+          if (!Files.exists(file)) {
+            return Optional.absent();
+          }
+          try {
+            return Optional.of(DatasetArchive.open(file));
+          } catch (final IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
 
   public static void main(String[] args) {
     System.out.println(System.getProperty("jppf.config"));
 
     final long time = System.currentTimeMillis();
-    final Experiment.Builder experimentBuilder = Experiment
+    // the results of a previous run are used to predict the computation
+    // times, the most expensive simulations are dispatched first to local
+    // threads and in the -rb and -ad modes, see createExperiment
+    final CostModel costModel = fitCostModel();
+    final List<MASConfiguration> configs = longestFirst(configurations(),
+        costModel);
+    final Experiment.Builder experimentBuilder = createExperiment(
+        Collections2.filter(configs, Predicates.not(DETERMINISTIC)));
+    final ResultWriter.Builder writerBuilder = resultWriter(new File(RESULTS));
+    final SimulationJob.Builder jobBuilder = SimulationJob.builder()
+        .setScenarioReader(scenarioReader())
+        .addConfigurations(configs)
+        .setDeterministic(DETERMINISTIC)
+        .repeat(REPETITIONS)
+        .withRandomSeed(RANDOM_SEED);
+    final RobustExecutor.Builder<SimulationJob, StatisticsDTO> robustBuilder =
+        RobustExecutor.builder();
+    final SequentialStopping.Builder stoppingBuilder = SequentialStopping
+        .builder();
+    final Optional<String> error = createMenu(experimentBuilder,
+        writerBuilder, jobBuilder, robustBuilder, stoppingBuilder)
+        .safeExecute(args);
+    if (error.isPresent()) {
+      System.err.println(error.get());
+      return;
+    }
+    if (stoppingBuilder.relativeWidth > 0 && writerBuilder.append) {
+      System.err.println("Adaptive repetitions can not be resumed.");
+      return;
+    }
+    // the metadata of all scenarios is read once, before the experiment
+    // starts such that a missing dataset is detected early
+    final DatasetManifest manifest;
+    try {
+      manifest = loadManifest();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    final ScenarioIndex index = manifest.index();
+    if (writerBuilder.append) {
+      // the summaries include the results of the previous run
+      try {
+        CELL_SUMMARIES.summaries().addResults(new File(RESULTS),
+            names(configs));
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    final List<Path> files = costModel.longestFirst(
+        scenarioFiles(manifest, Predicates.<Path> alwaysTrue()),
+        names(configs), index, ScenarioIndex.FILE_TO_SCENARIO_ID);
+    if (stoppingBuilder.relativeWidth > 0) {
+      performAdaptive(robustBuilder, jobBuilder.addScenarios(files),
+          writerBuilder, index, costModel, stoppingBuilder.build());
+      return;
+    }
+    if (robustBuilder.numberOfNodes() > 0) {
+      performRobust(robustBuilder, jobBuilder.addScenarios(files),
+          writerBuilder, index, costModel);
+      return;
+    }
+    if (writerBuilder.append) {
+      resume(args, manifest, index, costModel);
+      return;
+    }
+    // the deterministic configurations are simulated once per scenario in a
+    // separate experiment
+    int computed = performOnce(args,
+        Collections2.filter(configs, DETERMINISTIC), files, index);
+
+    addScenarios(experimentBuilder, files, jobBuilder.scenarioReader);
+    // rows are written as soon as a simulation is finished
+    experimentBuilder.addResultListener(new StreamingResultListener(
+        writerBuilder.build(), new ResultRows(index)));
+    computed += experimentBuilder.perform().results.size();
+
+    final long duration = System.currentTimeMillis() - time;
+    System.out.println("Done, computed " + computed + " simulations in "
+        + duration / 1000d + "s");
+  }
+
+  /**
+   * Simulates each configuration once per scenario, the result is written for
+   * each repetition. The configurations must be deterministic.
+   * @return The number of computed simulations.
+   */
+  static int performOnce(String[] args, Collection<MASConfiguration> configs,
+      List<Path> files, ScenarioIndex index) {
+    if (configs.isEmpty()) {
+      return 0;
+    }
+    final Experiment.Builder builder = createExperiment(configs);
+    final ResultWriter.Builder writerBuilder = applyOptions(args, builder,
+        files);
+    builder
+        .repeat(1)
+        .addResultListener(new StreamingResultListener(writerBuilder.build(),
+            new ResultRows(index)));
+    return builder.perform().results.size();
+  }
+
+  // applies the command line options to the builder of an additional
+  // experiment and adds the scenarios, the options were already accepted for
+  // the main experiment so an error here means the menus are out of sync
+  static ResultWriter.Builder applyOptions(String[] args,
+      Experiment.Builder builder, List<Path> files) {
+    final ResultWriter.Builder writerBuilder = resultWriter(new File(RESULTS));
+    final SimulationJob.Builder jobBuilder = SimulationJob.builder()
+        .setScenarioReader(scenarioReader());
+    final Optional<String> error = createMenu(builder, writerBuilder,
+        jobBuilder, RobustExecutor.<SimulationJob, StatisticsDTO> builder(),
+        SequentialStopping.builder()).safeExecute(args);
+    if (error.isPresent()) {
+      throw new IllegalArgumentException(error.get());
+    }
+    addScenarios(builder, files, jobBuilder.scenarioReader);
+    return writerBuilder;
+  }
+
+  /**
+   * Computes the simulations that are missing in the result files. For each
+   * configuration a separate experiment is performed with only the scenarios
+   * for which not all repetitions are present. The seeds of the repetitions
+   * are the same as in the original run, results that were already present
+   * are not written again. Deterministic configurations are simulated once
+   * per scenario.
+   */
+  static void resume(String[] args, DatasetManifest manifest,
+      ScenarioIndex index, CostModel model) {
+    final long time = System.currentTimeMillis();
+    final List<MASConfiguration> configs = longestFirst(configurations(),
+        model);
+    final CompletedRuns completed;
+    try {
+      completed = CompletedRuns.read(new File(RESULTS), names(configs));
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    System.out.println("Resuming, found " + completed.size()
+        + " completed simulations.");
+
+    int computed = 0;
+    for (final MASConfiguration config : configs) {
+      final List<Path> files = model.longestFirst(
+          scenarioFiles(manifest, completed.incompleteScenarios(
+              config.toString(), REPETITIONS)),
+          ImmutableList.of(config.toString()), index,
+          ScenarioIndex.FILE_TO_SCENARIO_ID);
+      System.out.println(config + ": " + files.size()
+          + " scenario(s) with missing results.");
+      if (files.isEmpty()) {
+        continue;
+      }
+      // the command line options are applied to each experiment
+      final Experiment.Builder builder = createExperiment(
+          ImmutableList.of(config));
+      final ResultWriter.Builder writerBuilder = applyOptions(args, builder,
+          files);
+      if (DETERMINISTIC.apply(config)) {
+        builder.repeat(1);
+      }
+      // only the rows of missing repetitions are written
+      final StreamingResultListener listener = new StreamingResultListener(
+          writerBuilder.build(), new ResultRows(index, Optional.of(completed)));
+      builder.addResultListener(listener);
+      builder.perform();
+      computed += listener.getNumberOfResults();
+    }
+    final long duration = System.currentTimeMillis() - time;
+    System.out.println("Done, computed " + computed
+        + " missing simulations in " + duration / 1000d + "s");
+  }
+
+  /**
+   * Computes all simulations with a {@link RobustExecutor}, a simulation that
+   * fails or takes much longer than predicted is retried and stragglers are
+   * executed speculatively on idle nodes. The simulations are dispatched one
+   * at a time in order of their predicted computation time, the longest
+   * first, each node takes the next simulation as soon as it is idle. When
+   * resuming, only the simulations that are missing in the result files are
+   * computed.
+   */
+  static void performRobust(
+      RobustExecutor.Builder<SimulationJob, StatisticsDTO> robustBuilder,
+      SimulationJob.Builder jobBuilder, ResultWriter.Builder writerBuilder,
+      final ScenarioIndex index, final CostModel model) {
+    final long time = System.currentTimeMillis();
+    List<SimulationJob> jobs = jobBuilder.build();
+    Optional<CompletedRuns> completed = Optional.absent();
+    if (writerBuilder.append) {
+      try {
+        completed = Optional.of(CompletedRuns.read(new File(RESULTS),
+            names(configurations())));
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+      final List<SimulationJob> missing = newArrayList();
+      for (final SimulationJob job : jobs) {
+        final String config = job.configuration.toString();
+        if (DETERMINISTIC.apply(job.configuration)
+            ? !completed.get().isComplete(config, job.scenarioId, REPETITIONS)
+            : !completed.get().contains(config, job.scenarioId, job.seed)) {
+          missing.add(job);
+        }
+      }
+      System.out.println("Resuming, " + missing.size() + " of "
+          + jobs.size() + " simulations are missing.");
+      jobs = missing;
+    }
+    robustBuilder.timeout(timeout(index, model));
+    jobs = longestJobsFirst(jobs, index, model);
+
+    final ResultWriter writer = writerBuilder.build();
+    final RobustExecutor.Report<SimulationJob, StatisticsDTO> report;
+    try {
+      report = robustBuilder.build().execute(jobs,
+          writeRows(writer, new ResultRows(index, completed)));
+      writer.close();
+    } catch (final IOException | InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+    for (final Map.Entry<SimulationJob, Throwable> failure : report.failures
+        .entrySet()) {
+      System.err.println("FAILED: " + failure.getKey());
+      failure.getValue().printStackTrace();
+    }
+    final long duration = System.currentTimeMillis() - time;
+    System.out.println("Done, " + report + " in " + duration / 1000d + "s");
+  }
+
+  /**
+   * Computes the repetitions of each scenario and configuration in rounds,
+   * until the confidence interval of the mean cost is narrow enough or the
+   * maximum number of repetitions is reached. After each round the number of
+   * extra repetitions of each unfinished cell is estimated from its variance,
+   * all extra repetitions are computed in the next round. The seeds are the
+   * same as in a run with a fixed number of repetitions.
+   */
+  static void performAdaptive(
+      RobustExecutor.Builder<SimulationJob, StatisticsDTO> robustBuilder,
+      SimulationJob.Builder jobBuilder, ResultWriter.Builder writerBuilder,
+      final ScenarioIndex index, final CostModel model,
+      final SequentialStopping stopping) {
+    final long time = System.currentTimeMillis();
+    if (robustBuilder.numberOfNodes() == 0) {
+      for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+        robustBuilder.addNode(SimulationNodes.local(SUM));
+      }
+    }
+    final RobustExecutor<SimulationJob, StatisticsDTO> executor =
+        robustBuilder.timeout(timeout(index, model)).build();
+
+    // the not yet computed repetitions of each cell, in order of their seeds
+    final Map<List<String>, Queue<SimulationJob>> pending =
+        new LinkedHashMap<>();
+    final Map<List<String>, SummaryStatistics> costs = new LinkedHashMap<>();
+    for (final SimulationJob job : jobBuilder.repeat(stopping.maxRepetitions)
+        .build()) {
+      final List<String> cell = ImmutableList.of(job.scenarioId,
+          job.configuration.toString());
+      if (!pending.containsKey(cell)) {
+        pending.put(cell, new LinkedList<SimulationJob>());
+        costs.put(cell, new SummaryStatistics());
+      }
+      pending.get(cell).add(job);
+    }
+
+    final ResultWriter writer = writerBuilder.build();
+    final RobustExecutor.Listener<SimulationJob, StatisticsDTO> writeRows =
+        writeRows(writer, new ResultRows(index));
+    int round = 0;
+    int computed = 0;
+    try {
+      while (true) {
+        final List<SimulationJob> jobs = newArrayList();
+        for (final Map.Entry<List<String>, Queue<SimulationJob>> entry : pending
+            .entrySet()) {
+          final Queue<SimulationJob> queue = entry.getValue();
+          final int extra = stopping.additionalRepetitions(costs.get(entry
+              .getKey()));
+          for (int i = 0; i < extra && !queue.isEmpty(); i++) {
+            jobs.add(queue.remove());
+          }
+        }
+        if (jobs.isEmpty()) {
+          break;
+        }
+        round++;
+        System.out.println("Round " + round + ": " + jobs.size()
+            + " simulations.");
+        final RobustExecutor.Report<SimulationJob, StatisticsDTO> report =
+            executor.execute(longestJobsFirst(jobs, index, model),
+                new RobustExecutor.Listener<SimulationJob, StatisticsDTO>() {
+                  @Override
+                  public void receive(SimulationJob job, StatisticsDTO stats) {
+                    writeRows.receive(job, stats);
+                    costs.get(ImmutableList.of(job.scenarioId,
+                        job.configuration.toString())).addValue(
+                        SUM.computeCost(stats));
+                  }
+                });
+        for (final SimulationJob failed : report.failures.keySet()) {
+          System.err.println("FAILED: " + failed);
+        }
+        computed += report.results.size();
+        System.out.println("Round " + round + ": " + report);
+      }
+      writer.close();
+    } catch (final IOException | InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+    final long duration = System.currentTimeMillis() - time;
+    System.out.println("Done, computed " + computed + " simulations in "
+        + round + " rounds, " + duration / 1000d + "s");
+  }
+
+  // the timeout is proportional to the predicted computation time
+  static Function<SimulationJob, Long> timeout(final ScenarioIndex index,
+      final CostModel model) {
+    return new Function<SimulationJob, Long>() {
+      @Override
+      public Long apply(SimulationJob input) {
+        return Math.max(MIN_TIMEOUT_MS, (long) (TIMEOUT_FACTOR * model.predict(
+            input.configuration.toString(), index.get(input.scenarioId))));
+      }
+    };
+  }
+
+  static RobustExecutor.Listener<SimulationJob, StatisticsDTO> writeRows(
+      final ResultWriter writer, final ResultRows rows) {
+    return new RobustExecutor.Listener<SimulationJob, StatisticsDTO>() {
+      @Override
+      public void receive(SimulationJob job, StatisticsDTO stats) {
+        try {
+          for (final List<Object> row : rows.rows(job.scenario,
+              job.configuration, job.seed, stats,
+              Optional.<SimulationProfiler.Profile> absent())) {
+            writer.write(job.configuration.toString(), row);
+          }
+        } catch (final IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates the experiment. With local threads (<code>-l</code>) the
+   * simulations are dispatched in the order of the scenarios (outer) and
+   * configurations (inner), idle threads take the next simulation. On the JPPF
+   * grid the simulations are submitted in a fixed number of batches in an
+   * order that is determined by RinSim, the order of the scenarios is not
+   * preserved. The batches spread the work over the nodes with the manual
+   * load balancing profile of <code>rinde-jppf.properties</code>. Use
+   * <code>-rb</code> to dispatch the simulations on the grid one at a time,
+   * longest predicted first, see
+   * {@link #performRobust(RobustExecutor.Builder, SimulationJob.Builder,
+   * ResultWriter.Builder, ScenarioIndex, CostModel)}.
+   */
+  static Experiment.Builder createExperiment(
+      Iterable<MASConfiguration> configs) {
+    return Experiment
         .build(SUM)
         .computeDistributed()
-        .withRandomSeed(123)
-        .repeat(10)
+        .withRandomSeed(RANDOM_SEED)
+        .repeat(REPETITIONS)
         .numBatches(10)
-        .addScenarios(FileProvider.builder()
-            .add(Paths.get(DATASET))
-            .filter("glob:**[01].[0-9]0#[0-5].scen")
-        )
+        .usePostProcessor(SimulationProfiler.postProcessor())
         .addResultListener(new CommandLineProgress(System.out))
-        .addConfiguration(Central.solverConfiguration(
+        .addConfigurations(configs);
+  }
+
+  /**
+   * Adds scenarios to the experiment, the scenarios are read in the order of
+   * the files.
+   */
+  static void addScenarios(Experiment.Builder builder, Iterable<Path> files,
+      Function<Path, ? extends Scenario> reader) {
+    for (final Path file : files) {
+      builder.addScenario(reader.apply(file));
+    }
+  }
+
+  // reads from the archive if present, otherwise from the dataset directory
+  static Function<Path, Scenario> datasetReader() {
+    final Optional<DatasetArchive> archive = DATASET_ARCHIVE.get();
+    if (archive.isPresent()) {
+      return archive.get().reader();
+    }
+    return BinaryScenarioIO.reader();
+  }
+
+  static Function<Path, Scenario> scenarioReader() {
+    return ScenarioCache.instance().reader(ScenarioCache.NO_TRANSFORMATION,
+        datasetReader());
+  }
+
+  /**
+   * Reads the manifest of the dataset. Without a manifest file, the manifest
+   * is created from the properties of all scenarios in the archive or in the
+   * dataset directory.
+   */
+  static DatasetManifest loadManifest() throws IOException {
+    final Path file = Paths.get(DATASET, DatasetManifest.FILE_NAME);
+    if (Files.exists(file)) {
+      return DatasetManifest.read(file);
+    }
+    final Optional<DatasetArchive> archive = DATASET_ARCHIVE.get();
+    if (archive.isPresent()) {
+      return DatasetManifest.of(ScenarioIndex.load(archive.get()));
+    }
+    return DatasetManifest.of(ScenarioIndex.load(Paths.get(DATASET)));
+  }
+
+  /**
+   * Selects the scenarios of the experiment: the dynamism levels that are a
+   * multiple of 0.1 and the first {@link #INSTANCES} instances of each
+   * problem class, of all urgency levels.
+   */
+  static DatasetManifest.Selector scenarioSelector() {
+    return DatasetManifest.selector()
+        .dynamismLevels(0, .1, .2, .3, .4, .5, .6, .7, .8, .9, 1)
+        .instances(INSTANCES);
+  }
+
+  /**
+   * The scenario files of the experiment, resolved from the manifest without
+   * listing the dataset directory. When the dataset is read from the archive,
+   * these are the files as if the archive was unpacked in the dataset
+   * directory.
+   */
+  static ImmutableSet<Path> scenarioFiles(DatasetManifest manifest,
+      Predicate<Path> filter) {
+    return FluentIterable
+        .from(scenarioSelector().files(manifest, Paths.get(DATASET)))
+        .filter(filter)
+        .toSet();
+  }
+
+  static CostModel fitCostModel() {
+    final CostModel model;
+    try {
+      model = CostModel.fit(new File(RESULTS), names(configurations()));
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    System.out.println("Predicting computation times from " + model.size()
+        + " previous results.");
+    return model;
+  }
+
+  static List<MASConfiguration> longestFirst(
+      List<MASConfiguration> configs, final CostModel model) {
+    return Ordering.natural().reverse()
+        .onResultOf(new Function<MASConfiguration, Double>() {
+          @Override
+          public Double apply(MASConfiguration input) {
+            return model.predict(input.toString());
+          }
+        }).sortedCopy(configs);
+  }
+
+  // the order of jobs with the same prediction is preserved
+  static List<SimulationJob> longestJobsFirst(List<SimulationJob> jobs,
+      final ScenarioIndex index, final CostModel model) {
+    return Ordering.natural().reverse()
+        .onResultOf(new Function<SimulationJob, Double>() {
+          @Override
+          public Double apply(SimulationJob input) {
+            return model.predict(input.configuration.toString(),
+                index.get(input.scenarioId));
+          }
+        }).sortedCopy(jobs);
+  }
+
+  static List<String> names(List<MASConfiguration> configs) {
+    final List<String> names = newArrayList();
+    for (final MASConfiguration config : configs) {
+      names.add(config.toString());
+    }
+    return names;
+  }
+
+  static ImmutableList<MASConfiguration> configurations() {
+    return ImmutableList.<MASConfiguration> builder()
+        .addAll(deterministicConfigurations())
+        .addAll(stochasticConfigurations())
+        .build();
+  }
+
+  // the solvers are instrumented, see SimulationProfiler
+  static MASConfiguration central(StochasticSupplier<Solver> solver,
+      String suffix) {
+    return Central.solverConfiguration(SimulationProfiler.instrument(solver),
+        suffix);
+  }
+
+  // cheapest insertion and breadth first 2-opt do not use the random seed
+  static ImmutableList<MASConfiguration> deterministicConfigurations() {
+    return ImmutableList.of(
+        central(
             CheapestInsertionHeuristic.supplier(SUM),
-            "-CheapInsert"))
-        .addConfiguration(Central.solverConfiguration(
+            "-CheapInsert"),
+        central(
             CheapestInsertionHeuristic.supplier(TARDINESS),
-            "-CheapInsert-Tard"))
-        .addConfiguration(Central.solverConfiguration(
+            "-CheapInsert-Tard"),
+        central(
             CheapestInsertionHeuristic.supplier(DISTANCE),
-            "-CheapInsert-Dist"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.breadthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(SUM), SUM),
-                "-bfsOpt2-CheapInsert"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.breadthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(TARDINESS),
-                    TARDINESS),
-                "-bfsOpt2-CheapInsert-Tard"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.breadthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(DISTANCE),
-                    DISTANCE),
-                "-bfsOpt2-CheapInsert-Dist"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.depthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(SUM), SUM),
-                "-dfsOpt2-CheapInsert"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.depthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(TARDINESS),
-                    TARDINESS),
-                "-dfsOpt2-CheapInsert-Tard"))
-        .addConfiguration(
-            Central.solverConfiguration(
-                Opt2.depthFirstSupplier(
-                    CheapestInsertionHeuristic.supplier(DISTANCE),
-                    DISTANCE),
-                "-dfsOpt2-CheapInsert-Dist"));
-
-    final Menu m = ExperimentCli.createMenuBuilder(experimentBuilder)
+            "-CheapInsert-Dist"),
+        central(
+            Opt2.breadthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(SUM), SUM),
+            "-bfsOpt2-CheapInsert"),
+        central(
+            Opt2.breadthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(TARDINESS),
+                TARDINESS),
+            "-bfsOpt2-CheapInsert-Tard"),
+        central(
+            Opt2.breadthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(DISTANCE),
+                DISTANCE),
+            "-bfsOpt2-CheapInsert-Dist"));
+  }
+
+  // depth first 2-opt explores the swaps in a random order
+  static ImmutableList<MASConfiguration> stochasticConfigurations() {
+    return ImmutableList.of(
+        central(
+            Opt2.depthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(SUM), SUM),
+            "-dfsOpt2-CheapInsert"),
+        central(
+            Opt2.depthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(TARDINESS),
+                TARDINESS),
+            "-dfsOpt2-CheapInsert-Tard"),
+        central(
+            Opt2.depthFirstSupplier(
+                CheapestInsertionHeuristic.supplier(DISTANCE),
+                DISTANCE),
+            "-dfsOpt2-CheapInsert-Dist"));
+  }
+
+  static Menu createMenu(Experiment.Builder experimentBuilder,
+      ResultWriter.Builder writerBuilder,
+      final SimulationJob.Builder jobBuilder,
+      RobustExecutor.Builder<SimulationJob, StatisticsDTO> robustBuilder,
+      SequentialStopping.Builder stoppingBuilder) {
+    return ExperimentCli.createMenuBuilder(experimentBuilder)
         .add(Option.builder("nv", ArgumentParser.INTEGER)
             .longName("number-of-vehicles")
             .description("Changes the number of vehicles in all scenarios.")
@@ -140,94 +695,214 @@ public class Experimentation {
               @Override
               public void execute(Experiment.Builder subject,
                   Optional<Integer> argument) {
-                subject.setScenarioReader(new NumVehiclesScenarioParser(
-                    argument.get()));
+                final NumVehiclesScenarioParser parser =
+                    new NumVehiclesScenarioParser(argument.get());
+                // the scenarios of the experiments are also read with the
+                // reader of the jobs, see addScenarios
+                jobBuilder.setScenarioReader(parser);
+              }
+            })
+        .add(Option.builder("rf", ArgumentParser.STRING)
+            .longName("result-format")
+            .description("Sets the format of the result files: csv (default) "
+                + "or columnar.")
+            .build(),
+            writerBuilder,
+            new ArgHandler<ResultWriter.Builder, String>() {
+              @Override
+              public void execute(ResultWriter.Builder subject,
+                  Optional<String> argument) {
+                subject.format(ResultWriter.Format.valueOf(argument.get()
+                    .toUpperCase()));
+              }
+            })
+        .add(Option.builder("rs")
+            .longName("resume")
+            .description("Resumes an interrupted experiment, only the "
+                + "simulations that are missing in the (csv) result files are "
+                + "computed. All " + REPETITIONS + " repetitions are expected "
+                + "per scenario and configuration.")
+            .build(),
+            writerBuilder,
+            new NoArgHandler<ResultWriter.Builder>() {
+              @Override
+              public void execute(ResultWriter.Builder subject) {
+                subject.append();
+              }
+            })
+        .add(Option.builder("rb", ArgumentParser.INTEGER)
+            .longName("robust")
+            .description("Computes the simulations on the JPPF grid using the "
+                + "specified number of concurrent jobs, the simulations are "
+                + "dispatched longest predicted first to the next idle "
+                + "connection. Simulations that fail "
+                + "or time out are retried and stragglers are executed "
+                + "speculatively.")
+            .build(),
+            robustBuilder,
+            new ArgHandler<RobustExecutor.Builder<SimulationJob,
+                StatisticsDTO>, Integer>() {
+              @Override
+              public void execute(
+                  RobustExecutor.Builder<SimulationJob, StatisticsDTO> subject,
+                  Optional<Integer> argument) {
+                for (int i = 0; i < argument.get(); i++) {
+                  subject.addNode(SimulationNodes.jppf(SUM));
+                }
+              }
+            })
+        .add(Option.builder("pf")
+            .longName("profile")
+            .description("Records the solver invocations, solver latencies, "
+                + "ticks per second, allocated bytes and garbage collection "
+                + "time of each simulation in " + RESULTS + PROFILE
+                + ", with a summary per configuration. Not supported in the "
+                + "-rb and -ad modes.")
+            .build(),
+            experimentBuilder,
+            new NoArgHandler<Experiment.Builder>() {
+              @Override
+              public void execute(Experiment.Builder subject) {
+                subject.addResultListener(new SimulationProfiler.Listener(
+                    new File(RESULTS + PROFILE)));
+              }
+            })
+        .add(Option.builder("ad", ArgumentParser.DOUBLE)
+            .longName("adaptive")
+            .description("Repeats each stochastic simulation until the 95% "
+                + "confidence interval of the mean cost is narrower than the "
+                + "specified fraction of the mean, e.g. 0.05.")
+            .build(),
+            stoppingBuilder,
+            new ArgHandler<SequentialStopping.Builder, Double>() {
+              @Override
+              public void execute(SequentialStopping.Builder subject,
+                  Optional<Double> argument) {
+                subject.relativeWidth(argument.get());
+              }
+            })
+        .add(Option.builder("am", ArgumentParser.INTEGER)
+            .longName("adaptive-max")
+            .description("Sets the maximum number of repetitions of the "
+                + "adaptive mode, default is 30.")
+            .build(),
+            stoppingBuilder,
+            new ArgHandler<SequentialStopping.Builder, Integer>() {
+              @Override
+              public void execute(SequentialStopping.Builder subject,
+                  Optional<Integer> argument) {
+                subject.maxRepetitions(argument.get());
               }
             })
         .build();
+  }
 
-    final Optional<String> error = m.safeExecute(args);
-    if (error.isPresent()) {
-      System.err.println(error.get());
-      return;
+  static ResultWriter.Builder resultWriter(File dir) {
+    return ResultWriter.builder(dir)
+        .addColumn("dynamism", ColumnType.DOUBLE)
+        .addColumn("urgency_mean", ColumnType.DOUBLE)
+        .addColumn("urgency_sd", ColumnType.DOUBLE)
+        .addColumn("cost", ColumnType.DOUBLE)
+        .addColumn("travel_time", ColumnType.DOUBLE)
+        .addColumn("tardiness", ColumnType.DOUBLE)
+        .addColumn("over_time", ColumnType.DOUBLE)
+        .addColumn("is_valid", ColumnType.BOOLEAN)
+        .addColumn("scenario_id", ColumnType.STRING)
+        .addColumn("random_seed", ColumnType.LONG)
+        .addColumn("comp_time", ColumnType.LONG)
+        .addColumn("cpu_time", ColumnType.LONG)
+        .addColumn("solver_time", ColumnType.LONG)
+        .addColumn("solver_cpu_time", ColumnType.LONG)
+        .addColumn("num_vehicles", ColumnType.INT)
+        .addRowListener(CELL_SUMMARIES);
+  }
+
+  static List<Object> createRow(SimulationResult sr, ScenarioIndex index) {
+    return createRow(sr.scenario, sr.seed, sr.stats, profile(sr), index);
+  }
+
+  static Optional<SimulationProfiler.Profile> profile(SimulationResult sr) {
+    if (sr.simulationData.isPresent()
+        && sr.simulationData.get() instanceof SimulationProfiler.Profile) {
+      return Optional.of((SimulationProfiler.Profile) sr.simulationData.get());
+    }
+    return Optional.absent();
+  }
+
+  // the times of simulations without profile are -1
+  static List<Object> createRow(Scenario scenario, long seed,
+      StatisticsDTO stats, Optional<SimulationProfiler.Profile> profile,
+      ScenarioIndex index) {
+    final String pc = scenario.getProblemClass().getId();
+    final String id = scenario.getProblemInstanceId();
+    final int numVehicles = FluentIterable.from(scenario.asList())
+        .filter(AddVehicleEvent.class).size();
+    final ScenarioIndex.Entry metadata = index.get(pc, id);
+    final double dynamism = metadata.dynamism;
+    final double urgencyMean = metadata.urgencyMean;
+    final double urgencySd = metadata.urgencySd;
+
+    final double cost = SUM.computeCost(stats);
+    final double travelTime = SUM.travelTime(stats);
+    final double tardiness = SUM.tardiness(stats);
+    final double overTime = SUM.overTime(stats);
+    final boolean isValidResult = SUM.isValidResult(stats);
+    final long computationTime = stats.computationTime;
+    final long cpuTime = profile.isPresent() ? profile.get().cpuTime : -1;
+    final long solverTime = profile.isPresent() ? profile.get().solverTime
+        : -1;
+    final long solverCpuTime = profile.isPresent()
+        ? profile.get().solverCpuTime : -1;
+
+    final List<Object> row = asList((Object) dynamism, urgencyMean,
+        urgencySd, cost, travelTime, tardiness, overTime, isValidResult,
+        pc + id, seed, computationTime, cpuTime, solverTime, solverCpuTime,
+        numVehicles);
+    if (!isValidResult) {
+      System.err.println("WARNING: FOUND AN INVALID RESULT: ");
+      System.err.println(Joiner.on(",").join(row));
     }
-    final ExperimentResults results = experimentBuilder.perform();
+    return row;
+  }
 
-    final long duration = System.currentTimeMillis() - time;
-    System.out.println("Done, computed " + results.results.size()
-        + " simulations in " + duration / 1000d + "s");
+  static class ResultRows implements
+      Function<SimulationResult, List<List<Object>>> {
+    final ScenarioIndex index;
+    final Optional<CompletedRuns> completed;
+    final List<Long> seeds;
 
-    final Multimap<MASConfiguration, SimulationResult> groupedResults = LinkedHashMultimap
-        .create();
-    for (final SimulationResult sr : results.sortedResults()) {
-      groupedResults.put(sr.masConfiguration, sr);
+    ResultRows(ScenarioIndex idx) {
+      this(idx, Optional.<CompletedRuns> absent());
     }
 
-    for (final MASConfiguration config : groupedResults.keySet()) {
-      final Collection<SimulationResult> group = groupedResults.get(config);
+    ResultRows(ScenarioIndex idx, Optional<CompletedRuns> c) {
+      index = idx;
+      completed = c;
+      seeds = SimulationJob.seeds(RANDOM_SEED, REPETITIONS);
+    }
 
-      final File configResult = new File(RESULTS + config.toString()
-          + ".csv");
-      try {
-        Files.createParentDirs(configResult);
-      } catch (final IOException e1) {
-        throw new IllegalStateException(e1);
-      }
-      // deletes the file in case it already exists
-      configResult.delete();
-      try {
-        Files
-            .append(
-                "dynamism,urgency_mean,urgency_sd,cost,travel_time,tardiness,over_time,is_valid,scenario_id,random_seed,comp_time,num_vehicles\n",
-                configResult,
-                Charsets.UTF_8);
-      } catch (final IOException e1) {
-        throw new IllegalStateException(e1);
-      }
+    @Override
+    public List<List<Object>> apply(SimulationResult input) {
+      return rows(input.scenario, input.masConfiguration, input.seed,
+          input.stats, profile(input));
+    }
 
-      for (final SimulationResult sr : group) {
-        final String pc = sr.scenario.getProblemClass().getId();
-        final String id = sr.scenario.getProblemInstanceId();
-        final int numVehicles = FluentIterable.from(sr.scenario.asList())
-            .filter(AddVehicleEvent.class).size();
-        try {
-          final List<String> propsStrings = Files.readLines(new File(
-              "files/dataset/" + pc + id + ".properties"),
-              Charsets.UTF_8);
-          final Map<String, String> properties = Splitter.on("\n")
-              .withKeyValueSeparator(" = ")
-              .split(Joiner.on("\n").join(propsStrings));
-
-          final double dynamism = Double
-              .parseDouble(properties.get("dynamism"));
-          final double urgencyMean = Double.parseDouble(properties
-              .get("urgency_mean"));
-          final double urgencySd = Double.parseDouble(properties
-              .get("urgency_sd"));
-
-          final double cost = SUM.computeCost(sr.stats);
-          final double travelTime = SUM.travelTime(sr.stats);
-          final double tardiness = SUM.tardiness(sr.stats);
-          final double overTime = SUM.overTime(sr.stats);
-          final boolean isValidResult = SUM.isValidResult(sr.stats);
-          final long computationTime = sr.stats.computationTime;
-
-          final String line = Joiner.on(",")
-              .appendTo(new StringBuilder(),
-                  asList(dynamism, urgencyMean, urgencySd, cost, travelTime,
-                      tardiness, overTime, isValidResult, pc + id, sr.seed,
-                      computationTime, numVehicles))
-              .append(System.lineSeparator())
-              .toString();
-          if (!isValidResult) {
-            System.err.println("WARNING: FOUND AN INVALID RESULT: ");
-            System.err.println(line);
-          }
-          Files.append(line, configResult, Charsets.UTF_8);
-        } catch (final IOException e) {
-          throw new IllegalStateException(e);
+    // the result of a deterministic configuration is written for each
+    // repetition, rows that are already completed are omitted
+    List<List<Object>> rows(Scenario scenario, MASConfiguration config,
+        long seed, StatisticsDTO stats,
+        Optional<SimulationProfiler.Profile> profile) {
+      final String id = scenario.getProblemClass().getId()
+          + scenario.getProblemInstanceId();
+      final List<List<Object>> rows = newArrayList();
+      for (final long s : DETERMINISTIC.apply(config) ? seeds
+          : ImmutableList.of(seed)) {
+        if (!completed.isPresent()
+            || !completed.get().contains(config.toString(), id, s)) {
+          rows.add(createRow(scenario, s, stats, profile, index));
         }
       }
+      return rows;
     }
   }
 
@@ -238,21 +913,27 @@ public class Experimentation {
       numVehicles = num;
     }
 
+    // the transformed scenario is built once per JVM
     @Override
-    public Scenario apply(Path input) {
-      Scenario scenario;
-      try {
-        scenario = ScenarioIO.read(input);
-        return Scenario
-            .builder(scenario.getProblemClass())
-            .copyProperties(scenario)
-            .ensureFrequency(
-                Predicates.instanceOf(AddVehicleEvent.class),
-                numVehicles)
-            .build();
-      } catch (final IOException e) {
-        throw new IllegalStateException(e);
-      }
+    public Scenario apply(final Path input) {
+      return ScenarioCache.instance().get(input.toAbsolutePath().normalize(),
+          "vehicles=" + numVehicles, new Callable<Scenario>() {
+            @Override
+            public Scenario call() {
+              return parse(input);
+            }
+          });
+    }
+
+    Scenario parse(Path input) {
+      final Scenario scenario = datasetReader().apply(input);
+      return Scenario
+          .builder(scenario.getProblemClass())
+          .copyProperties(scenario)
+          .ensureFrequency(
+              Predicates.instanceOf(AddVehicleEvent.class),
+              numVehicles)
+          .build();
     }
   }
 
@@ -17,19 +17,25 @@ package com.github.rinde.dynurg;
 
 import static com.github.rinde.rinsim.util.StochasticSuppliers.constant;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newLinkedHashMap;
 
 import java.io.File;
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.measure.unit.NonSI;
 import javax.measure.unit.SI;
 
+import org.apache.commons.math3.random.AbstractRandomGenerator;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
@@ -55,13 +61,11 @@ import com.github.rinde.rinsim.pdptw.common.DynamicPDPTWProblem.StopConditions;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.pdptw.common.TimeLinePanel;
 import com.github.rinde.rinsim.scenario.Scenario;
-import com.github.rinde.rinsim.scenario.Scenario.ProblemClass;
-import com.github.rinde.rinsim.scenario.Scenario.SimpleProblemClass;
 import com.github.rinde.rinsim.scenario.ScenarioController.UICreator;
-import com.github.rinde.rinsim.scenario.ScenarioIO;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
 import com.github.rinde.rinsim.scenario.generator.Depots;
 import com.github.rinde.rinsim.scenario.generator.IntensityFunctions;
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions.IntensityFunction;
 import com.github.rinde.rinsim.scenario.generator.Locations;
 import com.github.rinde.rinsim.scenario.generator.Locations.LocationGenerator;
 import com.github.rinde.rinsim.scenario.generator.Models;
@@ -73,7 +77,6 @@ import com.github.rinde.rinsim.scenario.generator.TimeSeries.TimeSeriesGenerator
 import com.github.rinde.rinsim.scenario.generator.TimeWindows.TimeWindowGenerator;
 import com.github.rinde.rinsim.scenario.generator.Vehicles;
 import com.github.rinde.rinsim.scenario.measure.Metrics;
-import com.github.rinde.rinsim.scenario.measure.MetricsIO;
 import com.github.rinde.rinsim.ui.View;
 import com.github.rinde.rinsim.ui.renderers.PDPModelRenderer;
 import com.github.rinde.rinsim.ui.renderers.PlaneRoadModelRenderer;
@@ -84,7 +87,9 @@ import com.github.rinde.rinsim.util.StochasticSuppliers;
 import com.github.rinde.rinsim.util.TimeWindow;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultiset;
@@ -94,6 +99,7 @@ import com.google.common.collect.Multiset;
 import com.google.common.io.Files;
 import com.google.common.math.DoubleMath;
 import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Futures;
 
 /**
  * Generator that creates the dataset needed for the dynamism and urgency
@@ -110,8 +116,8 @@ public class Generator {
   private static final double AREA_WIDTH = 10;
 
   private static final long SCENARIO_HOURS = 12L;
-  private static final long SCENARIO_LENGTH = SCENARIO_HOURS * 60 * 60 * 1000L;
-  private static final int NUM_ORDERS = 360;
+  static final long SCENARIO_LENGTH = SCENARIO_HOURS * 60 * 60 * 1000L;
+  static final int NUM_ORDERS = 360;
 
   private static final long HALF_DIAG_TT = 509117L;
   private static final long ONE_AND_HALF_DIAG_TT = 1527351L;
@@ -121,31 +127,33 @@ public class Generator {
   private static final long DELIVERY_DURATION = 5 * 60 * 1000L;
 
   private static final long INTENSITY_PERIOD = 60 * 60 * 1000L;
+  private static final double NORMAL_STD = 2.4 * 60 * 1000;
+  private static final double SINE_MIN_HEIGHT = -.99;
+  private static final double SINE_MAX_HEIGHT = 3d;
 
   private static final int TARGET_NUM_INSTANCES = 50;
+  // number of candidates per batch per thread in parallel mode
+  private static final int CANDIDATES_PER_THREAD = 16;
 
   // These parameters influence the dynamism selection settings
   private static final double DYN_STEP_SIZE = 0.05;
   private static final double DYN_BANDWIDTH = 0.01;
 
   private static final String DATASET_DIR = "files/dataset/";
+  private static final String ARCHIVE_FILE = "files/dataset"
+      + DatasetArchive.EXTENSION;
 
   public static void main(String[] args) {
     final RandomGenerator rng = new MersenneTwister(123L);
     generateWithDistinctLocations(rng);
-    // generateWithFixedLocations(rng);
 
     // run( "files/archive/dataset-v2-20140724/0-0.05#0.scen");
   }
 
   @SuppressWarnings("unused")
   private static void run(final String fileName) {
-    final Scenario scen;
-    try {
-      scen = ScenarioIO.read(new File(fileName).toPath());
-    } catch (final IOException e) {
-      throw new IllegalStateException(e);
-    }
+    final Scenario scen = BinaryScenarioIO.reader().apply(
+        new File(fileName).toPath());
     final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
     Experiment
         .build(Gendreau06ObjectiveFunction.instance())
@@ -183,10 +191,21 @@ public class Generator {
    * @param rng The master random number generator.
    */
   public static void generateWithDistinctLocations(RandomGenerator rng) {
-    generate(rng, Locations.builder()
-        .min(0d)
-        .max(AREA_WIDTH)
-        .buildUniform());
+    builder().generate(rng);
+  }
+
+  /**
+   * Generates all scenarios in parallel. Each scenario has a randomly generated
+   * location list. The generated dataset only depends on <code>rng</code>, it
+   * does not depend on the parallelism of <code>pool</code>. Note that the
+   * dataset is different from the one generated by
+   * {@link #generateWithDistinctLocations(RandomGenerator)}.
+   * @param rng The master random number generator.
+   * @param pool The pool that is used for evaluating candidate scenarios.
+   */
+  public static void generateWithDistinctLocations(RandomGenerator rng,
+      ForkJoinPool pool) {
+    builder().parallel(pool).generate(rng);
   }
 
   /**
@@ -194,38 +213,76 @@ public class Generator {
    * @param rng The master random number generator.
    */
   public static void generateWithFixedLocations(RandomGenerator rng) {
+    builder().fixedLocations().generate(rng);
+  }
+
+  /**
+   * Generates all scenarios in parallel. Each scenario has exactly the same
+   * location list. See
+   * {@link #generateWithDistinctLocations(RandomGenerator, ForkJoinPool)}.
+   * @param rng The master random number generator.
+   * @param pool The pool that is used for evaluating candidate scenarios.
+   */
+  public static void generateWithFixedLocations(RandomGenerator rng,
+      ForkJoinPool pool) {
+    builder().fixedLocations().parallel(pool).generate(rng);
+  }
+
+  /**
+   * @return A new {@link DatasetBuilder} for configuring the generation of the
+   *         dataset.
+   */
+  public static DatasetBuilder builder() {
+    return new DatasetBuilder();
+  }
+
+  static Supplier<LocationGenerator> distinctLocationsSupplier() {
+    return new Supplier<LocationGenerator>() {
+      @Override
+      public LocationGenerator get() {
+        return Locations.builder()
+            .min(0d)
+            .max(AREA_WIDTH)
+            .buildUniform();
+      }
+    };
+  }
+
+  static Supplier<LocationGenerator> fixedLocationsSupplier(
+      RandomGenerator rng) {
     final List<Point> locations = Locations.builder()
         .min(0d)
         .max(AREA_WIDTH)
         .buildUniform()
         .generate(rng.nextLong(), NUM_ORDERS * 2);
 
-    generate(rng, Locations.builder()
-        .min(0d)
-        .max(AREA_WIDTH)
-        .buildFixed(locations));
+    return new Supplier<LocationGenerator>() {
+      @Override
+      public LocationGenerator get() {
+        return Locations.builder()
+            .min(0d)
+            .max(AREA_WIDTH)
+            .buildFixed(locations);
+      }
+    };
   }
 
-  private static void generate(RandomGenerator rng, LocationGenerator lg) {
+  static void generate(RandomGenerator rng, DatasetBuilder options) {
+    final Supplier<LocationGenerator> lg;
+    if (options.fixedLocations) {
+      lg = fixedLocationsSupplier(rng);
+    } else {
+      lg = distinctLocationsSupplier();
+    }
     final List<Long> urgencyLevels = Longs.asList(0, 5, 10, 15, 20, 25, 30, 35,
         40, 45);
 
-    final ImmutableMap.Builder<GeneratorSettings, ScenarioGenerator> generatorsMap = ImmutableMap
+    final ImmutableList.Builder<GeneratorSettings> settingsBuilder = ImmutableList
         .builder();
 
     for (final long urg : urgencyLevels) {
       System.out.print("create " + urg);
-      final long urgency = urg * 60 * 1000L;
-      // The office hours is the period in which new orders are accepted, it
-      // is defined as [0,officeHoursLength).
-      final long officeHoursLength;
-      if (urgency < HALF_DIAG_TT) {
-        officeHoursLength = SCENARIO_LENGTH - TWO_DIAG_TT - PICKUP_DURATION
-            - DELIVERY_DURATION;
-      } else {
-        officeHoursLength = SCENARIO_LENGTH - urgency - ONE_AND_HALF_DIAG_TT
-            - PICKUP_DURATION - DELIVERY_DURATION;
-      }
+      final long officeHoursLength = officeHoursLength(urg * 60 * 1000L);
 
       final double numPeriods = officeHoursLength / (double) INTENSITY_PERIOD;
 
@@ -238,170 +295,352 @@ public class Generator {
       props.put("delivery_duration", Long.toString(DELIVERY_DURATION));
       props.put("width_height",
           String.format("%1.1fx%1.1f", AREA_WIDTH, AREA_WIDTH));
+      if (options.targetedDynamism) {
+        props.put("time_series.height", "targeted");
+      }
+      if (options.timeWindows != TimeWindowRandomness.LEGACY) {
+        props.put("time_windows.random", options.timeWindows.name());
+      }
+      // NON-HOMOGENOUS
       final GeneratorSettings sineSettings = new GeneratorSettings(
           TimeSeriesType.SINE, urg, SCENARIO_LENGTH, officeHoursLength, props);
 
-      System.out.print(" non-homogenous Poisson");
-      // NON-HOMOGENOUS
-      final TimeSeriesGenerator sineTsg = TimeSeries.nonHomogenousPoisson(
-          officeHoursLength,
-          IntensityFunctions
-              .sineIntensity()
-              .area(NUM_ORDERS / numPeriods)
-              .period(INTENSITY_PERIOD)
-              .height(StochasticSuppliers.uniformDouble(-.99, 3d))
-              .phaseShift(
-                  StochasticSuppliers.uniformDouble(0, INTENSITY_PERIOD))
-              .buildStochasticSupplier());
-
-      System.out.print(" homogenous Poisson");
       // HOMOGENOUS
       props.put("time_series", "homogenous Poisson");
       props.put("time_series.intensity",
           Double.toString((double) NUM_ORDERS / (double) officeHoursLength));
       props.remove("time_series.period");
       props.remove("time_series.num_periods");
-      final TimeSeriesGenerator homogTsg = TimeSeries.homogenousPoisson(
-          officeHoursLength, NUM_ORDERS);
+      props.remove("time_series.height");
       final GeneratorSettings homogSettings = new GeneratorSettings(
           TimeSeriesType.HOMOGENOUS, urg, SCENARIO_LENGTH, officeHoursLength,
           props);
 
-      System.out.print(" normal");
       // NORMAL
       props.put("time_series", "normal");
       props.remove("time_series.intensity");
-      final TimeSeriesGenerator normalTsg = TimeSeries.normal(
-          officeHoursLength, NUM_ORDERS, 2.4 * 60 * 1000);
       final GeneratorSettings normalSettings = new GeneratorSettings(
           TimeSeriesType.NORMAL, urg, SCENARIO_LENGTH, officeHoursLength,
           props);
 
-      System.out.print(" uniform");
       // UNIFORM
       props.put("time_series", "uniform");
-      final StochasticSupplier<Double> maxDeviation = StochasticSuppliers
-          .normal()
-          .mean(1 * 60 * 1000)
-          .std(1 * 60 * 1000)
-          .lowerBound(0)
-          .upperBound(15d * 60 * 1000)
-          .buildDouble();
-      final TimeSeriesGenerator uniformTsg = TimeSeries.uniform(
-          officeHoursLength, NUM_ORDERS, maxDeviation);
       final GeneratorSettings uniformSettings = new GeneratorSettings(
           TimeSeriesType.UNIFORM, urg, SCENARIO_LENGTH, officeHoursLength,
           props);
       System.out.println(".");
 
-      generatorsMap.put(sineSettings,
-          createGenerator(SCENARIO_LENGTH, urgency, sineTsg, lg));
-      generatorsMap.put(homogSettings,
-          createGenerator(SCENARIO_LENGTH, urgency, homogTsg, lg));
-      generatorsMap.put(normalSettings,
-          createGenerator(SCENARIO_LENGTH, urgency, normalTsg, lg));
-      generatorsMap.put(uniformSettings,
-          createGenerator(SCENARIO_LENGTH, urgency, uniformTsg, lg));
+      settingsBuilder.add(sineSettings, homogSettings, normalSettings,
+          uniformSettings);
     }
 
-    final ImmutableMap<GeneratorSettings, ScenarioGenerator> scenarioGenerators = generatorsMap
+    final ImmutableList<GeneratorSettings> allSettings = settingsBuilder
         .build();
 
-    System.out.println("num generators: " + scenarioGenerators.size());
-    for (final Entry<GeneratorSettings, ScenarioGenerator> entry : scenarioGenerators
-        .entrySet()) {
-
-      final GeneratorSettings generatorSettings = entry.getKey();
+    System.out.println("num generators: " + allSettings.size());
+    // accepted scenarios are written in the background
+    final DatasetWriter writer;
+    try {
+      writer = new DatasetWriter(
+          Paths.get(DATASET_DIR, DatasetManifest.FILE_NAME),
+          options.archive ? Optional.of(Paths.get(ARCHIVE_FILE))
+              : Optional.<Path> absent());
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    for (final GeneratorSettings generatorSettings : allSettings) {
       System.out.println("URGENCY: " + generatorSettings.urgency + " "
           + generatorSettings.timeSeriesType);
 
+      final double dynLb;
+      final double dynUb;
+      final int levels;
       if (generatorSettings.timeSeriesType == TimeSeriesType.SINE) {
-        createScenarios(rng, generatorSettings, entry.getValue(), .0, .46, 10);
+        dynLb = .0;
+        dynUb = .46;
+        levels = 10;
       } else if (generatorSettings.timeSeriesType == TimeSeriesType.HOMOGENOUS) {
-        createScenarios(rng, generatorSettings, entry.getValue(), .49, .56, 2);
+        dynLb = .49;
+        dynUb = .56;
+        levels = 2;
       } else if (generatorSettings.timeSeriesType == TimeSeriesType.NORMAL) {
-        createScenarios(rng, generatorSettings, entry.getValue(), .59, .66, 2);
+        dynLb = .59;
+        dynUb = .66;
+        levels = 2;
       } else if (generatorSettings.timeSeriesType == TimeSeriesType.UNIFORM) {
-        createScenarios(rng, generatorSettings, entry.getValue(), .69, 1, 7);
+        dynLb = .69;
+        dynUb = 1;
+        levels = 7;
       } else {
         throw new IllegalArgumentException();
       }
+
+      final Optional<StochasticSupplier<Double>> sineHeights;
+      if (options.targetedDynamism
+          && generatorSettings.timeSeriesType == TimeSeriesType.SINE) {
+        sineHeights = Optional.of(DynamismLandscape.builder()
+            .length(generatorSettings.officeHours)
+            .numEvents(NUM_ORDERS)
+            .period(INTENSITY_PERIOD)
+            .heights(SINE_MIN_HEIGHT, SINE_MAX_HEIGHT)
+            .dynamismLevels(DYN_STEP_SIZE, DYN_BANDWIDTH)
+            .build()
+            .targetedHeights(dynLb, dynUb));
+      } else {
+        sineHeights = Optional.absent();
+      }
+
+      if (options.pool.isPresent()) {
+        createScenarios(rng.nextLong(), generatorSettings,
+            generatorSupplier(generatorSettings, options.arrivalTimes,
+                sineHeights, lg, options.timeWindows), dynLb, dynUb, levels,
+            options.pool.get(), writer);
+      } else {
+        createScenarios(rng, generatorSettings,
+            new StagedGenerator(generatorSettings, createTimeSeries(
+                generatorSettings, options.arrivalTimes, sineHeights),
+                lg.get(), options.timeWindows), dynLb, dynUb, levels,
+            writer);
+      }
+    }
+    try {
+      writer.close();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
     }
     System.out.println("DONE.");
   }
 
+  /**
+   * The office hours is the period in which new orders are accepted, it is
+   * defined as [0,officeHoursLength).
+   * @param urgency The urgency in ms.
+   * @return The length of the office hours in ms.
+   */
+  static long officeHoursLength(long urgency) {
+    if (urgency < HALF_DIAG_TT) {
+      return SCENARIO_LENGTH - TWO_DIAG_TT - PICKUP_DURATION
+          - DELIVERY_DURATION;
+    }
+    return SCENARIO_LENGTH - urgency - ONE_AND_HALF_DIAG_TT
+        - PICKUP_DURATION - DELIVERY_DURATION;
+  }
+
+  /**
+   * Rejection sampling of scenarios. Only candidates of which the dynamism can
+   * be accepted by the bins are generated completely, see
+   * {@link StagedGenerator}.
+   */
   static void createScenarios(RandomGenerator rng,
-      GeneratorSettings generatorSettings, ScenarioGenerator generator,
-      double dynLb, double dynUb, int levels) {
-    final List<Scenario> scenarios = newArrayList();
-
-    final Multimap<Double, Scenario> dynamismScenariosMap = LinkedHashMultimap
-        .create();
-    while (scenarios.size() < levels * TARGET_NUM_INSTANCES) {
-      final Scenario scen = generator.generate(rng, "temp");
+      GeneratorSettings generatorSettings, StagedGenerator generator,
+      double dynLb, double dynUb, int levels, DatasetWriter writer) {
+    final DatasetBins bins = new DatasetBins(generatorSettings, dynLb, dynUb,
+        levels, writer);
+    while (!bins.isFull()) {
+      final Announcement announcement = generator.announce(rng);
+      if (bins.accepts(announcement)) {
+        bins.offer(Candidate.evaluate(generator.generate(announcement),
+            generatorSettings, generator.kernel));
+      }
+    }
+  }
+
+  /**
+   * Parallel version of rejection sampling. Each candidate scenario is
+   * generated using its own seed, the seeds are drawn in a fixed order from a
+   * {@link MersenneTwister} that is seeded with <code>seed</code>. Candidates
+   * are evaluated in batches on <code>pool</code>, and are offered to the
+   * dynamism bins in the order of their seeds. As a result, the accepted
+   * scenarios only depend on <code>seed</code> and not on the number of
+   * threads. Each batch is processed in two stages (see
+   * {@link StagedGenerator}), only the candidates of which the dynamism can be
+   * accepted by the bins at the start of the batch are generated completely.
+   */
+  static void createScenarios(long seed,
+      final GeneratorSettings generatorSettings,
+      final Supplier<StagedGenerator> generatorSupplier, double dynLb,
+      double dynUb, int levels, ForkJoinPool pool, DatasetWriter writer) {
+    final DatasetBins bins = new DatasetBins(generatorSettings, dynLb, dynUb,
+        levels, writer);
+    // generators are not thread safe, each worker gets its own instance
+    final ThreadLocal<StagedGenerator> generators = new ThreadLocal<StagedGenerator>() {
+      @Override
+      protected StagedGenerator initialValue() {
+        return generatorSupplier.get();
+      }
+    };
+    final RandomGenerator seeds = new MersenneTwister(seed);
+    final int batchSize = pool.getParallelism() * CANDIDATES_PER_THREAD;
+    while (!bins.isFull()) {
+      final List<Callable<Announcement>> batch = newArrayList();
+      for (int i = 0; i < batchSize; i++) {
+        final long candidateSeed = seeds.nextLong();
+        batch.add(new Callable<Announcement>() {
+          @Override
+          public Announcement call() {
+            return generators.get().announce(
+                new MersenneTwister(candidateSeed));
+          }
+        });
+      }
+      // bins only fill up, a candidate that can not be accepted now will
+      // not be accepted later in this batch either
+      final List<Callable<Candidate>> eligible = newArrayList();
+      for (final Future<Announcement> future : pool.invokeAll(batch)) {
+        final Announcement announcement = Futures.getUnchecked(future);
+        if (bins.accepts(announcement)) {
+          eligible.add(new Callable<Candidate>() {
+            @Override
+            public Candidate call() {
+              final StagedGenerator generator = generators.get();
+              return Candidate.evaluate(generator.generate(announcement),
+                  generatorSettings, generator.kernel);
+            }
+          });
+        }
+      }
+      final List<Future<Candidate>> candidates = pool.invokeAll(eligible);
+      for (final Future<Candidate> candidate : candidates) {
+        if (bins.isFull()) {
+          break;
+        }
+        bins.offer(Futures.getUnchecked(candidate));
+      }
+    }
+  }
+
+  /**
+   * The result of evaluating a generated scenario against the urgency and
+   * order count requirements.
+   */
+  static class Candidate {
+    final Scenario scenario;
+    final StatisticalSummary urgency;
+    final Optional<Double> dynamism;
+
+    Candidate(Scenario scen, StatisticalSummary urg, Optional<Double> dyn) {
+      scenario = scen;
+      urgency = urg;
+      dynamism = dyn;
+    }
+
+    /**
+     * @return <code>true</code> if the scenario has the expected urgency and
+     *         number of orders.
+     */
+    boolean isValid() {
+      return dynamism.isPresent();
+    }
+
+    static Candidate evaluate(Scenario scen, GeneratorSettings settings,
+        DynamismKernel kernel) {
       Metrics.checkTimeWindowStrictness(scen);
       final StatisticalSummary urgency = Metrics.measureUrgency(scen);
 
-      final long expectedUrgency = generatorSettings.urgency * 60000L;
+      final long expectedUrgency = settings.urgency * 60000L;
       if (Math.abs(urgency.getMean() - expectedUrgency) < 0.01
           && urgency.getStandardDeviation() < 0.01) {
 
         final int numParcels = Metrics.getEventTypeCounts(scen).count(
             PDPScenarioEvent.ADD_PARCEL);
         if (numParcels == NUM_ORDERS) {
-
-          final double dynamism = Metrics.measureDynamism(scen,
-              generatorSettings.officeHours);
-          System.out.print(String.format("%1.3f ", dynamism));
-          if ((dynamism % DYN_STEP_SIZE < DYN_BANDWIDTH || dynamism
-              % DYN_STEP_SIZE > DYN_STEP_SIZE - DYN_BANDWIDTH)
-              && dynamism <= dynUb && dynamism >= dynLb) {
-
-            final double targetDyn = Math.round(dynamism / DYN_STEP_SIZE)
-                * DYN_STEP_SIZE;
-
-            final int numInstances = dynamismScenariosMap.get(targetDyn).size();
-
-            if (numInstances < TARGET_NUM_INSTANCES) {
-
-              final String instanceId = "#"
-                  + Integer.toString(numInstances);
-              dynamismScenariosMap.put(targetDyn, scen);
-
-              final String problemClassId = String.format("%d-%1.2f",
-                  (long) (urgency.getMean() / 60000),
-                  targetDyn);
-              System.out.println();
-              System.out.println(" > ACCEPT " + problemClassId);
-              final String fileName = DATASET_DIR + problemClassId
-                  + instanceId;
-              try {
-                Files.createParentDirs(new File(fileName));
-                writePropertiesFile(scen, urgency, dynamism, problemClassId,
-                    instanceId, generatorSettings, fileName);
-                MetricsIO.writeLocationList(Metrics.getServicePoints(scen),
-                    new File(fileName + ".points"));
-                MetricsIO.writeTimes(scen.getTimeWindow().end,
-                    Metrics.getArrivalTimes(scen),
-                    new File(fileName + ".times"));
-
-                final ProblemClass pc = new SimpleProblemClass(problemClassId);
-                final Scenario finalScenario = Scenario.builder(pc)
-                    .copyProperties(scen)
-                    .problemClass(pc)
-                    .instanceId(instanceId)
-                    .build();
-
-                ScenarioIO.write(finalScenario,
-                    new File(fileName + ".scen").toPath());
-              } catch (final IOException e) {
-                throw new IllegalStateException(e);
-              }
-              scenarios.add(scen);
-            }
-          }
+          return new Candidate(scen, urgency, Optional.of(kernel.measure(scen,
+              settings.officeHours)));
         }
       }
+      return new Candidate(scen, urgency, Optional.<Double> absent());
+    }
+  }
+
+  /**
+   * Keeps track of the accepted scenarios per dynamism level and passes
+   * accepted scenarios to the writer of the dataset directory.
+   */
+  static class DatasetBins {
+    final GeneratorSettings generatorSettings;
+    final double dynLb;
+    final double dynUb;
+    final int levels;
+    final Multimap<Double, Scenario> dynamismScenariosMap;
+    final DatasetWriter writer;
+
+    DatasetBins(GeneratorSettings settings, double lb, double ub, int lvls,
+        DatasetWriter w) {
+      writer = w;
+      generatorSettings = settings;
+      dynLb = lb;
+      dynUb = ub;
+      levels = lvls;
+      dynamismScenariosMap = LinkedHashMultimap.create();
+    }
+
+    boolean isFull() {
+      return dynamismScenariosMap.size() >= levels * TARGET_NUM_INSTANCES;
+    }
+
+    /**
+     * Checks whether a scenario with the dynamism of the specified announcement
+     * can be accepted, this is the case when the dynamism is close enough to
+     * one of the dynamism levels and when the bin of this level is not yet
+     * full.
+     * @param announcement The announcement to check.
+     * @return <code>true</code> if the bins can accept the scenario,
+     *         <code>false</code> otherwise.
+     */
+    boolean accepts(Announcement announcement) {
+      return announcement.dynamism.isPresent()
+          && accepts(announcement.dynamism.get());
+    }
+
+    boolean accepts(double dynamism) {
+      if ((dynamism % DYN_STEP_SIZE < DYN_BANDWIDTH || dynamism
+          % DYN_STEP_SIZE > DYN_STEP_SIZE - DYN_BANDWIDTH)
+          && dynamism <= dynUb && dynamism >= dynLb) {
+        return dynamismScenariosMap.get(targetDynamism(dynamism)).size()
+            < TARGET_NUM_INSTANCES;
+      }
+      return false;
+    }
+
+    static double targetDynamism(double dynamism) {
+      return Math.round(dynamism / DYN_STEP_SIZE) * DYN_STEP_SIZE;
+    }
+
+    /**
+     * Offers a candidate to the bins, if the candidate is accepted it is
+     * queued for writing to the dataset directory.
+     * @param candidate The candidate.
+     * @return <code>true</code> if the candidate was accepted,
+     *         <code>false</code> otherwise.
+     */
+    boolean offer(Candidate candidate) {
+      if (!candidate.isValid()) {
+        return false;
+      }
+      final Scenario scen = candidate.scenario;
+      final StatisticalSummary urgency = candidate.urgency;
+      final double dynamism = candidate.dynamism.get();
+      System.out.print(String.format("%1.3f ", dynamism));
+      if (!accepts(dynamism)) {
+        return false;
+      }
+      final double targetDyn = targetDynamism(dynamism);
+      final int numInstances = dynamismScenariosMap.get(targetDyn).size();
+
+      final String instanceId = "#"
+          + Integer.toString(numInstances);
+      dynamismScenariosMap.put(targetDyn, scen);
+
+      final String problemClassId = String.format("%d-%1.2f",
+          (long) (urgency.getMean() / 60000),
+          targetDyn);
+      System.out.println();
+      System.out.println(" > ACCEPT " + problemClassId);
+      final String fileName = DATASET_DIR + problemClassId
+          + instanceId;
+      writer.write(new DatasetWriter.Entry(scen, urgency, dynamism,
+          problemClassId, instanceId, generatorSettings, fileName));
+      return true;
     }
   }
 
@@ -443,8 +682,192 @@ public class Generator {
     }
   }
 
+  /**
+   * Creates a supplier that creates a new {@link StagedGenerator} on every
+   * invocation. This is needed because generators are not thread safe.
+   */
+  static Supplier<StagedGenerator> generatorSupplier(
+      final GeneratorSettings settings,
+      final ArrivalTimeSampling arrivalTimes,
+      final Optional<StochasticSupplier<Double>> sineHeights,
+      final Supplier<LocationGenerator> lg,
+      final TimeWindowRandomness timeWindows) {
+    return new Supplier<StagedGenerator>() {
+      @Override
+      public StagedGenerator get() {
+        return new StagedGenerator(settings, createTimeSeries(settings,
+            arrivalTimes, sineHeights), lg.get(), timeWindows);
+      }
+    };
+  }
+
+  /**
+   * Creates the generator of order announce times.
+   * @param settings The settings.
+   * @param arrivalTimes The sampling method.
+   * @param sineHeights The heights of sine intensity functions, if absent the
+   *          heights are drawn uniformly. Must be thread safe if the time
+   *          series is generated in parallel.
+   * @return A new generator.
+   */
+  static TimeSeriesGenerator createTimeSeries(GeneratorSettings settings,
+      ArrivalTimeSampling arrivalTimes,
+      Optional<StochasticSupplier<Double>> sineHeights) {
+    final StochasticSupplier<Double> heights;
+    if (sineHeights.isPresent()) {
+      heights = sineHeights.get();
+    } else {
+      heights = uniformSineHeights();
+    }
+    return arrivalTimes.createTimeSeries(settings.timeSeriesType,
+        settings.officeHours, NUM_ORDERS, heights);
+  }
+
+  static StochasticSupplier<Double> uniformSineHeights() {
+    return StochasticSuppliers.uniformDouble(SINE_MIN_HEIGHT, SINE_MAX_HEIGHT);
+  }
+
+  /**
+   * Generates candidate scenarios in two stages. The first stage only
+   * generates the order announce times and measures the dynamism, this is
+   * cheap compared to generating a complete scenario. The second stage
+   * generates the complete scenario and is only needed for candidates with an
+   * acceptable dynamism. Together, both stages generate exactly the same
+   * scenario as {@link ScenarioGenerator#generate(RandomGenerator, String)}.
+   */
+  static class StagedGenerator {
+    final GeneratorSettings settings;
+    final TimeSeriesGenerator announceTimes;
+    final ScenarioGenerator generator;
+    final double[] arrivalTimes;
+    // reused for measuring the dynamism of each complete candidate
+    final DynamismKernel kernel;
+
+    StagedGenerator(GeneratorSettings s, TimeSeriesGenerator tsg,
+        LocationGenerator lg, TimeWindowRandomness timeWindows) {
+      settings = s;
+      announceTimes = tsg;
+      generator = createGenerator(s.dayLength, s.urgency * 60 * 1000L,
+          announceTimes, lg, timeWindows);
+      arrivalTimes = new double[NUM_ORDERS];
+      kernel = new DynamismKernel(NUM_ORDERS);
+    }
+
+    /**
+     * Generates the order announce times of a candidate scenario and measures
+     * its dynamism. Draws exactly the same numbers from <code>rng</code> as
+     * {@link ScenarioGenerator#generate(RandomGenerator, String)}.
+     * @param rng The random number generator.
+     * @return The announcement.
+     */
+    Announcement announce(RandomGenerator rng) {
+      // seeds for depots, vehicles and parcels, in that order
+      final long[] seeds = new long[] { rng.nextLong(), rng.nextLong(),
+          rng.nextLong() };
+      // the parcel generator reseeds its MersenneTwister with the parcel
+      // seed, the first number it draws is the seed for the announce times
+      final List<Double> times = announceTimes.generate(new MersenneTwister(
+          seeds[2]).nextLong());
+      if (times.size() != NUM_ORDERS) {
+        return new Announcement(seeds, Optional.<Double> absent());
+      }
+      // orders are announced at the floor of the generated times
+      for (int i = 0; i < NUM_ORDERS; i++) {
+        arrivalTimes[i] = DoubleMath.roundToLong(times.get(i),
+            RoundingMode.FLOOR);
+      }
+      return new Announcement(seeds, Optional.of(DynamismKernel
+          .measureInPlace(arrivalTimes, NUM_ORDERS, settings.officeHours)));
+    }
+
+    /**
+     * Generates the complete scenario of an announcement.
+     * @param announcement The announcement.
+     * @return The scenario.
+     */
+    Scenario generate(Announcement announcement) {
+      return generator.generate(new SeedReplay(announcement.seeds), "temp");
+    }
+  }
+
+  /**
+   * The first stage of a candidate scenario: the seeds from which it can be
+   * generated and its dynamism. The dynamism is absent if the number of
+   * orders is not {@link #NUM_ORDERS}.
+   */
+  static class Announcement {
+    final long[] seeds;
+    final Optional<Double> dynamism;
+
+    Announcement(long[] s, Optional<Double> dyn) {
+      seeds = s;
+      dynamism = dyn;
+    }
+  }
+
+  /**
+   * Replays a fixed sequence of longs, all other methods are unsupported.
+   */
+  static class SeedReplay extends AbstractRandomGenerator {
+    final long[] seeds;
+    int index;
+
+    SeedReplay(long[] s) {
+      seeds = s;
+      index = 0;
+    }
+
+    @Override
+    public long nextLong() {
+      checkState(index < seeds.length, "All %s seeds are used.",
+          seeds.length);
+      return seeds[index++];
+    }
+
+    @Override
+    public void setSeed(long seed) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double nextDouble() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  static StochasticSupplier<IntensityFunction> sineIntensity(
+      long officeHoursLength, int numOrders,
+      StochasticSupplier<Double> heights) {
+    final double numPeriods = officeHoursLength / (double) INTENSITY_PERIOD;
+    return IntensityFunctions
+        .sineIntensity()
+        .area(numOrders / numPeriods)
+        .period(INTENSITY_PERIOD)
+        .height(heights)
+        .phaseShift(
+            StochasticSuppliers.uniformDouble(0, INTENSITY_PERIOD))
+        .buildStochasticSupplier();
+  }
+
+  static StochasticSupplier<Double> uniformMaxDeviation() {
+    return StochasticSuppliers
+        .normal()
+        .mean(1 * 60 * 1000)
+        .std(1 * 60 * 1000)
+        .lowerBound(0)
+        .upperBound(15d * 60 * 1000)
+        .buildDouble();
+  }
+
   static ScenarioGenerator createGenerator(long scenarioLength,
       long urgency, TimeSeriesGenerator tsg, LocationGenerator lg) {
+    return createGenerator(scenarioLength, urgency, tsg, lg,
+        TimeWindowRandomness.LEGACY);
+  }
+
+  static ScenarioGenerator createGenerator(long scenarioLength,
+      long urgency, TimeSeriesGenerator tsg, LocationGenerator lg,
+      TimeWindowRandomness timeWindows) {
     return ScenarioGenerator
         .builder()
         // global
@@ -461,14 +884,13 @@ public class Generator {
         .parcels(
             Parcels
                 .builder()
-                .announceTimes(
-                    TimeSeries.filter(tsg,
-                        TimeSeries.numEventsPredicate(NUM_ORDERS)))
+                .announceTimes(tsg)
                 .pickupDurations(constant(PICKUP_DURATION))
                 .deliveryDurations(constant(DELIVERY_DURATION))
                 .neededCapacities(constant(0))
                 .locations(lg)
-                .timeWindows(new CustomTimeWindowGenerator(urgency)
+                .timeWindows(new CustomTimeWindowGenerator(urgency,
+                    timeWindows)
                 // TimeWindows.builder()
                 // .pickupUrgency(constant(urgency))
                 // // .pickupTimeWindowLength(StochasticSuppliers.uniformLong(5
@@ -521,6 +943,207 @@ public class Generator {
     SINE, HOMOGENOUS, NORMAL, UNIFORM;
   }
 
+  /**
+   * Defines how the announce times of orders are sampled. Both methods sample
+   * time series with exactly the specified number of events from the same
+   * distribution.
+   */
+  public enum ArrivalTimeSampling {
+    /**
+     * Time series are generated until one with exactly the specified number
+     * of events is found. This is the method that was used for generating the
+     * published dataset.
+     */
+    FILTERED {
+      @Override
+      TimeSeriesGenerator createTimeSeries(TimeSeriesType type,
+          long officeHoursLength, int numOrders,
+          StochasticSupplier<Double> sineHeights) {
+        final TimeSeriesGenerator tsg;
+        if (type == TimeSeriesType.SINE) {
+          tsg = TimeSeries.nonHomogenousPoisson(officeHoursLength,
+              sineIntensity(officeHoursLength, numOrders, sineHeights));
+        } else if (type == TimeSeriesType.HOMOGENOUS) {
+          tsg = TimeSeries.homogenousPoisson(officeHoursLength, numOrders);
+        } else if (type == TimeSeriesType.NORMAL) {
+          tsg = TimeSeries.normal(officeHoursLength, numOrders, NORMAL_STD);
+        } else if (type == TimeSeriesType.UNIFORM) {
+          tsg = TimeSeries.uniform(officeHoursLength, numOrders,
+              uniformMaxDeviation());
+        } else {
+          throw new IllegalArgumentException("Unknown time series type: "
+              + type);
+        }
+        return TimeSeries.filter(tsg,
+            TimeSeries.numEventsPredicate(numOrders));
+      }
+    },
+
+    /**
+     * Time series are sampled conditioned on having exactly the specified
+     * number of events, see {@link ConditionalTimeSeries}.
+     */
+    CONDITIONAL {
+      @Override
+      TimeSeriesGenerator createTimeSeries(TimeSeriesType type,
+          long officeHoursLength, int numOrders,
+          StochasticSupplier<Double> sineHeights) {
+        if (type == TimeSeriesType.SINE) {
+          return ConditionalTimeSeries.nonHomogenousPoisson(officeHoursLength,
+              numOrders,
+              sineIntensity(officeHoursLength, numOrders, sineHeights));
+        } else if (type == TimeSeriesType.HOMOGENOUS) {
+          return ConditionalTimeSeries.homogenousPoisson(officeHoursLength,
+              numOrders);
+        } else if (type == TimeSeriesType.NORMAL) {
+          return ConditionalTimeSeries.normal(officeHoursLength, numOrders,
+              NORMAL_STD);
+        } else if (type == TimeSeriesType.UNIFORM) {
+          return ConditionalTimeSeries.uniform(officeHoursLength, numOrders,
+              uniformMaxDeviation());
+        }
+        throw new IllegalArgumentException("Unknown time series type: "
+            + type);
+      }
+    };
+
+    abstract TimeSeriesGenerator createTimeSeries(TimeSeriesType type,
+        long officeHoursLength, int numOrders,
+        StochasticSupplier<Double> sineHeights);
+  }
+
+  /**
+   * Defines the random numbers from which the time windows of each parcel are
+   * drawn. The time window generator is reseeded with the seed of every
+   * parcel, the methods differ in the cost of reseeding.
+   */
+  public enum TimeWindowRandomness {
+    /**
+     * A {@link MersenneTwister} is reseeded for every parcel and each of the
+     * (up to) three uniform numbers is drawn from a {@link StochasticSupplier}
+     * with a seed of the twister, which reseeds again. This is the method that
+     * was used for generating the published dataset, use it to reproduce
+     * existing datasets.
+     */
+    LEGACY {
+      @Override
+      RandomGenerator create() {
+        return new MersenneTwister();
+      }
+    },
+
+    /**
+     * A {@link SplitMix64} is reseeded for every parcel in constant time and
+     * the uniform numbers are drawn from it directly. The time windows have
+     * the same distribution as with {@link #LEGACY}, but the generated
+     * scenarios are different.
+     */
+    SPLIT_MIX {
+      @Override
+      RandomGenerator create() {
+        return new SplitMix64(0L);
+      }
+    };
+
+    abstract RandomGenerator create();
+  }
+
+  /**
+   * Builder for configuring the generation of the dataset. By default, the
+   * dataset is generated exactly as the published dataset.
+   */
+  public static class DatasetBuilder {
+    boolean fixedLocations;
+    Optional<ForkJoinPool> pool;
+    ArrivalTimeSampling arrivalTimes;
+    boolean targetedDynamism;
+    TimeWindowRandomness timeWindows;
+    boolean archive;
+
+    DatasetBuilder() {
+      fixedLocations = false;
+      pool = Optional.absent();
+      arrivalTimes = ArrivalTimeSampling.FILTERED;
+      targetedDynamism = false;
+      timeWindows = TimeWindowRandomness.LEGACY;
+      archive = false;
+    }
+
+    /**
+     * Use the same location list for all scenarios.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder fixedLocations() {
+      fixedLocations = true;
+      return this;
+    }
+
+    /**
+     * Evaluate candidate scenarios in parallel using the specified pool. The
+     * generated dataset does not depend on the parallelism of the pool.
+     * @param forkJoinPool The pool to use.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder parallel(ForkJoinPool forkJoinPool) {
+      pool = Optional.of(forkJoinPool);
+      return this;
+    }
+
+    /**
+     * Sets the method for sampling order announce times, default is
+     * {@link ArrivalTimeSampling#FILTERED}.
+     * @param sampling The sampling method.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder arrivalTimes(ArrivalTimeSampling sampling) {
+      arrivalTimes = sampling;
+      return this;
+    }
+
+    /**
+     * Draw the heights of sine intensity functions such that the dynamism of
+     * the generated time series is likely close to one of the dynamism levels
+     * of the dataset, see {@link DynamismLandscape}. This greatly reduces the
+     * number of rejected sine scenarios, but the heights in the dataset are no
+     * longer uniformly distributed.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder targetedDynamism() {
+      targetedDynamism = true;
+      return this;
+    }
+
+    /**
+     * Sets the random numbers of the time windows, default is
+     * {@link TimeWindowRandomness#LEGACY}.
+     * @param randomness The randomness.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder timeWindows(TimeWindowRandomness randomness) {
+      timeWindows = randomness;
+      return this;
+    }
+
+    /**
+     * Also pack the dataset in a single file:
+     * <code>files/dataset.dsa</code>, see {@link DatasetArchive}. The files of
+     * the scenarios are still written to <code>files/dataset/</code>.
+     * @return This, as per the builder pattern.
+     */
+    public DatasetBuilder archive() {
+      archive = true;
+      return this;
+    }
+
+    /**
+     * Generates the dataset.
+     * @param rng The master random number generator.
+     */
+    public void generate(RandomGenerator rng) {
+      Generator.generate(rng, this);
+    }
+  }
+
   static class CustomTimeWindowGenerator implements TimeWindowGenerator {
     private static final long MINIMAL_PICKUP_TW_LENGTH = 10 * 60 * 1000L;
     private static final long MINIMAL_DELIVERY_TW_LENGTH = 10 * 60 * 1000L;
@@ -529,14 +1152,28 @@ public class Generator {
     private final StochasticSupplier<Double> pickupTWopening;
     private final StochasticSupplier<Double> deliveryTWlength;
     private final StochasticSupplier<Double> deliveryTWopening;
+    private final TimeWindowRandomness randomness;
     private final RandomGenerator rng;
 
     public CustomTimeWindowGenerator(long urg) {
+      this(urg, TimeWindowRandomness.LEGACY);
+    }
+
+    public CustomTimeWindowGenerator(long urg, TimeWindowRandomness r) {
       urgency = urg;
       pickupTWopening = StochasticSuppliers.uniformDouble(0d, 1d);
       deliveryTWlength = StochasticSuppliers.uniformDouble(0d, 1d);
       deliveryTWopening = StochasticSuppliers.uniformDouble(0d, 1d);
-      rng = new MersenneTwister();
+      randomness = r;
+      rng = r.create();
+    }
+
+    // a uniform number in [0,1)
+    double nextUniform(StochasticSupplier<Double> legacySupplier) {
+      if (randomness == TimeWindowRandomness.LEGACY) {
+        return legacySupplier.get(rng.nextLong());
+      }
+      return rng.nextDouble();
     }
 
     @Override
@@ -559,7 +1196,7 @@ public class Generator {
         // possible values range from 0 .. n
         // where n = urgency - MINIMAL_PICKUP_TW_LENGTH
         pickupOpening = orderAnnounceTime + DoubleMath.roundToLong(
-            pickupTWopening.get(rng.nextLong())
+            nextUniform(pickupTWopening)
                 * (urgency - MINIMAL_PICKUP_TW_LENGTH), RoundingMode.HALF_UP);
       } else {
         pickupOpening = orderAnnounceTime;
@@ -581,7 +1218,7 @@ public class Generator {
 
       final double openingRange = maxDeliveryOpening - minDeliveryOpening;
       final long deliveryOpening = minDeliveryOpening
-          + DoubleMath.roundToLong(deliveryTWopening.get(rng.nextLong())
+          + DoubleMath.roundToLong(nextUniform(deliveryTWopening)
               * openingRange, RoundingMode.HALF_DOWN);
 
       final long minDeliveryClosing = Math.min(Math.max(pickupTW.end
@@ -590,7 +1227,7 @@ public class Generator {
 
       final double closingRange = maxDeliveryClosing - minDeliveryClosing;
       final long deliveryClosing = minDeliveryClosing
-          + DoubleMath.roundToLong(deliveryTWlength.get(rng.nextLong())
+          + DoubleMath.roundToLong(nextUniform(deliveryTWlength)
               * closingRange, RoundingMode.HALF_DOWN);
 
       final long latestDelivery = endTime - deliveryToDepotTT
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram with a fixed number of equally sized bins. Values below the
+ * lower bound or at or above the upper bound are counted separately. The
+ * histogram only stores counts, memory usage is therefore independent of the
+ * number of values. Two histograms with the same bins can be merged, since
+ * all counts are integers the result does not depend on the order in which
+ * values are added or histograms are merged.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class Histogram {
+  final double lowerBound;
+  final double upperBound;
+  final double binWidth;
+  final long[] counts;
+  long underflow;
+  long overflow;
+
+  /**
+   * Creates a new empty histogram.
+   * @param lower The lower bound (inclusive) of the first bin.
+   * @param upper The upper bound (exclusive) of the last bin.
+   * @param numBins The number of bins.
+   */
+  public Histogram(double lower, double upper, int numBins) {
+    checkArgument(lower < upper, "Lower bound must be < upper bound.");
+    checkArgument(numBins > 0, "At least one bin is required.");
+    lowerBound = lower;
+    upperBound = upper;
+    binWidth = (upper - lower) / numBins;
+    counts = new long[numBins];
+  }
+
+  /**
+   * Adds a value to the histogram.
+   * @param value The value to add.
+   */
+  public void add(double value) {
+    if (value < lowerBound) {
+      underflow++;
+    } else if (value >= upperBound) {
+      overflow++;
+    } else {
+      // rounding errors may put values just below the upper bound outside
+      counts[Math.min((int) ((value - lowerBound) / binWidth),
+          counts.length - 1)]++;
+    }
+  }
+
+  /**
+   * Adds all counts of the specified histogram to this histogram.
+   * @param other The histogram to merge, must have the same bins.
+   */
+  public void merge(Histogram other) {
+    checkArgument(other.lowerBound == lowerBound
+        && other.upperBound == upperBound
+        && other.counts.length == counts.length,
+        "Histograms must have the same bins.");
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    underflow += other.underflow;
+    overflow += other.overflow;
+  }
+
+  /**
+   * @return The number of bins.
+   */
+  public int numBins() {
+    return counts.length;
+  }
+
+  /**
+   * @param bin The index of the bin.
+   * @return The lower bound (inclusive) of the bin.
+   */
+  public double binLowerBound(int bin) {
+    return lowerBound + bin * binWidth;
+  }
+
+  /**
+   * @param bin The index of the bin.
+   * @return The upper bound (exclusive) of the bin.
+   */
+  public double binUpperBound(int bin) {
+    return bin == counts.length - 1 ? upperBound : binLowerBound(bin + 1);
+  }
+
+  /**
+   * @param bin The index of the bin.
+   * @return The number of values in the bin.
+   */
+  public long count(int bin) {
+    return counts[bin];
+  }
+
+  /**
+   * @return The number of values below the lower bound.
+   */
+  public long underflow() {
+    return underflow;
+  }
+
+  /**
+   * @return The number of values at or above the upper bound.
+   */
+  public long overflow() {
+    return overflow;
+  }
+
+  /**
+   * @return The total number of values, including the values outside the
+   *         bounds.
+   */
+  public long totalCount() {
+    long total = underflow + overflow;
+    for (final long c : counts) {
+      total += c;
+    }
+    return total;
+  }
+}
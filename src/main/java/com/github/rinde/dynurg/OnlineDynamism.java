@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Keeps track of the dynamism of a growing set of arrival times, arrivals may
+ * be added in any order. Adding an arrival and querying the dynamism takes
+ * expected O(log n) time.
+ * <p>
+ * In {@link DynamismKernel} the expected inter arrival time is
+ * <code>lengthOfDay / n</code>, changing <code>n</code> changes the
+ * contribution of every inter arrival time. This tracker therefore uses a
+ * fixed expected inter arrival time: <code>lengthOfDay /
+ * expectedNumEvents</code>. When the number of arrivals equals
+ * <code>expectedNumEvents</code> the dynamism is the same as computed by
+ * {@link DynamismKernel} (up to rounding errors).
+ * <p>
+ * With a fixed expected inter arrival time, the recursive deviation of an
+ * inter arrival time is an affine function of the deviation of its
+ * predecessor. Affine functions can be composed, the arrival times are
+ * therefore stored in a balanced search tree (a treap) in which each node
+ * stores the composition of all inter arrival times in its subtree.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class OnlineDynamism {
+  final double lengthOfDay;
+  final double expectedInterArrivalTime;
+  final RandomGenerator priorities;
+  Node root;
+  // results of split(Node,double)
+  Node lower;
+  Node upper;
+
+  /**
+   * Creates a new empty tracker.
+   * @param dayLength The length of the day, all arrival times must be in
+   *          [0,dayLength).
+   * @param expectedNumEvents The expected number of arrivals in a day.
+   */
+  public OnlineDynamism(double dayLength, int expectedNumEvents) {
+    checkArgument(dayLength > 0d, "Length of day must be positive.");
+    checkArgument(expectedNumEvents >= 2,
+        "At least two arrivals must be expected, found %s.",
+        expectedNumEvents);
+    lengthOfDay = dayLength;
+    expectedInterArrivalTime = dayLength / expectedNumEvents;
+    // priorities only affect the shape of the tree, a fixed seed makes
+    // rounding errors reproducible
+    priorities = new MersenneTwister(0L);
+  }
+
+  /**
+   * Adds an arrival time.
+   * @param time The arrival time, must be in [0,lengthOfDay).
+   */
+  public void add(double time) {
+    checkArgument(time >= 0 && time < lengthOfDay,
+        "Arrival time should be >= 0 and < %s. Found %s.", lengthOfDay, time);
+    final Node node = new Node(time, priorities.nextDouble());
+    update(node);
+    split(root, time);
+    final Node right = upper;
+    root = merge(merge(lower, node), right);
+  }
+
+  /**
+   * Removes one occurrence of the specified arrival time.
+   * @param time The arrival time to remove.
+   * @return <code>true</code> if the time was removed, <code>false</code> if
+   *         it was not present.
+   */
+  public boolean remove(double time) {
+    final int before = size();
+    root = remove(root, time);
+    return size() < before;
+  }
+
+  /**
+   * Removes all arrival times before the specified time.
+   * @param time All arrival times <code>&lt; time</code> are removed.
+   */
+  public void removeBefore(double time) {
+    split(root, time);
+    root = upper;
+  }
+
+  /**
+   * @return The number of arrival times.
+   */
+  public int size() {
+    return root == null ? 0 : root.size;
+  }
+
+  /**
+   * @return The dynamism of all arrival times.
+   * @throws IllegalStateException if there are less than two arrival times.
+   */
+  public double dynamism() {
+    checkState(size() >= 2,
+        "At least two arrival times are required, found %s time(s).", size());
+    return dynamism(root);
+  }
+
+  /**
+   * Computes the dynamism of the arrival times in [from,to).
+   * @param from The start of the interval (inclusive).
+   * @param to The end of the interval (exclusive).
+   * @return The dynamism of the arrival times in the interval.
+   * @throws IllegalStateException if there are less than two arrival times in
+   *           the interval.
+   */
+  public double dynamism(double from, double to) {
+    split(root, from);
+    final Node left = lower;
+    split(upper, to);
+    final Node middle = lower;
+    final Node right = upper;
+    final int num = middle == null ? 0 : middle.size;
+    // the aggregate must be read before merging, merge() may attach nodes
+    // outside the interval to the subtree
+    final double dynamism = num >= 2 ? dynamism(middle) : Double.NaN;
+    root = merge(merge(left, middle), right);
+    checkState(num >= 2,
+        "At least two arrival times are required, found %s time(s).", num);
+    return dynamism;
+  }
+
+  /**
+   * Creates a tracker of the dynamism of the arrival times in a rolling
+   * window.
+   * @param dayLength The length of the day, all arrival times must be in
+   *          [0,dayLength).
+   * @param expectedNumEvents The expected number of arrivals in a day.
+   * @param windowLength The length of the window.
+   * @return A new tracker.
+   */
+  public static RollingWindow rollingWindow(double dayLength,
+      int expectedNumEvents, double windowLength) {
+    return new RollingWindow(new OnlineDynamism(dayLength, expectedNumEvents),
+        windowLength);
+  }
+
+  double dynamism(Node n) {
+    return 1d - n.sumDeviation / ((n.size - 1) * expectedInterArrivalTime
+        + n.maxDeviation);
+  }
+
+  // splits t in nodes with time < key (lower) and time >= key (upper)
+  void split(Node t, double key) {
+    if (t == null) {
+      lower = null;
+      upper = null;
+    } else if (t.time < key) {
+      split(t.right, key);
+      t.right = lower;
+      update(t);
+      lower = t;
+    } else {
+      split(t.left, key);
+      t.left = upper;
+      update(t);
+      upper = t;
+    }
+  }
+
+  // all times in a must be <= all times in b
+  Node merge(Node a, Node b) {
+    if (a == null) {
+      return b;
+    } else if (b == null) {
+      return a;
+    } else if (a.priority > b.priority) {
+      a.right = merge(a.right, b);
+      update(a);
+      return a;
+    }
+    b.left = merge(a, b.left);
+    update(b);
+    return b;
+  }
+
+  Node remove(Node t, double time) {
+    if (t == null) {
+      return null;
+    }
+    if (time < t.time) {
+      t.left = remove(t.left, time);
+    } else if (time > t.time) {
+      t.right = remove(t.right, time);
+    } else {
+      return merge(t.left, t.right);
+    }
+    update(t);
+    return t;
+  }
+
+  void update(Node n) {
+    n.size = 1;
+    n.min = n.time;
+    n.max = n.time;
+    n.setIdentity();
+    if (n.left != null) {
+      n.size += n.left.size;
+      n.min = n.left.min;
+      n.append(n.left);
+      appendInterArrivalTime(n, n.left.max, n.time);
+    }
+    if (n.right != null) {
+      n.size += n.right.size;
+      n.max = n.right.max;
+      appendInterArrivalTime(n, n.time, n.right.min);
+      n.append(n.right);
+    }
+  }
+
+  void appendInterArrivalTime(Node n, double from, double to) {
+    final double delta = to - from;
+    if (delta < expectedInterArrivalTime) {
+      final double diff = expectedInterArrivalTime - delta;
+      final double scale = diff / expectedInterArrivalTime;
+      // cur = diff + scale * prev, scaledPrev = scale * prev
+      n.append(scale, diff, scale, diff, scale, 0d);
+    } else {
+      // the deviation is reset to zero
+      n.append(0d, 0d, 0d, 0d, 0d, 0d);
+    }
+  }
+
+  /**
+   * A node in the treap. Given the deviation <code>p</code> of the inter
+   * arrival time preceding the subtree, the subtree:
+   * <ul>
+   * <li>ends with a deviation of <code>a * p + b</code>,</li>
+   * <li>adds <code>c * p + d</code> to the sum of deviations,</li>
+   * <li>adds <code>e * p + f</code> to the maximum deviation.</li>
+   * </ul>
+   */
+  static final class Node {
+    final double time;
+    final double priority;
+    Node left;
+    Node right;
+    int size;
+    double min;
+    double max;
+    double a;
+    double b;
+    double c;
+    double sumDeviation;
+    double e;
+    double maxDeviation;
+
+    Node(double t, double prio) {
+      time = t;
+      priority = prio;
+    }
+
+    void setIdentity() {
+      a = 1d;
+      b = 0d;
+      c = 0d;
+      sumDeviation = 0d;
+      e = 0d;
+      maxDeviation = 0d;
+    }
+
+    void append(Node n) {
+      append(n.a, n.b, n.c, n.sumDeviation, n.e, n.maxDeviation);
+    }
+
+    // composes this function with the specified function (applied after)
+    void append(double a2, double b2, double c2, double d2, double e2,
+        double f2) {
+      sumDeviation = sumDeviation + c2 * b + d2;
+      maxDeviation = maxDeviation + e2 * b + f2;
+      c = c + c2 * a;
+      e = e + e2 * a;
+      b = a2 * b + b2;
+      a = a2 * a;
+    }
+  }
+
+  /**
+   * Tracks the dynamism of the arrival times in a rolling window that ends at
+   * the latest arrival time. Arrival times that fall out of the window are
+   * removed, such that memory usage is bounded by the number of arrivals in a
+   * window.
+   */
+  public static final class RollingWindow {
+    final OnlineDynamism tracker;
+    final double windowLength;
+    double latest;
+
+    RollingWindow(OnlineDynamism t, double window) {
+      checkArgument(window > 0d, "Window length must be positive.");
+      tracker = t;
+      windowLength = window;
+      latest = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Adds an arrival time. Arrival times before the current window are
+     * ignored.
+     * @param time The arrival time.
+     * @return <code>true</code> if the arrival time is in the window,
+     *         <code>false</code> otherwise.
+     */
+    public boolean add(double time) {
+      if (time < latest - windowLength) {
+        return false;
+      }
+      tracker.add(time);
+      if (time > latest) {
+        latest = time;
+        tracker.removeBefore(latest - windowLength);
+      }
+      return true;
+    }
+
+    /**
+     * @return The number of arrival times in the window.
+     */
+    public int size() {
+      return tracker.size();
+    }
+
+    /**
+     * @return The dynamism of the arrival times in
+     *         [latest - windowLength, latest].
+     * @throws IllegalStateException if there are less than two arrival times
+     *           in the window.
+     */
+    public double dynamism() {
+      return tracker.dynamism();
+    }
+  }
+}
@@ -15,11 +15,16 @@
  */
 package com.github.rinde.dynurg;
 
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -28,11 +33,10 @@ import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import com.github.rinde.rinsim.scenario.generator.IntensityFunctions;
 import com.github.rinde.rinsim.scenario.generator.TimeSeries;
 import com.github.rinde.rinsim.scenario.generator.TimeSeries.TimeSeriesGenerator;
-import com.github.rinde.rinsim.scenario.measure.Metrics;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers;
 import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 
 public class PoissonDynamismExperiment {
@@ -41,48 +45,45 @@ public class PoissonDynamismExperiment {
   private static final int REPETITIONS = 1000;
   private static final long INTENSITY_PERIOD = 60 * 60 * 1000L;
 
+  // settings of the parallel histogram mode
+  private static final int CHUNK_SIZE = 10000;
+  private static final int HISTOGRAM_BINS = 1000;
+  private static final double SKETCH_ACCURACY = .001;
+  private static final double SKETCH_MIN_VALUE = 1e-6;
+  static final double[] QUANTILES = { 0, 1e-6, 1e-5, 1e-4, .001, .01,
+      .05, .25, .5, .75, .95, .99, .999, .9999, .99999, .999999, 1 };
+
   private static final String FOLDER = "files/results/time-series-dynamism-experiment/";
 
+  /**
+   * Without arguments, the dynamism of {@link #REPETITIONS} time series of
+   * each arrival process is written to a file. With the arguments
+   * <code>&lt;repetitions&gt; [&lt;threads&gt;]</code> the dynamism of the
+   * specified number of time series is collected in a histogram in parallel,
+   * see {@link #createDynamismHistogram(ArrivalProcess, long, String, long,
+   * ForkJoinPool)}. By default all available processors are used.
+   * @param args The arguments.
+   */
   public static void main(String[] args) {
+    checkArgument(args.length <= 2, "Usage: [<repetitions> [<threads>]]");
     final RandomGenerator rng = new MersenneTwister(123L);
-    final TimeSeriesGenerator nonHomogPoissonGenerator = TimeSeries
-        .nonHomogenousPoisson(LENGTH_OF_DAY, IntensityFunctions
-            .sineIntensity()
-            .area(NUM_EVENTS / (LENGTH_OF_DAY / INTENSITY_PERIOD))
-            .period(INTENSITY_PERIOD)
-            .height(StochasticSuppliers.uniformDouble(-.99, 1.5d))
-            .phaseShift(
-                StochasticSuppliers.uniformDouble(0, INTENSITY_PERIOD))
-            .buildStochasticSupplier());
-
-    final TimeSeriesGenerator homogPoissonGenerator = TimeSeries
-        .homogenousPoisson(LENGTH_OF_DAY, NUM_EVENTS);
-
-    final TimeSeriesGenerator normalGenerator = TimeSeries.normal(
-        LENGTH_OF_DAY, NUM_EVENTS, 2.4 * 60 * 1000);
-
-    final StochasticSupplier<Double> maxDeviation = StochasticSuppliers
-        .normal()
-        .mean(1 * 60 * 1000)
-        .std(1 * 60 * 1000)
-        .lowerBound(0)
-        .upperBound(15d * 60 * 1000)
-        .buildDouble();
-    final TimeSeriesGenerator uniformGenerator = TimeSeries.uniform(
-        LENGTH_OF_DAY, NUM_EVENTS, maxDeviation);
-
-    createDynamismHistogram(nonHomogPoissonGenerator, rng.nextLong(), new File(
-        FOLDER + "non-homog-poisson-dynamism.csv"), REPETITIONS);
-
-    createDynamismHistogram(homogPoissonGenerator, rng.nextLong(), new File(
-        FOLDER + "homog-poisson-dynamism.csv"), REPETITIONS);
-
-    createDynamismHistogram(normalGenerator, rng.nextLong(), new File(
-        FOLDER + "normal-dynamism.csv"), REPETITIONS);
-
-    createDynamismHistogram(uniformGenerator, rng.nextLong(), new File(
-        FOLDER + "uniform-dynamism.csv"), REPETITIONS);
-
+    if (args.length == 0) {
+      for (final ArrivalProcess process : ArrivalProcess.values()) {
+        createDynamismHistogram(process.create(), rng.nextLong(),
+            new File(FOLDER + process.fileName + "-dynamism.csv"),
+            REPETITIONS);
+      }
+      return;
+    }
+    final long repetitions = Long.parseLong(args[0]);
+    final ForkJoinPool pool = args.length > 1
+        ? new ForkJoinPool(Integer.parseInt(args[1]))
+        : new ForkJoinPool();
+    for (final ArrivalProcess process : ArrivalProcess.values()) {
+      createDynamismHistogram(process, rng.nextLong(),
+          FOLDER + process.fileName, repetitions, pool);
+    }
+    pool.shutdown();
   }
 
   static void createDynamismHistogram(TimeSeriesGenerator generator, long seed,
@@ -93,23 +94,231 @@ public class PoissonDynamismExperiment {
       throw new IllegalStateException(e1);
     }
     final RandomGenerator rng = new MersenneTwister(seed);
-    final List<Double> values = newArrayList();
     final SummaryStatistics ss = new SummaryStatistics();
-    for (int i = 0; i < repetitions; i++) {
-      final List<Double> times = generator.generate(rng.nextLong());
-      ss.addValue(times.size());
-      final double dynamism = Metrics.measureDynamism(times, LENGTH_OF_DAY);
-      values.add(dynamism);
+    final DynamismKernel kernel = new DynamismKernel(NUM_EVENTS);
+    try (final Writer writer = Files.newWriter(file, Charsets.UTF_8)) {
+      for (int i = 0; i < repetitions; i++) {
+        final List<Double> times = generator.generate(rng.nextLong());
+        ss.addValue(times.size());
+        final double dynamism = kernel.measure(times, LENGTH_OF_DAY);
+        if (i > 0) {
+          writer.write("\n");
+        }
+        writer.write(Double.toString(dynamism));
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
     }
     System.out.println(file.getName() + " has #events: mean: " + ss.getMean()
         + " +- " + ss.getStandardDeviation());
+  }
 
-    final StringBuilder sb = new StringBuilder();
-    sb.append(Joiner.on("\n").join(values));
-    try {
-      Files.write(sb.toString(), file, Charsets.UTF_8);
-    } catch (final IOException e) {
-      throw new IllegalStateException(e);
+  /**
+   * Computes the dynamism of a large number of time series in parallel. The
+   * values are not stored, instead they are collected in a histogram with
+   * {@link #HISTOGRAM_BINS} bins and in a {@link QuantileSketch}, memory usage
+   * is therefore independent of the number of repetitions. Repetition
+   * <code>i</code> uses seed {@link #repetitionSeed(long, long)}, the result
+   * is therefore the same regardless of the number of threads.
+   * <p>
+   * Two files are written: <code>prefix-histogram.csv</code> with the counts
+   * per bin and <code>prefix-quantiles.csv</code> with the estimates of
+   * {@link #QUANTILES}. The first and last rows of the histogram contain the
+   * counts below 0 and at or above 1 (i.e. a dynamism of exactly 1).
+   * @param process The arrival process, each task creates its own time series
+   *          generator.
+   * @param seed The master seed.
+   * @param prefix The path prefix of the output files.
+   * @param repetitions The number of time series.
+   * @param pool The pool that executes the repetitions.
+   */
+  static void createDynamismHistogram(ArrivalProcess process, long seed,
+      String prefix, long repetitions, ForkJoinPool pool) {
+    final DynamismSummary total = summarize(process, seed, repetitions, pool);
+    System.out.println(prefix + " has #events: mean: " + total.meanNumEvents()
+        + " +- " + total.stdNumEvents());
+    total.write(new File(prefix + "-histogram.csv"),
+        new File(prefix + "-quantiles.csv"));
+  }
+
+  static DynamismSummary summarize(final ArrivalProcess process,
+      final long seed, long repetitions, ForkJoinPool pool) {
+    final DynamismSummary total = new DynamismSummary();
+    final int batchSize = pool.getParallelism() * 4;
+    for (long first = 0; first < repetitions; first +=
+        (long) batchSize * CHUNK_SIZE) {
+      final ImmutableList.Builder<Callable<DynamismSummary>> tasks =
+          ImmutableList.builder();
+      for (int j = 0; j < batchSize; j++) {
+        final long from = first + (long) j * CHUNK_SIZE;
+        final long to = Math.min(from + CHUNK_SIZE, repetitions);
+        if (from >= to) {
+          break;
+        }
+        tasks.add(new Callable<DynamismSummary>() {
+          @Override
+          public DynamismSummary call() {
+            return DynamismSummary.compute(process.create(), seed, from, to);
+          }
+        });
+      }
+      for (final Future<DynamismSummary> future : pool.invokeAll(tasks
+          .build())) {
+        try {
+          total.merge(future.get());
+        } catch (final InterruptedException | ExecutionException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Derives the seed of a repetition from the master seed. This is the
+   * <code>repetition</code>-th value of a SplitMix64 sequence that starts at
+   * <code>seed</code>, any repetition can be computed without computing the
+   * preceding ones.
+   * @param seed The master seed.
+   * @param repetition The index of the repetition.
+   * @return The seed of the repetition.
+   */
+  static long repetitionSeed(long seed, long repetition) {
+    long z = seed + (repetition + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  enum ArrivalProcess {
+    NON_HOMOG_POISSON("non-homog-poisson") {
+      @Override
+      TimeSeriesGenerator create() {
+        return TimeSeries.nonHomogenousPoisson(LENGTH_OF_DAY,
+            IntensityFunctions
+                .sineIntensity()
+                .area(NUM_EVENTS / (LENGTH_OF_DAY / INTENSITY_PERIOD))
+                .period(INTENSITY_PERIOD)
+                .height(StochasticSuppliers.uniformDouble(-.99, 1.5d))
+                .phaseShift(
+                    StochasticSuppliers.uniformDouble(0, INTENSITY_PERIOD))
+                .buildStochasticSupplier());
+      }
+    },
+    HOMOG_POISSON("homog-poisson") {
+      @Override
+      TimeSeriesGenerator create() {
+        return TimeSeries.homogenousPoisson(LENGTH_OF_DAY, NUM_EVENTS);
+      }
+    },
+    NORMAL("normal") {
+      @Override
+      TimeSeriesGenerator create() {
+        return TimeSeries.normal(LENGTH_OF_DAY, NUM_EVENTS, 2.4 * 60 * 1000);
+      }
+    },
+    UNIFORM("uniform") {
+      @Override
+      TimeSeriesGenerator create() {
+        final StochasticSupplier<Double> maxDeviation = StochasticSuppliers
+            .normal()
+            .mean(1 * 60 * 1000)
+            .std(1 * 60 * 1000)
+            .lowerBound(0)
+            .upperBound(15d * 60 * 1000)
+            .buildDouble();
+        return TimeSeries.uniform(LENGTH_OF_DAY, NUM_EVENTS, maxDeviation);
+      }
+    };
+
+    final String fileName;
+
+    ArrivalProcess(String name) {
+      fileName = name;
+    }
+
+    // time series generators are not thread safe, each thread needs its own
+    abstract TimeSeriesGenerator create();
+  }
+
+  // only integer counts (and the exact extremes) are stored, merging is
+  // therefore independent of the order of the repetitions
+  static class DynamismSummary {
+    final Histogram histogram;
+    final QuantileSketch sketch;
+    long numSeries;
+    long sumNumEvents;
+    long sumSquaredNumEvents;
+
+    DynamismSummary() {
+      histogram = new Histogram(0d, 1d, HISTOGRAM_BINS);
+      sketch = new QuantileSketch(SKETCH_ACCURACY, SKETCH_MIN_VALUE, 1d);
+    }
+
+    static DynamismSummary compute(TimeSeriesGenerator generator, long seed,
+        long from, long to) {
+      final DynamismSummary summary = new DynamismSummary();
+      final DynamismKernel kernel = new DynamismKernel(NUM_EVENTS);
+      for (long i = from; i < to; i++) {
+        final List<Double> times = generator.generate(repetitionSeed(seed, i));
+        final double dynamism = kernel.measure(times, LENGTH_OF_DAY);
+        summary.histogram.add(dynamism);
+        summary.sketch.add(dynamism);
+        summary.numSeries++;
+        summary.sumNumEvents += times.size();
+        summary.sumSquaredNumEvents += (long) times.size() * times.size();
+      }
+      return summary;
+    }
+
+    void merge(DynamismSummary other) {
+      histogram.merge(other.histogram);
+      sketch.merge(other.sketch);
+      numSeries += other.numSeries;
+      sumNumEvents += other.sumNumEvents;
+      sumSquaredNumEvents += other.sumSquaredNumEvents;
+    }
+
+    double meanNumEvents() {
+      return sumNumEvents / (double) numSeries;
+    }
+
+    double stdNumEvents() {
+      final double mean = meanNumEvents();
+      return Math.sqrt((sumSquaredNumEvents - numSeries * mean * mean)
+          / (numSeries - 1));
+    }
+
+    void write(File histogramFile, File quantilesFile) {
+      try {
+        Files.createParentDirs(histogramFile);
+        try (final Writer writer = Files.newWriter(histogramFile,
+            Charsets.UTF_8)) {
+          writer.write("lower,upper,count\n");
+          // the upper bound of the last bin is exclusive, a dynamism of
+          // exactly 1 is counted in the overflow row
+          writer.write(Double.NEGATIVE_INFINITY + ","
+              + histogram.binLowerBound(0) + "," + histogram.underflow()
+              + "\n");
+          for (int i = 0; i < histogram.numBins(); i++) {
+            writer.write(histogram.binLowerBound(i) + ","
+                + histogram.binUpperBound(i) + "," + histogram.count(i)
+                + "\n");
+          }
+          writer.write(histogram.binUpperBound(histogram.numBins() - 1)
+              + "," + Double.POSITIVE_INFINITY + "," + histogram.overflow()
+              + "\n");
+        }
+        try (final Writer writer = Files.newWriter(quantilesFile,
+            Charsets.UTF_8)) {
+          writer.write("quantile,dynamism\n");
+          for (final double q : QUANTILES) {
+            writer.write(q + "," + sketch.quantile(q) + "\n");
+          }
+        }
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
     }
   }
 }
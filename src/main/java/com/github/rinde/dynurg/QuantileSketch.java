@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Serializable;
+
+/**
+ * Estimates quantiles of a stream of non-negative values with a bounded
+ * relative error. Values are counted in buckets whose bounds grow
+ * geometrically: bucket <code>i</code> contains the values in
+ * <code>(g^(i-1), g^i]</code> with <code>g = (1+a)/(1-a)</code>, where
+ * <code>a</code> is the relative accuracy. Each quantile estimate in
+ * [minValue,maxValue] is within a relative distance <code>a</code> of the
+ * exact quantile. Values outside this range are counted in the first or last
+ * bucket, the exact minimum and maximum are kept as well.
+ * <p>
+ * Memory usage only depends on the accuracy and the range, not on the number
+ * of values. Sketches with the same parameters can be merged, since only
+ * integer counts are stored the result does not depend on the order in which
+ * values are added or sketches are merged.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class QuantileSketch implements Serializable {
+  private static final long serialVersionUID = -5307924146312658414L;
+  final double relativeAccuracy;
+  final double minValue;
+  final double maxValue;
+  final double logGamma;
+  final int offset;
+  final long[] counts;
+  long zeroCount;
+  long totalCount;
+  double min;
+  double max;
+
+  /**
+   * Creates a new empty sketch.
+   * @param accuracy The relative accuracy, must be in (0,1).
+   * @param minVal The smallest positive value that is distinguished from
+   *          zero.
+   * @param maxVal The largest value that is estimated with the specified
+   *          accuracy.
+   */
+  public QuantileSketch(double accuracy, double minVal, double maxVal) {
+    checkArgument(accuracy > 0 && accuracy < 1,
+        "Relative accuracy must be in (0,1), found %s.", accuracy);
+    checkArgument(minVal > 0 && minVal < maxVal,
+        "Range must be positive and non-empty, found [%s,%s].", minVal,
+        maxVal);
+    relativeAccuracy = accuracy;
+    minValue = minVal;
+    maxValue = maxVal;
+    logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+    offset = rawIndex(minVal);
+    counts = new long[rawIndex(maxVal) - offset + 1];
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Adds a value to the sketch.
+   * @param value The value to add, must be non-negative.
+   */
+  public void add(double value) {
+    checkArgument(value >= 0, "Values must be non-negative, found %s.", value);
+    if (value < minValue) {
+      zeroCount++;
+    } else {
+      counts[index(value)]++;
+    }
+    totalCount++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Adds all values of the specified sketch to this sketch.
+   * @param other The sketch to merge, must have the same parameters.
+   */
+  public void merge(QuantileSketch other) {
+    checkArgument(other.relativeAccuracy == relativeAccuracy
+        && other.minValue == minValue && other.maxValue == maxValue,
+        "Sketches must have the same parameters.");
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    zeroCount += other.zeroCount;
+    totalCount += other.totalCount;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Estimates a quantile.
+   * @param q The quantile, must be in [0,1].
+   * @return The estimated value of the quantile.
+   * @throws IllegalStateException if the sketch is empty.
+   */
+  public double quantile(double q) {
+    checkArgument(q >= 0 && q <= 1, "Quantile must be in [0,1], found %s.", q);
+    checkState(totalCount > 0, "The sketch is empty.");
+    final long rank = (long) Math.floor(q * (totalCount - 1));
+    if (rank == totalCount - 1) {
+      return max;
+    }
+    long seen = zeroCount;
+    if (rank < seen) {
+      return min;
+    }
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (rank < seen) {
+        final double value = 2 * Math.exp((i + offset) * logGamma)
+            / (1 + Math.exp(logGamma));
+        return Math.max(min, Math.min(max, value));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @return The number of values in the sketch.
+   */
+  public long count() {
+    return totalCount;
+  }
+
+  /**
+   * @return The smallest value in the sketch.
+   */
+  public double min() {
+    return min;
+  }
+
+  /**
+   * @return The largest value in the sketch.
+   */
+  public double max() {
+    return max;
+  }
+
+  int index(double value) {
+    return Math.max(0, Math.min(counts.length - 1, rawIndex(value) - offset));
+  }
+
+  int rawIndex(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+}
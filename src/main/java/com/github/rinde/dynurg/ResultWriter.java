@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+/**
+ * Writes result rows to one file per configuration. Each file is opened once
+ * and kept open until the writer is closed, rows are buffered and written in
+ * batches. Additionally, all buffered rows are written when a row is added
+ * and the last flush is longer ago than the flush interval, see
+ * {@link Builder#flushInterval(long)}. Existing files are overwritten, unless
+ * {@link Builder#append()} is used.
+ * <p>
+ * Two formats are supported, see {@link Format}. A file in the
+ * {@link Format#COLUMNAR} format can be read with {@link ColumnarResults}.
+ * <p>
+ * A {@link RowListener} receives every row as it is added, see
+ * {@link Builder#addRowListener(RowListener)}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class ResultWriter implements Closeable {
+  final File directory;
+  final Format format;
+  final ImmutableList<Column> columns;
+  final int batchSize;
+  final long flushInterval;
+  final boolean append;
+  final Map<String, Sink> sinks;
+  final ImmutableList<RowListener> listeners;
+  long lastFlush;
+
+  ResultWriter(Builder b) {
+    directory = b.directory;
+    format = b.format;
+    columns = b.columns.build();
+    batchSize = b.batchSize;
+    flushInterval = b.flushInterval;
+    append = b.append;
+    sinks = newLinkedHashMap();
+    listeners = b.listeners.build();
+    lastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * Adds a row to the file of the specified configuration. The file is
+   * created when the first row for the configuration is added.
+   * @param name The name of the configuration, is used as file name.
+   * @param row The values of the row, must match the columns.
+   * @throws IOException If the file can not be written.
+   */
+  public void write(String name, List<?> row) throws IOException {
+    checkArgument(row.size() == columns.size(),
+        "Expected %s values, found %s.", columns.size(), row.size());
+    if (!sinks.containsKey(name)) {
+      final File file = new File(directory, name + format.extension);
+      Files.createParentDirs(file);
+      sinks.put(name, format.open(file, columns, append));
+    }
+    if (!listeners.isEmpty()) {
+      final ImmutableMap.Builder<String, Object> values = ImmutableMap
+          .builder();
+      for (int i = 0; i < columns.size(); i++) {
+        values.put(columns.get(i).name, row.get(i));
+      }
+      final ImmutableMap<String, Object> map = values.build();
+      for (final RowListener listener : listeners) {
+        listener.receive(name, map);
+      }
+    }
+    final Sink sink = sinks.get(name);
+    sink.rows.add(row);
+    if (System.currentTimeMillis() - lastFlush >= flushInterval) {
+      flush();
+    } else if (sink.rows.size() >= batchSize) {
+      sink.flush();
+    }
+  }
+
+  /**
+   * Writes all buffered rows to disk.
+   * @throws IOException If a file can not be written.
+   */
+  public void flush() throws IOException {
+    lastFlush = System.currentTimeMillis();
+    for (final Sink sink : sinks.values()) {
+      sink.flush();
+    }
+    for (final RowListener listener : listeners) {
+      listener.flush();
+    }
+  }
+
+  /**
+   * Writes all buffered rows and closes all files.
+   * @throws IOException If a file can not be written.
+   */
+  @Override
+  public void close() throws IOException {
+    IOException exception = null;
+    for (final Sink sink : sinks.values()) {
+      try {
+        sink.close();
+      } catch (final IOException e) {
+        exception = e;
+      }
+    }
+    sinks.clear();
+    for (final RowListener listener : listeners) {
+      try {
+        listener.close();
+      } catch (final IOException e) {
+        exception = e;
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Reads a file that was written in the {@link Format#CSV} format. An
+   * incomplete last line (e.g. of a file that was being written when an
+   * experiment was interrupted) is ignored.
+   * @param file The file to read.
+   * @return The rows, each row maps column names to values.
+   * @throws IOException If the file can not be read or if a complete line
+   *           does not match the header.
+   */
+  public static ImmutableList<ImmutableMap<String, String>> readCsv(File file)
+      throws IOException {
+    // the last element is either empty or an incomplete line
+    final List<String> lines = Splitter.on('\n').splitToList(
+        Files.toString(file, Charsets.UTF_8));
+    final ImmutableList.Builder<ImmutableMap<String, String>> rows =
+        ImmutableList.builder();
+    if (lines.size() < 2) {
+      return rows.build();
+    }
+    // trimmed, files of older versions may have Windows line breaks
+    final List<String> header = Splitter.on(',').splitToList(
+        lines.get(0).trim());
+    for (int l = 1; l < lines.size() - 1; l++) {
+      final List<String> values = Splitter.on(',').splitToList(
+          lines.get(l).trim());
+      if (values.size() != header.size()) {
+        throw new IOException(String.format(
+            "Line %s of %s has %s values, the header has %s columns.", l + 1,
+            file, values.size(), header.size()));
+      }
+      final ImmutableMap.Builder<String, String> row = ImmutableMap.builder();
+      for (int i = 0; i < header.size(); i++) {
+        row.put(header.get(i), values.get(i));
+      }
+      rows.add(row.build());
+    }
+    return rows.build();
+  }
+
+  /**
+   * Creates a new builder for a writer.
+   * @param dir The directory in which the result files are written.
+   * @return A new builder.
+   */
+  public static Builder builder(File dir) {
+    return new Builder(dir);
+  }
+
+  /**
+   * The file formats.
+   */
+  public enum Format {
+    /**
+     * Comma separated values with a header, one row per line. Lines end with
+     * <code>\n</code> on all platforms.
+     */
+    CSV(".csv") {
+      @Override
+      Sink open(File file, List<Column> columns, boolean append)
+          throws IOException {
+        return new CsvSink(file, columns, append);
+      }
+    },
+    /**
+     * A binary format that stores the rows in blocks, within a block all
+     * values of a column are stored contiguously. See {@link ColumnarResults}
+     * for a description of the layout.
+     */
+    COLUMNAR(".bin") {
+      @Override
+      Sink open(File file, List<Column> columns, boolean append)
+          throws IOException {
+        checkArgument(!append, "Appending is only supported for CSV.");
+        return new ColumnarSink(file, columns);
+      }
+    };
+
+    final String extension;
+
+    Format(String ext) {
+      extension = ext;
+    }
+
+    abstract Sink open(File file, List<Column> columns, boolean append)
+        throws IOException;
+  }
+
+  /**
+   * The types of the columns.
+   */
+  public enum ColumnType {
+    /**
+     * A column of {@link Number}s stored as 8 byte doubles.
+     */
+    DOUBLE(8) {
+      @Override
+      void write(DataOutputStream out, List<List<?>> rows, int col)
+          throws IOException {
+        for (final List<?> row : rows) {
+          out.writeDouble(((Number) row.get(col)).doubleValue());
+        }
+      }
+    },
+    /**
+     * A column of {@link Number}s stored as 8 byte longs.
+     */
+    LONG(8) {
+      @Override
+      void write(DataOutputStream out, List<List<?>> rows, int col)
+          throws IOException {
+        for (final List<?> row : rows) {
+          out.writeLong(((Number) row.get(col)).longValue());
+        }
+      }
+    },
+    /**
+     * A column of {@link Number}s stored as 4 byte integers.
+     */
+    INT(4) {
+      @Override
+      void write(DataOutputStream out, List<List<?>> rows, int col)
+          throws IOException {
+        for (final List<?> row : rows) {
+          out.writeInt(((Number) row.get(col)).intValue());
+        }
+      }
+    },
+    /**
+     * A column of {@link Boolean}s stored as one byte each.
+     */
+    BOOLEAN(1) {
+      @Override
+      void write(DataOutputStream out, List<List<?>> rows, int col)
+          throws IOException {
+        for (final List<?> row : rows) {
+          out.writeBoolean((Boolean) row.get(col));
+        }
+      }
+    },
+    /**
+     * A column of strings stored as <code>n+1</code> offsets followed by the
+     * UTF-8 encoded bytes.
+     */
+    STRING(-1) {
+      @Override
+      void write(DataOutputStream out, List<List<?>> rows, int col)
+          throws IOException {
+        final List<byte[]> bytes = newArrayList();
+        int offset = 0;
+        out.writeInt(offset);
+        for (final List<?> row : rows) {
+          final byte[] b = row.get(col).toString().getBytes(Charsets.UTF_8);
+          bytes.add(b);
+          offset += b.length;
+          out.writeInt(offset);
+        }
+        for (final byte[] b : bytes) {
+          out.write(b);
+        }
+      }
+    };
+
+    // size in bytes of one value, -1 if variable
+    final int width;
+
+    ColumnType(int w) {
+      width = w;
+    }
+
+    abstract void write(DataOutputStream out, List<List<?>> rows, int col)
+        throws IOException;
+  }
+
+  /**
+   * Receives the rows of a {@link ResultWriter}. {@link #flush()} is called
+   * when the writer is flushed and {@link #close()} when the writer is
+   * closed.
+   */
+  public interface RowListener extends Flushable, Closeable {
+    /**
+     * Is called for each row that is added to the writer.
+     * @param name The name of the configuration.
+     * @param row The values of the row by column name.
+     */
+    void receive(String name, ImmutableMap<String, Object> row);
+  }
+
+  /**
+   * Builder for {@link ResultWriter}.
+   */
+  public static final class Builder {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 60 * 1000L;
+
+    final File directory;
+    final ImmutableList.Builder<Column> columns;
+    final ImmutableList.Builder<RowListener> listeners;
+    Format format;
+    int batchSize;
+    long flushInterval;
+    boolean append;
+
+    Builder(File dir) {
+      directory = dir;
+      columns = ImmutableList.builder();
+      listeners = ImmutableList.builder();
+      format = Format.CSV;
+      batchSize = DEFAULT_BATCH_SIZE;
+      flushInterval = DEFAULT_FLUSH_INTERVAL_MS;
+    }
+
+    /**
+     * Adds a column, the order of the columns is the order in which they are
+     * added.
+     * @param name The name of the column.
+     * @param type The type of the column.
+     * @return This, as per the builder pattern.
+     */
+    public Builder addColumn(String name, ColumnType type) {
+      columns.add(new Column(name, type));
+      return this;
+    }
+
+    /**
+     * Sets the format of the files, default is {@link Format#CSV}.
+     * @param f The format.
+     * @return This, as per the builder pattern.
+     */
+    public Builder format(Format f) {
+      format = f;
+      return this;
+    }
+
+    /**
+     * Sets the number of rows that is buffered per file before they are
+     * written, default is {@link #DEFAULT_BATCH_SIZE}.
+     * @param size The batch size, must be positive.
+     * @return This, as per the builder pattern.
+     */
+    public Builder batchSize(int size) {
+      checkArgument(size > 0, "Batch size must be positive.");
+      batchSize = size;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time between two flushes, default is
+     * {@link #DEFAULT_FLUSH_INTERVAL_MS}. The interval is checked when a row
+     * is added, when a long time passes without new rows the buffered rows
+     * are written by the next row or by {@link ResultWriter#close()}.
+     * @param ms The interval in ms, must not be negative.
+     * @return This, as per the builder pattern.
+     */
+    public Builder flushInterval(long ms) {
+      checkArgument(ms >= 0, "Flush interval must not be negative.");
+      flushInterval = ms;
+      return this;
+    }
+
+    /**
+     * Appends rows to existing files instead of overwriting them. An
+     * incomplete last line is removed first. An existing file must have the
+     * same columns as the writer, otherwise {@link ResultWriter#write} throws
+     * an {@link IOException}. Only supported for {@link Format#CSV}.
+     * @return This, as per the builder pattern.
+     */
+    public Builder append() {
+      append = true;
+      return this;
+    }
+
+    /**
+     * Adds a listener that receives all rows of the writer.
+     * @param listener The listener.
+     * @return This, as per the builder pattern.
+     */
+    public Builder addRowListener(RowListener listener) {
+      listeners.add(listener);
+      return this;
+    }
+
+    /**
+     * @return A new writer.
+     */
+    public ResultWriter build() {
+      return new ResultWriter(this);
+    }
+  }
+
+  static final class Column {
+    final String name;
+    final ColumnType type;
+
+    Column(String n, ColumnType t) {
+      name = n;
+      type = t;
+    }
+  }
+
+  abstract static class Sink implements Closeable {
+    final List<Column> columns;
+    final List<List<?>> rows;
+    boolean closed;
+
+    Sink(List<Column> cols) {
+      columns = cols;
+      rows = newArrayList();
+    }
+
+    void flush() throws IOException {
+      checkState(!closed, "Already closed.");
+      if (!rows.isEmpty()) {
+        writeBatch(rows);
+        rows.clear();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        flush();
+        closed = true;
+        doClose();
+      }
+    }
+
+    abstract void writeBatch(List<List<?>> batch) throws IOException;
+
+    abstract void doClose() throws IOException;
+  }
+
+  static class CsvSink extends Sink {
+    final Writer writer;
+
+    CsvSink(File file, List<Column> cols, boolean append) throws IOException {
+      super(cols);
+      final List<String> names = newArrayList();
+      for (final Column c : cols) {
+        names.add(c.name);
+      }
+      final String header = Joiner.on(",").join(names);
+      if (append && file.exists()) {
+        truncateIncompleteLine(file);
+        checkHeader(file, header);
+      }
+      final boolean writeHeader = !append || file.length() == 0;
+      writer = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(file, append), Charsets.UTF_8));
+      if (writeHeader) {
+        writer.write(header);
+        writer.write("\n");
+      }
+    }
+
+    // rows with other columns would be skipped when the file is read
+    static void checkHeader(File file, String header) throws IOException {
+      final String existing = Files.readFirstLine(file, Charsets.UTF_8);
+      if (existing != null && !existing.trim().equals(header)) {
+        throw new IOException(String.format(
+            "Can not append to %s, its columns (%s) differ from the current "
+                + "columns (%s). Move the file or start a new run.",
+            file, existing.trim(), header));
+      }
+    }
+
+    // removes everything after the last line break
+    static void truncateIncompleteLine(File file) throws IOException {
+      try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        long length = raf.length();
+        while (length > 0) {
+          raf.seek(length - 1);
+          if (raf.read() == '\n') {
+            break;
+          }
+          length--;
+        }
+        raf.setLength(length);
+      }
+    }
+
+    @Override
+    void writeBatch(List<List<?>> batch) throws IOException {
+      final StringBuilder sb = new StringBuilder();
+      for (final List<?> row : batch) {
+        Joiner.on(",").appendTo(sb, row).append('\n');
+      }
+      writer.write(sb.toString());
+      writer.flush();
+    }
+
+    @Override
+    void doClose() throws IOException {
+      writer.close();
+    }
+  }
+
+  static class ColumnarSink extends Sink {
+    final DataOutputStream out;
+
+    ColumnarSink(File file, List<Column> cols) throws IOException {
+      super(cols);
+      out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(file)));
+      out.writeInt(ColumnarResults.MAGIC);
+      out.writeInt(ColumnarResults.VERSION);
+      out.writeInt(cols.size());
+      for (final Column c : cols) {
+        out.writeUTF(c.name);
+        out.writeByte(c.type.ordinal());
+      }
+    }
+
+    @Override
+    void writeBatch(List<List<?>> batch) throws IOException {
+      out.writeInt(batch.size());
+      for (int i = 0; i < columns.size(); i++) {
+        columns.get(i).type.write(out, batch, i);
+      }
+      out.flush();
+    }
+
+    @Override
+    void doClose() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes independent tasks on a set of {@link Node}s such that a single slow
+ * or failing node does not hold up the whole computation:
+ * <ul>
+ * <li>each attempt of a task has a timeout, a task that times out is retried
+ * on another node;</li>
+ * <li>a task that fails is retried until the maximum number of attempts is
+ * reached;</li>
+ * <li>when most tasks are done, idle nodes speculatively execute a copy of the
+ * longest running tasks;</li>
+ * <li>equal tasks are executed once and for each task only the first result is
+ * accepted, all later results (of retries or speculative copies) are
+ * discarded.</li>
+ * </ul>
+ * Each node executes one attempt at a time in its own thread. A node that
+ * does not respond is never interrupted forcibly, it receives new work only
+ * when its current attempt returns. When all nodes are occupied by attempts
+ * that timed out for longer than the unresponsive timeout (see
+ * {@link Builder#unresponsiveTimeout(long)}), no node is left to make
+ * progress and all remaining tasks fail.
+ * @param <T> The type of task, equal tasks are considered to be duplicates.
+ * @param <R> The type of result.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class RobustExecutor<T, R> {
+  static final long POLL_INTERVAL_MS = 10L;
+
+  final ImmutableList<Node<T, R>> nodes;
+  final Function<? super T, Long> timeout;
+  final int maxAttempts;
+  final double speculationThreshold;
+  final long unresponsiveTimeoutNs;
+
+  RobustExecutor(Builder<T, R> b) {
+    nodes = ImmutableList.copyOf(b.nodes);
+    timeout = b.timeout;
+    maxAttempts = b.maxAttempts;
+    speculationThreshold = b.speculationThreshold;
+    unresponsiveTimeoutNs = TimeUnit.MILLISECONDS.toNanos(
+        b.unresponsiveTimeout);
+  }
+
+  /**
+   * Executes all tasks, this method blocks until each task has either a
+   * result or has failed the maximum number of attempts.
+   * @param tasks The tasks to execute, duplicates are executed once. Tasks are
+   *          dispatched in iteration order.
+   * @param listener Receives each result as soon as it is accepted, it is
+   *          called from the thread that calls this method.
+   * @return A report of the execution.
+   * @throws InterruptedException If the calling thread is interrupted.
+   */
+  public Report<T, R> execute(Iterable<? extends T> tasks,
+      Listener<? super T, ? super R> listener) throws InterruptedException {
+    final Run run = new Run(ImmutableSet.copyOf(tasks), listener);
+    try {
+      run.execute();
+    } finally {
+      run.shutdown();
+    }
+    return new Report<>(run);
+  }
+
+  /**
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   * @return A new builder.
+   */
+  public static <T, R> Builder<T, R> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * A (possibly remote) worker that executes tasks.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   */
+  public interface Node<T, R> {
+    /**
+     * Executes a task. Implementations should respond to interrupts when
+     * possible, an interrupt means that the result is no longer needed.
+     * @param task The task.
+     * @return The result.
+     * @throws Exception If the execution failed.
+     */
+    R execute(T task) throws Exception;
+  }
+
+  /**
+   * Receives the results of a {@link RobustExecutor}.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   */
+  public interface Listener<T, R> {
+    /**
+     * Is called exactly once for each task that was executed successfully.
+     * @param task The task.
+     * @param result The result of the task.
+     */
+    void receive(T task, R result);
+  }
+
+  /**
+   * Summary of an execution.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   */
+  public static final class Report<T, R> {
+    /**
+     * The accepted result of each task that was executed successfully.
+     */
+    public final ImmutableMap<T, R> results;
+
+    /**
+     * The last failure of each task that failed all its attempts.
+     */
+    public final ImmutableMap<T, Throwable> failures;
+
+    /**
+     * The total number of attempts, including retries and speculative copies.
+     */
+    public final int attempts;
+
+    /**
+     * The number of attempts that were started because a previous attempt
+     * failed or timed out.
+     */
+    public final int retries;
+
+    /**
+     * The number of attempts that timed out.
+     */
+    public final int timeouts;
+
+    /**
+     * The number of speculative copies of straggling tasks that were started.
+     */
+    public final int speculativeAttempts;
+
+    /**
+     * The number of results that were discarded because the task already had
+     * a result.
+     */
+    public final int duplicates;
+
+    Report(RobustExecutor<T, R>.Run run) {
+      results = ImmutableMap.copyOf(run.results);
+      failures = ImmutableMap.copyOf(run.failed);
+      attempts = run.numAttempts;
+      retries = run.numRetries;
+      timeouts = run.numTimeouts;
+      speculativeAttempts = run.numSpeculative;
+      duplicates = run.numDuplicates;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d results, %d failures, %d attempts (%d retries, "
+          + "%d timeouts, %d speculative), %d duplicate results discarded",
+          results.size(), failures.size(), attempts, retries, timeouts,
+          speculativeAttempts, duplicates);
+    }
+  }
+
+  /**
+   * Builder for {@link RobustExecutor}.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   */
+  public static class Builder<T, R> {
+    static final long DEFAULT_UNRESPONSIVE_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    final List<Node<T, R>> nodes;
+    Function<? super T, Long> timeout;
+    int maxAttempts;
+    double speculationThreshold;
+    long unresponsiveTimeout;
+
+    Builder() {
+      nodes = newArrayList();
+      timeout = Functions.constant(Long.MAX_VALUE);
+      maxAttempts = 3;
+      speculationThreshold = .9;
+      unresponsiveTimeout = DEFAULT_UNRESPONSIVE_TIMEOUT_MS;
+    }
+
+    /**
+     * Adds a node.
+     * @param node The node.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> addNode(Node<T, R> node) {
+      nodes.add(node);
+      return this;
+    }
+
+    /**
+     * Adds a number of nodes.
+     * @param ns The nodes.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> addNodes(Iterable<? extends Node<T, R>> ns) {
+      for (final Node<T, R> n : ns) {
+        nodes.add(n);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the same timeout for every attempt, by default there is no
+     * timeout.
+     * @param ms The timeout in milliseconds.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> timeout(long ms) {
+      return timeout(Functions.constant(ms));
+    }
+
+    /**
+     * Sets the timeout of each attempt as a function of its task, this allows
+     * to use a timeout that is proportional to the expected execution time.
+     * @param ms Computes the timeout in milliseconds.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> timeout(Function<? super T, Long> ms) {
+      timeout = ms;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of attempts of each task that fail or time out,
+     * default is 3.
+     * @param attempts The maximum number of attempts, must be positive.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> maxAttempts(int attempts) {
+      checkArgument(attempts > 0, "At least one attempt is required.");
+      maxAttempts = attempts;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of tasks that needs to be done before idle nodes
+     * start speculative copies of running tasks, default is <code>.9</code>.
+     * @param fraction The fraction, <code>1</code> disables speculative
+     *          execution.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> speculateAfter(double fraction) {
+      checkArgument(fraction >= 0 && fraction <= 1,
+          "The fraction must be in [0,1], found %s.", fraction);
+      speculationThreshold = fraction;
+      return this;
+    }
+
+    /**
+     * Sets how long all nodes may be occupied by attempts that timed out
+     * before the remaining tasks fail, default is
+     * {@link #DEFAULT_UNRESPONSIVE_TIMEOUT_MS}. Such an attempt may still
+     * return, e.g. when a node was only very slow, but a node that has
+     * crashed never returns.
+     * @param ms The timeout in milliseconds, must not be negative.
+     * @return This, as per the builder pattern.
+     */
+    public Builder<T, R> unresponsiveTimeout(long ms) {
+      checkArgument(ms >= 0, "The timeout must not be negative.");
+      unresponsiveTimeout = ms;
+      return this;
+    }
+
+    /**
+     * @return The number of nodes that have been added.
+     */
+    public int numberOfNodes() {
+      return nodes.size();
+    }
+
+    /**
+     * @return A new executor.
+     */
+    public RobustExecutor<T, R> build() {
+      checkArgument(!nodes.isEmpty(), "At least one node is required.");
+      return new RobustExecutor<>(this);
+    }
+  }
+
+  // the state of a single execution, it is only accessed by the calling
+  // thread, the node threads communicate through the completed queue
+  class Run {
+    final ImmutableSet<T> tasks;
+    final Listener<? super T, ? super R> listener;
+    final Deque<T> pending;
+    final Map<T, List<Attempt>> running;
+    final Map<T, Integer> failureCounts;
+    final Map<T, R> results;
+    final Map<T, Throwable> failed;
+    final List<Attempt> current;
+    final List<ExecutorService> executors;
+    final BlockingQueue<Attempt> completed;
+    int numAttempts;
+    int numRetries;
+    int numTimeouts;
+    int numSpeculative;
+    int numDuplicates;
+    // the time since which all nodes are occupied by abandoned attempts, -1
+    // if at least one node is responsive
+    long unresponsiveSince;
+
+    Run(ImmutableSet<T> ts, Listener<? super T, ? super R> l) {
+      tasks = ts;
+      listener = l;
+      pending = new ArrayDeque<>(tasks);
+      running = newHashMap();
+      failureCounts = newHashMap();
+      results = newLinkedHashMap();
+      failed = newLinkedHashMap();
+      current = newArrayList();
+      executors = newArrayList();
+      completed = new LinkedBlockingQueue<>();
+      unresponsiveSince = -1;
+      for (int i = 0; i < nodes.size(); i++) {
+        current.add(null);
+        // daemon threads, a node that never returns does not keep the JVM
+        // alive
+        executors.add(Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("node-" + i).build()));
+      }
+    }
+
+    void execute() throws InterruptedException {
+      while (results.size() + failed.size() < tasks.size()) {
+        dispatch();
+        final Attempt attempt = completed.poll(POLL_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+        if (attempt != null) {
+          handle(attempt);
+        }
+        checkTimeouts();
+        checkResponsive();
+      }
+    }
+
+    void shutdown() {
+      for (final ExecutorService ex : executors) {
+        ex.shutdownNow();
+      }
+    }
+
+    boolean isDone(T task) {
+      return results.containsKey(task) || failed.containsKey(task);
+    }
+
+    void dispatch() {
+      for (int i = 0; i < nodes.size(); i++) {
+        if (current.get(i) != null) {
+          continue;
+        }
+        T task = pending.poll();
+        while (task != null && isDone(task)) {
+          task = pending.poll();
+        }
+        if (task != null) {
+          start(task, i);
+        } else if (results.size() + failed.size() >= speculationThreshold
+            * tasks.size()) {
+          final Attempt straggler = findStraggler(i);
+          if (straggler == null) {
+            return;
+          }
+          numSpeculative++;
+          start(straggler.task, i);
+        } else {
+          return;
+        }
+      }
+    }
+
+    // the longest running task that is not already being executed twice and
+    // that is not running on the specified node
+    Attempt findStraggler(int node) {
+      Attempt straggler = null;
+      for (final List<Attempt> attempts : running.values()) {
+        final List<Attempt> live = live(attempts);
+        if (live.size() != 1 || live.get(0).node == node) {
+          continue;
+        }
+        if (straggler == null || live.get(0).start < straggler.start) {
+          straggler = live.get(0);
+        }
+      }
+      return straggler;
+    }
+
+    void start(T task, int node) {
+      final Attempt attempt = new Attempt(task, node, nodes.get(node),
+          completed, timeout.apply(task));
+      if (!running.containsKey(task)) {
+        final List<Attempt> attempts = newArrayList();
+        running.put(task, attempts);
+      }
+      running.get(task).add(attempt);
+      current.set(node, attempt);
+      numAttempts++;
+      if (failureCounts.containsKey(task)) {
+        numRetries++;
+      }
+      executors.get(node).execute(attempt);
+    }
+
+    void handle(Attempt attempt) {
+      // the node is available again
+      current.set(attempt.node, null);
+      final List<Attempt> attempts = running.get(attempt.task);
+      attempts.remove(attempt);
+      if (attempts.isEmpty()) {
+        running.remove(attempt.task);
+      }
+
+      if (isDone(attempt.task)) {
+        if (attempt.error == null) {
+          numDuplicates++;
+        }
+      } else if (attempt.error == null) {
+        @SuppressWarnings("unchecked")
+        final R result = (R) attempt.result;
+        results.put(attempt.task, result);
+        // the other attempts of this task are no longer needed
+        for (final Attempt other : attempts) {
+          other.abandon();
+        }
+        listener.receive(attempt.task, result);
+      } else if (!attempt.isAbandoned()) {
+        // failures of abandoned attempts have already been counted
+        failure(attempt.task, attempt.error);
+      }
+    }
+
+    void checkTimeouts() {
+      final long now = System.nanoTime();
+      for (final Attempt attempt : current) {
+        if (attempt != null && !attempt.isAbandoned()
+            && now - attempt.start > attempt.timeoutNs) {
+          attempt.abandon();
+          numTimeouts++;
+          failure(attempt.task, new TimeoutException(
+              "Attempt on node " + attempt.node + " timed out."));
+        }
+      }
+    }
+
+    // a node whose attempt was abandoned is responsive again only when the
+    // attempt returns, if that does not happen for any of the nodes the
+    // pending tasks would wait forever
+    void checkResponsive() {
+      for (final Attempt attempt : current) {
+        if (attempt == null || !attempt.isAbandoned()) {
+          unresponsiveSince = -1;
+          return;
+        }
+      }
+      final long now = System.nanoTime();
+      if (unresponsiveSince < 0) {
+        unresponsiveSince = now;
+      } else if (now - unresponsiveSince > unresponsiveTimeoutNs) {
+        final TimeoutException error = new TimeoutException(
+            "No responsive node remains, all nodes are occupied by attempts "
+                + "that timed out.");
+        for (final T task : tasks) {
+          if (!isDone(task)) {
+            failed.put(task, error);
+          }
+        }
+      }
+    }
+
+    void failure(T task, Throwable error) {
+      final int count = failureCounts.containsKey(task)
+          ? failureCounts.get(task) + 1 : 1;
+      failureCounts.put(task, count);
+      if (running.containsKey(task)
+          && !live(running.get(task)).isEmpty()) {
+        // another attempt is still running
+        return;
+      }
+      if (count >= maxAttempts) {
+        failed.put(task, error);
+      } else {
+        // retries are dispatched before the remaining tasks
+        pending.addFirst(task);
+      }
+    }
+
+    List<Attempt> live(List<Attempt> attempts) {
+      final List<Attempt> live = newArrayList();
+      for (final Attempt a : attempts) {
+        if (!a.isAbandoned()) {
+          live.add(a);
+        }
+      }
+      return live;
+    }
+  }
+
+  final class Attempt implements Runnable {
+    final T task;
+    final int node;
+    final Node<T, R> executor;
+    final BlockingQueue<Attempt> completed;
+    final long start;
+    final long timeoutNs;
+    volatile Object result;
+    volatile Throwable error;
+    private boolean abandoned;
+    private Thread runner;
+
+    Attempt(T t, int n, Node<T, R> ex, BlockingQueue<Attempt> c,
+        long timeoutMs) {
+      task = t;
+      node = n;
+      executor = ex;
+      completed = c;
+      start = System.nanoTime();
+      timeoutNs = timeoutMs >= Long.MAX_VALUE / 1000000L ? Long.MAX_VALUE
+          : TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    @Override
+    public void run() {
+      // clears an interrupt that was meant for a previous attempt
+      Thread.interrupted();
+      synchronized (this) {
+        runner = Thread.currentThread();
+      }
+      try {
+        if (isAbandoned()) {
+          error = new InterruptedException();
+        } else {
+          result = executor.execute(task);
+        }
+      } catch (final Exception | Error e) {
+        error = e;
+      } finally {
+        synchronized (this) {
+          runner = null;
+        }
+        completed.add(this);
+      }
+    }
+
+    synchronized void abandon() {
+      abandoned = true;
+      if (runner != null) {
+        runner.interrupt();
+      }
+    }
+
+    synchronized boolean isAbandoned() {
+      return abandoned;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A cache of parsed (and possibly transformed) scenarios that is shared by all
+ * configurations and repetitions in a JVM. A scenario is identified by its
+ * source (e.g. the path of its file) and the name of the transformation that
+ * was applied to it (e.g. the number of vehicles). The cache is bounded by the
+ * total number of events of the cached scenarios, the least recently used
+ * scenarios are evicted first.
+ * <p>
+ * The bound of the shared instance is {@value #DEFAULT_MAX_EVENTS} events and
+ * can be changed with the system property <code>dynurg.cache.events</code>.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class ScenarioCache {
+  /**
+   * The default maximum number of events in the shared cache.
+   */
+  public static final long DEFAULT_MAX_EVENTS = 1000000L;
+
+  /**
+   * The name of the transformation of scenarios that are used as read.
+   */
+  public static final String NO_TRANSFORMATION = "none";
+
+  private static final ScenarioCache INSTANCE = new ScenarioCache(
+      Long.getLong("dynurg.cache.events", DEFAULT_MAX_EVENTS));
+
+  final Cache<ImmutableList<Object>, Scenario> cache;
+
+  ScenarioCache(long maxEvents) {
+    cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxEvents)
+        .weigher(new Weigher<ImmutableList<Object>, Scenario>() {
+          @Override
+          public int weigh(ImmutableList<Object> key, Scenario value) {
+            return value.size();
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @return The cache that is shared by all users in this JVM.
+   */
+  public static ScenarioCache instance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the cached scenario, or loads and caches it. Concurrent requests
+   * for the same scenario wait for a single load.
+   * @param source The source of the scenario, e.g. the path of the file.
+   * @param transformation The name of the transformation that is applied to
+   *          the scenario by the loader.
+   * @param loader Loads the scenario.
+   * @return The scenario.
+   */
+  public Scenario get(Object source, String transformation,
+      Callable<? extends Scenario> loader) {
+    try {
+      return cache.get(ImmutableList.of(source, transformation), loader);
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Wraps a reader such that each file is read and transformed once.
+   * @param transformation The name of the transformation that is applied by
+   *          the reader, different readers must have different names.
+   * @param reader The reader.
+   * @return A new reader that uses this cache.
+   */
+  public Function<Path, Scenario> reader(final String transformation,
+      final Function<Path, ? extends Scenario> reader) {
+    return new Function<Path, Scenario>() {
+      @Override
+      public Scenario apply(final Path input) {
+        return get(input.toAbsolutePath().normalize(), transformation,
+            new Callable<Scenario>() {
+              @Override
+              public Scenario call() {
+                return reader.apply(input);
+              }
+            });
+      }
+    };
+  }
+
+  /**
+   * Removes all scenarios from the cache.
+   */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return The hit and miss statistics of this cache.
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+}
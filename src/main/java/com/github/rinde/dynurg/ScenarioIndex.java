@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+
+/**
+ * An in-memory index of the metadata of all scenarios in a dataset directory
+ * or {@link DatasetArchive}. The metadata is read from the
+ * <code>.properties</code> files that are written by {@link Generator}, each
+ * file is read only once.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class ScenarioIndex {
+  /**
+   * Converts the path of a scenario file to the id of the scenario, see
+   * {@link #get(String)}.
+   */
+  public static final Function<Path, String> FILE_TO_SCENARIO_ID =
+      new Function<Path, String>() {
+        @Override
+        public String apply(Path input) {
+          final String fileName = input.getFileName().toString();
+          return fileName.substring(0, fileName.lastIndexOf('.'));
+        }
+      };
+
+  final ImmutableTable<String, String, Entry> entries;
+
+  ScenarioIndex(ImmutableTable<String, String, Entry> es) {
+    entries = es;
+  }
+
+  /**
+   * Retrieves the metadata of a scenario.
+   * @param problemClass The id of the problem class of the scenario.
+   * @param instanceId The instance id of the scenario.
+   * @return The metadata.
+   * @throws IllegalArgumentException if the scenario is not in the index.
+   */
+  public Entry get(String problemClass, String instanceId) {
+    final Entry entry = entries.get(problemClass, instanceId);
+    checkArgument(entry != null, "There is no metadata of scenario %s%s.",
+        problemClass, instanceId);
+    return entry;
+  }
+
+  /**
+   * Retrieves the metadata of a scenario.
+   * @param scenarioId The id of the scenario: the problem class id followed by
+   *          the instance id (e.g. <code>5-0.50#3</code>), this is also the
+   *          name of the scenario file without extension.
+   * @return The metadata.
+   * @throws IllegalArgumentException if the scenario is not in the index.
+   */
+  public Entry get(String scenarioId) {
+    final int separator = scenarioId.lastIndexOf('#');
+    checkArgument(separator >= 0, "Invalid scenario id: %s.", scenarioId);
+    return get(scenarioId.substring(0, separator),
+        scenarioId.substring(separator));
+  }
+
+  /**
+   * @return The number of scenarios in the index.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Creates an index of all <code>.properties</code> files in a directory.
+   * @param datasetDir The directory.
+   * @return A new index.
+   * @throws IOException If the directory or a file can not be read.
+   */
+  public static ScenarioIndex load(Path datasetDir) throws IOException {
+    final ImmutableTable.Builder<String, String, Entry> builder =
+        ImmutableTable.builder();
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(
+        datasetDir, "*.properties")) {
+      for (final Path file : files) {
+        final Entry entry = new Entry(parseProperties(Joiner.on("\n").join(
+            Files.readAllLines(file, Charsets.UTF_8))));
+        builder.put(entry.problemClass, entry.instanceId, entry);
+      }
+    }
+    return new ScenarioIndex(builder.build());
+  }
+
+  /**
+   * Creates an index of all scenarios in a dataset archive, the metadata is
+   * read from the <code>.properties</code> entries of the archive.
+   * @param archive The archive.
+   * @return A new index.
+   * @throws IOException If the archive can not be read.
+   */
+  public static ScenarioIndex load(DatasetArchive archive) throws IOException {
+    final ImmutableTable.Builder<String, String, Entry> builder =
+        ImmutableTable.builder();
+    for (final DatasetArchive.Entry instance : archive.entries()) {
+      final Entry entry = new Entry(parseProperties(new String(
+          archive.read(instance, ".properties"), Charsets.UTF_8)));
+      builder.put(entry.problemClass, entry.instanceId, entry);
+    }
+    return new ScenarioIndex(builder.build());
+  }
+
+  static ImmutableMap<String, String> parseProperties(String contents) {
+    return ImmutableMap.copyOf(Splitter.on("\n")
+        .withKeyValueSeparator(" = ")
+        .split(contents));
+  }
+
+  /**
+   * The metadata of a single scenario.
+   */
+  public static final class Entry {
+    /**
+     * The id of the problem class.
+     */
+    public final String problemClass;
+
+    /**
+     * The instance id.
+     */
+    public final String instanceId;
+
+    /**
+     * The dynamism of the scenario.
+     */
+    public final double dynamism;
+
+    /**
+     * The mean urgency of the scenario.
+     */
+    public final double urgencyMean;
+
+    /**
+     * The standard deviation of the urgency of the scenario.
+     */
+    public final double urgencySd;
+
+    /**
+     * All properties as found in the properties file.
+     */
+    public final ImmutableMap<String, String> properties;
+
+    Entry(ImmutableMap<String, String> props) {
+      properties = props;
+      problemClass = props.get("problem_class");
+      instanceId = props.get("id");
+      dynamism = Double.parseDouble(props.get("dynamism"));
+      urgencyMean = Double.parseDouble(props.get("urgency_mean"));
+      urgencySd = Double.parseDouble(props.get("urgency_sd"));
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+
+/**
+ * Stopping rule for the repetitions of a stochastic simulation. Repetitions
+ * are added until the Student t confidence interval of the mean cost is
+ * narrower than a fraction of the mean, or until the maximum number of
+ * repetitions is reached. The number of additional repetitions is estimated
+ * from the current sample variance such that most cells need only one or two
+ * extra rounds.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class SequentialStopping {
+  /**
+   * The confidence level of the interval.
+   */
+  public final double confidence;
+
+  /**
+   * The maximum width of the interval relative to the mean, a width of
+   * <code>.05</code> means that the interval may span 5% of the mean.
+   */
+  public final double relativeWidth;
+
+  /**
+   * The number of repetitions before the interval is considered.
+   */
+  public final int minRepetitions;
+
+  /**
+   * The maximum number of repetitions.
+   */
+  public final int maxRepetitions;
+
+  SequentialStopping(Builder b) {
+    confidence = b.confidence;
+    relativeWidth = b.relativeWidth;
+    minRepetitions = b.minRepetitions;
+    maxRepetitions = b.maxRepetitions;
+  }
+
+  /**
+   * Computes the half width of the confidence interval of the mean.
+   * @param costs The costs of the repetitions so far, at least two.
+   * @return The half width.
+   */
+  public double halfWidth(StatisticalSummary costs) {
+    checkArgument(costs.getN() > 1, "At least two values are required.");
+    final double t = new TDistribution(costs.getN() - 1)
+        .inverseCumulativeProbability(1d - (1d - confidence) / 2d);
+    return t * costs.getStandardDeviation() / Math.sqrt(costs.getN());
+  }
+
+  /**
+   * Determines whether more repetitions are needed, and if so how many.
+   * @param costs The costs of the repetitions so far.
+   * @return The number of repetitions to add, <code>0</code> if the
+   *         repetitions can stop.
+   */
+  public int additionalRepetitions(StatisticalSummary costs) {
+    final int n = (int) costs.getN();
+    if (n < minRepetitions) {
+      return minRepetitions - n;
+    }
+    if (n >= maxRepetitions) {
+      return 0;
+    }
+    final double maxHalfWidth = relativeWidth * Math.abs(costs.getMean()) / 2d;
+    final double halfWidth = halfWidth(costs);
+    if (halfWidth <= maxHalfWidth) {
+      return 0;
+    }
+    if (maxHalfWidth == 0d) {
+      return maxRepetitions - n;
+    }
+    // the half width decreases with the square root of the number of
+    // repetitions
+    final double ratio = halfWidth / maxHalfWidth;
+    final int needed = (int) Math.ceil(n * ratio * ratio);
+    return Math.max(1, Math.min(needed, maxRepetitions) - n);
+  }
+
+  /**
+   * @return A new builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder for {@link SequentialStopping}.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Builder {
+    double confidence;
+    double relativeWidth;
+    int minRepetitions;
+    int maxRepetitions;
+
+    Builder() {
+      confidence = .95;
+      relativeWidth = 0d;
+      minRepetitions = 3;
+      maxRepetitions = 30;
+    }
+
+    /**
+     * Sets the confidence level, default is <code>.95</code>.
+     * @param level The level, in (0,1).
+     * @return This, as per the builder pattern.
+     */
+    public Builder confidence(double level) {
+      checkArgument(level > 0 && level < 1,
+          "The confidence level must be in (0,1), found %s.", level);
+      confidence = level;
+      return this;
+    }
+
+    /**
+     * Sets the target width of the interval relative to the mean, this
+     * enables the adaptive repetitions.
+     * @param width The relative width, must be positive.
+     * @return This, as per the builder pattern.
+     */
+    public Builder relativeWidth(double width) {
+      checkArgument(width > 0, "The width must be positive, found %s.", width);
+      relativeWidth = width;
+      return this;
+    }
+
+    /**
+     * Sets the minimum number of repetitions, default is 3.
+     * @param reps The minimum, at least 2.
+     * @return This, as per the builder pattern.
+     */
+    public Builder minRepetitions(int reps) {
+      checkArgument(reps > 1, "At least two repetitions are required.");
+      minRepetitions = reps;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of repetitions, default is 30.
+     * @param reps The maximum.
+     * @return This, as per the builder pattern.
+     */
+    public Builder maxRepetitions(int reps) {
+      maxRepetitions = reps;
+      return this;
+    }
+
+    /**
+     * @return A new stopping rule.
+     */
+    public SequentialStopping build() {
+      checkArgument(relativeWidth > 0, "A relative width is required.");
+      checkArgument(maxRepetitions >= minRepetitions,
+          "The maximum (%s) must be at least the minimum (%s).",
+          maxRepetitions, minRepetitions);
+      return new SequentialStopping(this);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A single simulation of an experiment: a scenario, a configuration and a
+ * random seed. Two jobs are equal when they have the same scenario id,
+ * configuration name and seed, a result is therefore accepted only once per
+ * (scenario, configuration, seed).
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class SimulationJob {
+  /**
+   * The id of the scenario: problem class id followed by instance id.
+   */
+  public final String scenarioId;
+
+  /**
+   * The scenario.
+   */
+  public final Scenario scenario;
+
+  /**
+   * The configuration.
+   */
+  public final MASConfiguration configuration;
+
+  /**
+   * The random seed.
+   */
+  public final long seed;
+
+  SimulationJob(Scenario s, MASConfiguration c, long sd) {
+    scenario = s;
+    scenarioId = s.getProblemClass().getId() + s.getProblemInstanceId();
+    configuration = c;
+    seed = sd;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof SimulationJob)) {
+      return false;
+    }
+    final SimulationJob o = (SimulationJob) other;
+    return seed == o.seed && scenarioId.equals(o.scenarioId)
+        && configuration.toString().equals(o.configuration.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(scenarioId, configuration.toString(), seed);
+  }
+
+  @Override
+  public String toString() {
+    return scenarioId + "," + configuration + "," + seed;
+  }
+
+  /**
+   * @return A new builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Generates the seeds of the repetitions in the same way as
+   * {@link com.github.rinde.rinsim.experiment.Experiment}: the master seed
+   * itself for a single repetition, otherwise distinct seeds drawn from a
+   * {@link MersenneTwister} that is seeded with the master seed.
+   * @param masterSeed The seed from which the seeds are drawn.
+   * @param repetitions The number of repetitions.
+   * @return The distinct seeds.
+   */
+  public static List<Long> seeds(long masterSeed, int repetitions) {
+    if (repetitions <= 1) {
+      return newArrayList(masterSeed);
+    }
+    return generateDistinct(new MersenneTwister(masterSeed), repetitions);
+  }
+
+  static List<Long> generateDistinct(RandomGenerator rng, int size) {
+    final Set<Long> numbers = new LinkedHashSet<>();
+    while (numbers.size() < size) {
+      numbers.add(rng.nextLong());
+    }
+    return newArrayList(numbers);
+  }
+
+  /**
+   * Creates the jobs of a full factorial experiment in the same order and with
+   * the same seeds as {@link com.github.rinde.rinsim.experiment.Experiment}:
+   * for each scenario, for each configuration, for each repetition.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Builder {
+    final List<Path> scenarios;
+    final List<MASConfiguration> configurations;
+    Function<Path, ? extends Scenario> scenarioReader;
+    Predicate<? super MASConfiguration> deterministic;
+    int repetitions;
+    long masterSeed;
+
+    Builder() {
+      scenarios = newArrayList();
+      configurations = newArrayList();
+      scenarioReader = ScenarioCache.instance().reader(
+          ScenarioCache.NO_TRANSFORMATION, BinaryScenarioIO.reader());
+      repetitions = 1;
+      deterministic = Predicates.alwaysFalse();
+    }
+
+    /**
+     * Adds scenario files.
+     * @param files The files.
+     * @return This, as per the builder pattern.
+     */
+    public Builder addScenarios(Iterable<Path> files) {
+      for (final Path file : files) {
+        scenarios.add(file);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the function that reads the scenario files.
+     * @param reader The reader.
+     * @return This, as per the builder pattern.
+     */
+    public Builder setScenarioReader(
+        Function<Path, ? extends Scenario> reader) {
+      scenarioReader = reader;
+      return this;
+    }
+
+    /**
+     * Adds configurations.
+     * @param configs The configurations.
+     * @return This, as per the builder pattern.
+     */
+    public Builder addConfigurations(Iterable<MASConfiguration> configs) {
+      for (final MASConfiguration config : configs) {
+        configurations.add(config);
+      }
+      return this;
+    }
+
+    /**
+     * Declares which configurations are deterministic, these are simulated
+     * only once per scenario with the seed of the first repetition.
+     * @param pred Accepts the deterministic configurations.
+     * @return This, as per the builder pattern.
+     */
+    public Builder setDeterministic(Predicate<? super MASConfiguration> pred) {
+      deterministic = pred;
+      return this;
+    }
+
+    /**
+     * @param reps The number of repetitions of each simulation.
+     * @return This, as per the builder pattern.
+     */
+    public Builder repeat(int reps) {
+      repetitions = reps;
+      return this;
+    }
+
+    /**
+     * @param seed The seed from which the seeds of the repetitions are drawn.
+     * @return This, as per the builder pattern.
+     */
+    public Builder withRandomSeed(long seed) {
+      masterSeed = seed;
+      return this;
+    }
+
+    /**
+     * @return The jobs, each scenario file is read once.
+     */
+    public ImmutableList<SimulationJob> build() {
+      final List<Long> seeds = seeds(masterSeed, repetitions);
+      final ImmutableList.Builder<SimulationJob> jobs = ImmutableList
+          .builder();
+      for (final Path file : scenarios) {
+        final Scenario scenario = scenarioReader.apply(file);
+        for (final MASConfiguration config : configurations) {
+          final List<Long> configSeeds = deterministic.apply(config)
+              ? seeds.subList(0, 1) : seeds;
+          for (final long seed : configSeeds) {
+            jobs.add(new SimulationJob(scenario, config, seed));
+          }
+        }
+      }
+      return jobs.build();
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.jppf.client.JPPFClient;
+import org.jppf.client.JPPFJob;
+import org.jppf.node.protocol.Task;
+
+import com.github.rinde.dynurg.RobustExecutor.Node;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * {@link Node}s for {@link RobustExecutor}: nodes that compute simulations
+ * locally or on a JPPF grid, and stand-in nodes that simulate slow, failing
+ * and dead nodes such that the fault tolerance can be verified without a
+ * cluster.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class SimulationNodes {
+  static JPPFClient client;
+
+  private SimulationNodes() {}
+
+  /**
+   * Creates a node that computes simulations in the calling thread.
+   * @param objFunc The objective function.
+   * @return A new node.
+   */
+  public static Node<SimulationJob, StatisticsDTO> local(
+      final ObjectiveFunction objFunc) {
+    return new Node<SimulationJob, StatisticsDTO>() {
+      @Override
+      public StatisticsDTO execute(SimulationJob job) {
+        return Experiment.singleRun(job.scenario, job.configuration, job.seed,
+            objFunc, false, null, null).stats;
+      }
+    };
+  }
+
+  /**
+   * Creates a node that submits each simulation as a separate job to the JPPF
+   * driver, see <code>rinde-jppf.properties</code>. All JPPF nodes share one
+   * client, the configuration and objective function must be serializable.
+   * The scenario is sent as JSON together with its id, a node deserializes
+   * each scenario only once.
+   * @param objFunc The objective function.
+   * @return A new node.
+   */
+  public static Node<SimulationJob, StatisticsDTO> jppf(
+      final ObjectiveFunction objFunc) {
+    return new Node<SimulationJob, StatisticsDTO>() {
+      @Override
+      public StatisticsDTO execute(SimulationJob job) throws Exception {
+        final JPPFJob jppfJob = new JPPFJob();
+        jppfJob.setName(job.toString());
+        jppfJob.setBlocking(true);
+        final String json = ScenarioIO.write(job.scenario);
+        jppfJob.add(new RemoteSimulation(scenarioKey(job.scenarioId, json),
+            json, job.configuration, job.seed, objFunc));
+        final List<Task<?>> tasks;
+        try {
+          tasks = getJPPFClient().submitJob(jppfJob);
+        } catch (final InterruptedException e) {
+          // the result is no longer needed
+          getJPPFClient().cancelJob(jppfJob.getUuid());
+          throw e;
+        }
+        final Task<?> task = tasks.get(0);
+        if (task.getThrowable() != null) {
+          throw new IllegalStateException("Simulation " + job + " failed.",
+              task.getThrowable());
+        }
+        return (StatisticsDTO) task.getResult();
+      }
+    };
+  }
+
+  /**
+   * Creates a stand-in node that delays each task before it is executed by
+   * another node.
+   * @param delegate The node that executes the tasks.
+   * @param delayMs The delay in milliseconds.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   * @return A new node.
+   */
+  public static <T, R> Node<T, R> slow(final Node<T, R> delegate,
+      final long delayMs) {
+    return new Node<T, R>() {
+      @Override
+      public R execute(T task) throws Exception {
+        Thread.sleep(delayMs);
+        return delegate.execute(task);
+      }
+    };
+  }
+
+  /**
+   * Creates a stand-in node that fails randomly.
+   * @param delegate The node that executes the tasks that do not fail.
+   * @param probability The probability that a task fails.
+   * @param seed The random seed.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   * @return A new node.
+   */
+  public static <T, R> Node<T, R> failing(final Node<T, R> delegate,
+      final double probability, long seed) {
+    final Random rng = new Random(seed);
+    return new Node<T, R>() {
+      @Override
+      public R execute(T task) throws Exception {
+        final boolean fail;
+        synchronized (rng) {
+          fail = rng.nextDouble() < probability;
+        }
+        if (fail) {
+          throw new IllegalStateException("Simulated failure of " + task);
+        }
+        return delegate.execute(task);
+      }
+    };
+  }
+
+  /**
+   * Creates a stand-in node that never returns and ignores interrupts, as a
+   * node that has crashed without closing its connection.
+   * @param <T> The type of task.
+   * @param <R> The type of result.
+   * @return A new node.
+   */
+  public static <T, R> Node<T, R> dead() {
+    return new Node<T, R>() {
+      @Override
+      public R execute(T task) {
+        while (true) {
+          Uninterruptibles.sleepUninterruptibly(1, TimeUnit.HOURS);
+        }
+      }
+    };
+  }
+
+  static synchronized JPPFClient getJPPFClient() {
+    if (client == null || client.isClosed()) {
+      client = new JPPFClient();
+    }
+    return client;
+  }
+
+  // the id identifies the scenario, the content hash guards against different
+  // scenarios (e.g. transformed ones) that share an id
+  static String scenarioKey(String scenarioId, String json) {
+    return scenarioId + "-"
+        + Hashing.murmur3_128().hashString(json, StandardCharsets.UTF_8);
+  }
+
+  static class RemoteSimulation implements Callable<StatisticsDTO>,
+      Serializable {
+    private static final long serialVersionUID = -4510923761239467711L;
+    final String scenarioKey;
+    final String scenario;
+    final MASConfiguration configuration;
+    final long seed;
+    final ObjectiveFunction objectiveFunction;
+
+    RemoteSimulation(String key, String scen, MASConfiguration config,
+        long sd, ObjectiveFunction objFunc) {
+      scenarioKey = key;
+      scenario = scen;
+      configuration = config;
+      seed = sd;
+      objectiveFunction = objFunc;
+    }
+
+    // the scenario is deserialized once per node JVM, the cache holds the key
+    // instead of the complete JSON string
+    @Override
+    public StatisticsDTO call() {
+      final Scenario scen = ScenarioCache.instance().get(scenarioKey,
+          ScenarioCache.NO_TRANSFORMATION, new Callable<Scenario>() {
+            @Override
+            public Scenario call() {
+              return ScenarioIO.read(scenario);
+            }
+          });
+      return Experiment.singleRun(scen, configuration, seed,
+          objectiveFunction, false, null, null).stats;
+    }
+  }
+}
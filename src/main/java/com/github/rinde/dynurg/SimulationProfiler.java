@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.Simulator;
+import com.github.rinde.rinsim.core.pdptw.ParcelDTO;
+import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
+import com.github.rinde.rinsim.experiment.PostProcessor;
+import com.github.rinde.rinsim.experiment.ResultListener;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers.AbstractStochasticSupplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Records the performance of each simulation: the number of solver
+ * invocations, the latency distribution of these invocations, the number of
+ * simulated ticks per wall clock second, the bytes allocated by the
+ * simulation thread and the garbage collection time. Besides wall clock time
+ * the CPU time of the simulation thread is measured, for the simulation as a
+ * whole and for the solver invocations. Unlike wall clock time, CPU time is
+ * not inflated when many simulations share a node.
+ * <p>
+ * A simulation is recorded when its solver is created by a supplier that is
+ * wrapped with {@link #instrument(StochasticSupplier)}, the recording ends
+ * in the {@link #postProcessor()} which puts a {@link Profile} in
+ * {@link SimulationResult#simulationData}. Both run in the simulation thread,
+ * also on a JPPF node. The {@link Listener} exports the profiles and
+ * summarises them per configuration.
+ * <p>
+ * Allocated bytes and CPU times are only available on JVMs that support
+ * thread allocation and CPU time accounting (<code>-1</code> otherwise).
+ * Garbage collection time is measured for the whole JVM, it includes the
+ * collections that were caused by simulations that run concurrently.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class SimulationProfiler {
+  // latencies in ms, with 1% relative accuracy between 1 microsecond and 1
+  // hour
+  static final double LATENCY_ACCURACY = .01;
+  static final double MIN_LATENCY_MS = .001;
+  static final double MAX_LATENCY_MS = 60 * 60 * 1000d;
+  static final double NANOS_PER_MS = 1000000d;
+
+  static final ThreadLocal<Recording> RECORDING = new ThreadLocal<>();
+
+  private SimulationProfiler() {}
+
+  /**
+   * Wraps a solver supplier such that each solver invocation is recorded. The
+   * name of the supplier (and thus of the configuration) is not changed.
+   * @param supplier The supplier to wrap.
+   * @return A new supplier.
+   */
+  public static StochasticSupplier<Solver> instrument(
+      StochasticSupplier<? extends Solver> supplier) {
+    return new InstrumentedSupplier(supplier);
+  }
+
+  /**
+   * @return A post processor that ends the recording of the simulation, its
+   *         result is a {@link Profile}. If no instrumented solver was created
+   *         in the simulation the profile is empty.
+   */
+  public static PostProcessor<Profile> postProcessor() {
+    return new ProfilePostProcessor();
+  }
+
+  /**
+   * The performance of a single simulation.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static final class Profile implements Serializable {
+    private static final long serialVersionUID = 8036384813453437650L;
+
+    /**
+     * The number of solver invocations.
+     */
+    public final long solverCalls;
+
+    /**
+     * The number of simulated ticks.
+     */
+    public final long ticks;
+
+    /**
+     * The wall clock time of the simulation in ms.
+     */
+    public final long wallTime;
+
+    /**
+     * The number of bytes allocated by the simulation thread,
+     * <code>-1</code> if not supported.
+     */
+    public final long allocatedBytes;
+
+    /**
+     * The garbage collection time of the JVM during the simulation in ms.
+     */
+    public final long gcTime;
+
+    /**
+     * The CPU time of the simulation thread in ms, <code>-1</code> if not
+     * supported.
+     */
+    public final long cpuTime;
+
+    /**
+     * The wall clock time of all solver invocations in ms.
+     */
+    public final long solverTime;
+
+    /**
+     * The CPU time of all solver invocations in ms, <code>-1</code> if not
+     * supported.
+     */
+    public final long solverCpuTime;
+
+    final QuantileSketch latencies;
+
+    // nothing was recorded
+    Profile() {
+      latencies = newSketch();
+      solverCalls = 0;
+      ticks = 0;
+      wallTime = 0;
+      allocatedBytes = -1;
+      gcTime = 0;
+      cpuTime = -1;
+      solverTime = 0;
+      solverCpuTime = -1;
+    }
+
+    Profile(Recording rec, long simTicks) {
+      latencies = rec.latencies;
+      solverCalls = rec.latencies.count();
+      ticks = simTicks;
+      wallTime = (System.nanoTime() - rec.startNanos) / (long) NANOS_PER_MS;
+      allocatedBytes = rec.startAllocatedBytes < 0 ? -1
+          : allocatedBytes() - rec.startAllocatedBytes;
+      gcTime = gcTime() - rec.startGcTime;
+      cpuTime = rec.startCpuTime < 0 ? -1 : toMillis(cpuTime()
+          - rec.startCpuTime);
+      solverTime = toMillis(rec.solverNanos);
+      solverCpuTime = rec.startCpuTime < 0 ? -1 : toMillis(rec.solverCpuNanos);
+    }
+
+    /**
+     * Estimates a quantile of the solver latency.
+     * @param q The quantile, in [0,1].
+     * @return The latency in ms, <code>0</code> if the solver was not
+     *         invoked.
+     */
+    public double latency(double q) {
+      return solverCalls == 0 ? 0d : latencies.quantile(q);
+    }
+
+    /**
+     * @return The number of simulated ticks per wall clock second.
+     */
+    public double ticksPerSecond() {
+      return ticks / Math.max(wallTime / 1000d, Double.MIN_VALUE);
+    }
+  }
+
+  /**
+   * A {@link ResultListener} that writes the profile of each simulation to a
+   * file per configuration (<code>[configuration].csv</code>) and a summary
+   * per configuration to <code>summary.csv</code>. The summary rows of
+   * configurations that were not part of the experiment are kept, such that
+   * separate experiments (e.g. when resuming) can share the directory.
+   * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+   */
+  public static class Listener implements ResultListener {
+    static final String SUMMARY = "summary";
+    static final String CONFIGURATION = "configuration";
+
+    final File directory;
+    final ResultWriter writer;
+    final Map<String, Summary> summaries;
+
+    /**
+     * Creates a new listener.
+     * @param dir The directory of the profile files.
+     */
+    public Listener(File dir) {
+      directory = dir;
+      writer = ResultWriter.builder(dir)
+          .addColumn("scenario_id", ColumnType.STRING)
+          .addColumn("random_seed", ColumnType.LONG)
+          .addColumn("solver_calls", ColumnType.LONG)
+          .addColumn("latency_p50", ColumnType.DOUBLE)
+          .addColumn("latency_p99", ColumnType.DOUBLE)
+          .addColumn("latency_max", ColumnType.DOUBLE)
+          .addColumn("ticks", ColumnType.LONG)
+          .addColumn("wall_time", ColumnType.LONG)
+          .addColumn("ticks_per_second", ColumnType.DOUBLE)
+          .addColumn("allocated_bytes", ColumnType.LONG)
+          .addColumn("gc_time", ColumnType.LONG)
+          .addColumn("cpu_time", ColumnType.LONG)
+          .addColumn("solver_time", ColumnType.LONG)
+          .addColumn("solver_cpu_time", ColumnType.LONG)
+          .build();
+      summaries = newLinkedHashMap();
+    }
+
+    @Override
+    public void startComputing(int numberOfSimulations) {}
+
+    // results may be received from several threads at once
+    @Override
+    public synchronized void receive(SimulationResult result) {
+      if (!result.simulationData.isPresent()
+          || !(result.simulationData.get() instanceof Profile)) {
+        return;
+      }
+      final Profile p = (Profile) result.simulationData.get();
+      final String config = result.masConfiguration.toString();
+      if (!summaries.containsKey(config)) {
+        summaries.put(config, new Summary());
+      }
+      summaries.get(config).add(p);
+      try {
+        writer.write(config, asList((Object) result.scenario.getProblemClass()
+            .getId() + result.scenario.getProblemInstanceId(), result.seed,
+            p.solverCalls, p.latency(.5), p.latency(.99), p.latency(1d),
+            p.ticks, p.wallTime, p.ticksPerSecond(), p.allocatedBytes,
+            p.gcTime, p.cpuTime, p.solverTime, p.solverCpuTime));
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public synchronized void doneComputing() {
+      try {
+        writer.close();
+        writeSummary();
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+      for (final Map.Entry<String, Summary> entry : summaries.entrySet()) {
+        final Summary s = entry.getValue();
+        System.out.println(String.format("%s: %d simulations, %d solver calls"
+            + ", latency p50 %.1fms p99 %.1fms max %.1fms, %.0f ticks/s",
+            entry.getKey(), s.simulations, s.latencies.count(),
+            s.latency(.5), s.latency(.99), s.latency(1d),
+            s.ticksPerSecond()));
+      }
+    }
+
+    void writeSummary() throws IOException {
+      final File file = new File(directory, SUMMARY + ".csv");
+      final List<List<?>> rows = newArrayList();
+      if (file.exists()) {
+        for (final ImmutableMap<String, String> row : ResultWriter
+            .readCsv(file)) {
+          if (!summaries.containsKey(row.get(CONFIGURATION))) {
+            rows.add(ImmutableList.copyOf(row.values()));
+          }
+        }
+      }
+      for (final Map.Entry<String, Summary> entry : summaries.entrySet()) {
+        final Summary s = entry.getValue();
+        rows.add(asList((Object) entry.getKey(), s.simulations,
+            s.latencies.count(), s.latency(.5), s.latency(.99),
+            s.latency(1d), s.ticks, s.wallTime, s.ticksPerSecond(),
+            s.allocatedBytes, s.gcTime, s.cpuTime, s.solverTime,
+            s.solverCpuTime));
+      }
+      final ResultWriter summaryWriter = ResultWriter.builder(directory)
+          .addColumn(CONFIGURATION, ColumnType.STRING)
+          .addColumn("simulations", ColumnType.INT)
+          .addColumn("solver_calls", ColumnType.LONG)
+          .addColumn("latency_p50", ColumnType.DOUBLE)
+          .addColumn("latency_p99", ColumnType.DOUBLE)
+          .addColumn("latency_max", ColumnType.DOUBLE)
+          .addColumn("ticks", ColumnType.LONG)
+          .addColumn("wall_time", ColumnType.LONG)
+          .addColumn("ticks_per_second", ColumnType.DOUBLE)
+          .addColumn("allocated_bytes", ColumnType.LONG)
+          .addColumn("gc_time", ColumnType.LONG)
+          .addColumn("cpu_time", ColumnType.LONG)
+          .addColumn("solver_time", ColumnType.LONG)
+          .addColumn("solver_cpu_time", ColumnType.LONG)
+          .build();
+      for (final List<?> row : rows) {
+        summaryWriter.write(SUMMARY, row);
+      }
+      summaryWriter.close();
+    }
+  }
+
+  // the profiles of all simulations of a configuration, the latencies of all
+  // solver invocations are merged
+  static class Summary {
+    final QuantileSketch latencies;
+    int simulations;
+    long ticks;
+    long wallTime;
+    long allocatedBytes;
+    long gcTime;
+    long cpuTime;
+    long solverTime;
+    long solverCpuTime;
+
+    Summary() {
+      latencies = newSketch();
+    }
+
+    void add(Profile p) {
+      latencies.merge(p.latencies);
+      simulations++;
+      ticks += p.ticks;
+      wallTime += p.wallTime;
+      allocatedBytes += Math.max(0, p.allocatedBytes);
+      gcTime += p.gcTime;
+      cpuTime += Math.max(0, p.cpuTime);
+      solverTime += p.solverTime;
+      solverCpuTime += Math.max(0, p.solverCpuTime);
+    }
+
+    double latency(double q) {
+      return latencies.count() == 0 ? 0d : latencies.quantile(q);
+    }
+
+    double ticksPerSecond() {
+      return ticks / Math.max(wallTime / 1000d, Double.MIN_VALUE);
+    }
+  }
+
+  static class Recording {
+    final QuantileSketch latencies;
+    final long startNanos;
+    final long startAllocatedBytes;
+    final long startGcTime;
+    final long startCpuTime;
+    long solverNanos;
+    long solverCpuNanos;
+
+    Recording() {
+      latencies = newSketch();
+      startNanos = System.nanoTime();
+      startAllocatedBytes = allocatedBytes();
+      startGcTime = gcTime();
+      startCpuTime = cpuTime();
+    }
+
+    synchronized void record(long nanos, long cpuNanos) {
+      latencies.add(nanos / NANOS_PER_MS);
+      solverNanos += nanos;
+      solverCpuNanos += cpuNanos;
+    }
+  }
+
+  static QuantileSketch newSketch() {
+    return new QuantileSketch(LATENCY_ACCURACY, MIN_LATENCY_MS,
+        MAX_LATENCY_MS);
+  }
+
+  static long allocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean sunBean =
+          (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported()
+          && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  // CPU time of the current thread in ns
+  static long cpuTime() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean.isCurrentThreadCpuTimeSupported()
+        && bean.isThreadCpuTimeEnabled()) {
+      return bean.getCurrentThreadCpuTime();
+    }
+    return -1;
+  }
+
+  static long toMillis(long nanos) {
+    return nanos / (long) NANOS_PER_MS;
+  }
+
+  static long gcTime() {
+    long total = 0;
+    for (final GarbageCollectorMXBean gc : ManagementFactory
+        .getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionTime());
+    }
+    return total;
+  }
+
+  static class InstrumentedSupplier extends
+      AbstractStochasticSupplier<Solver> {
+    private static final long serialVersionUID = -1744389384716125097L;
+    final StochasticSupplier<? extends Solver> delegate;
+
+    InstrumentedSupplier(StochasticSupplier<? extends Solver> supplier) {
+      delegate = supplier;
+    }
+
+    // the solver is created when the simulation is set up, this starts a new
+    // recording in the simulation thread
+    @Override
+    public Solver get(long seed) {
+      final Recording recording = new Recording();
+      RECORDING.set(recording);
+      return new InstrumentedSolver(delegate.get(seed), recording);
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static class InstrumentedSolver implements Solver {
+    final Solver delegate;
+    final Recording recording;
+
+    InstrumentedSolver(Solver solver, Recording rec) {
+      delegate = solver;
+      recording = rec;
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<ParcelDTO>> solve(
+        GlobalStateObject state) {
+      final long start = System.nanoTime();
+      final long startCpu = cpuTime();
+      try {
+        return delegate.solve(state);
+      } finally {
+        recording.record(System.nanoTime() - start, cpuTime() - startCpu);
+      }
+    }
+  }
+
+  static class ProfilePostProcessor implements PostProcessor<Profile>,
+      Serializable {
+    private static final long serialVersionUID = 3188164788532187357L;
+
+    @Override
+    public Profile collectResults(Simulator sim) {
+      final Recording recording = RECORDING.get();
+      RECORDING.remove();
+      if (recording == null) {
+        return new Profile();
+      }
+      return new Profile(recording, sim.getCurrentTime() / sim.getTimeStep());
+    }
+  }
+}
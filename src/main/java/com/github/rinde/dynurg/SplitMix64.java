@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import org.apache.commons.math3.random.BitsStreamGenerator;
+
+/**
+ * The SplitMix64 generator of Steele, Lea and Flood (2014): a 64 bit counter
+ * that is incremented by a constant and scrambled by a mixing function. The
+ * state is a single long, seeding is therefore as cheap as drawing a number
+ * (compared to the 624 words of a {@link
+ * org.apache.commons.math3.random.MersenneTwister}). This makes it suitable
+ * for generators that are reseeded for every item, such as the time windows
+ * of each parcel. Independent streams are created with {@link #split()}.
+ * <p>
+ * Not thread safe and not suitable for cryptography.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public final class SplitMix64 extends BitsStreamGenerator {
+  private static final long serialVersionUID = 6421564296592924917L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+  private long state;
+
+  /**
+   * Creates a new generator.
+   * @param seed The seed.
+   */
+  public SplitMix64(long seed) {
+    state = seed;
+  }
+
+  /**
+   * Creates a new generator whose stream is statistically independent from
+   * the remainder of the stream of this generator. The state of this
+   * generator advances by one number.
+   * @return A new generator.
+   */
+  public SplitMix64 split() {
+    return new SplitMix64(mix(nextLong()));
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    state = seed;
+    clear();
+  }
+
+  @Override
+  public void setSeed(int seed) {
+    setSeed((long) seed);
+  }
+
+  @Override
+  public void setSeed(int[] seed) {
+    long s = 0;
+    for (final int i : seed) {
+      s = mix(s + GOLDEN_GAMMA + i);
+    }
+    setSeed(s);
+  }
+
+  @Override
+  public long nextLong() {
+    state += GOLDEN_GAMMA;
+    return mix(state);
+  }
+
+  @Override
+  public double nextDouble() {
+    return (nextLong() >>> 11) * DOUBLE_UNIT;
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> 64 - bits);
+  }
+
+  static long mix(long value) {
+    long z = value;
+    z = (z ^ z >>> 30) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ z >>> 27) * 0x94d049bb133111ebL;
+    return z ^ z >>> 31;
+  }
+}
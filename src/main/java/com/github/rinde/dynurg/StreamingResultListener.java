@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
+import com.github.rinde.rinsim.experiment.ResultListener;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * A {@link ResultListener} that passes the rows of each simulation to the
+ * writer as soon as it is finished, usually one row per simulation. The writer
+ * buffers the rows and writes them in batches or after its flush interval
+ * (see {@link ResultWriter.Builder#flushInterval(long)}), when an experiment
+ * is interrupted only the rows of the last batch or interval are lost. The
+ * remaining rows are written when the experiment is done. Rows are written in
+ * the order in which the simulations finish. Only the rows are kept, no
+ * reference to the result is retained by this listener.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class StreamingResultListener implements ResultListener {
+  final ResultWriter writer;
+  final Function<SimulationResult,
+      ? extends Iterable<? extends List<?>>> rowFunction;
+  final Predicate<SimulationResult> skipFilter;
+  int received;
+
+  /**
+   * Creates a new listener.
+   * @param w The writer to which the rows are written, the file of a result
+   *          is named after its configuration. The writer is closed when the
+   *          experiment is done.
+   * @param rows Converts a result into rows.
+   */
+  public StreamingResultListener(ResultWriter w,
+      Function<SimulationResult, ? extends Iterable<? extends List<?>>> rows) {
+    this(w, rows, Predicates.<SimulationResult> alwaysFalse());
+  }
+
+  /**
+   * Creates a new listener that ignores some results, this is useful when
+   * resuming an experiment of which some results have already been written.
+   * @param w The writer to which the rows are written, the file of a result
+   *          is named after its configuration. The writer is closed when the
+   *          experiment is done.
+   * @param rows Converts a result into rows.
+   * @param skip Results that are accepted by this predicate are not written.
+   */
+  public StreamingResultListener(ResultWriter w,
+      Function<SimulationResult, ? extends Iterable<? extends List<?>>> rows,
+      Predicate<SimulationResult> skip) {
+    writer = w;
+    rowFunction = rows;
+    skipFilter = skip;
+  }
+
+  @Override
+  public void startComputing(int numberOfSimulations) {}
+
+  // results may be received from several threads at once
+  @Override
+  public synchronized void receive(SimulationResult result) {
+    if (skipFilter.apply(result)) {
+      return;
+    }
+    try {
+      for (final List<?> row : rowFunction.apply(result)) {
+        writer.write(result.masConfiguration.toString(), row);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    received++;
+  }
+
+  @Override
+  public synchronized void doneComputing() {
+    try {
+      writer.close();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return The number of results that have been written (not skipped).
+   */
+  public synchronized int getNumberOfResults() {
+    return received;
+  }
+}
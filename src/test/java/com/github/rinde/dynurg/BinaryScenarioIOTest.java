@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.core.model.pdp.PDPScenarioEvent;
+import com.github.rinde.rinsim.core.pdptw.ParcelDTO;
+import com.github.rinde.rinsim.core.pdptw.VehicleDTO;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.scenario.AddDepotEvent;
+import com.github.rinde.rinsim.scenario.AddParcelEvent;
+import com.github.rinde.rinsim.scenario.AddVehicleEvent;
+import com.github.rinde.rinsim.scenario.Scenario;
+import com.github.rinde.rinsim.scenario.Scenario.SimpleProblemClass;
+import com.github.rinde.rinsim.scenario.ScenarioIO;
+import com.github.rinde.rinsim.scenario.TimedEvent;
+import com.github.rinde.rinsim.util.TimeWindow;
+
+/**
+ * Tests {@link BinaryScenarioIO}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class BinaryScenarioIOTest {
+
+  /**
+   * A scenario read from a binary file equals the original and can be
+   * serialized with {@link ScenarioIO}.
+   * @throws IOException If the temporary file can not be used.
+   */
+  @Test
+  public void roundTrip() throws IOException {
+    final Scenario original = Scenario
+        .builder(new SimpleProblemClass("0.50-20-1.00"))
+        .instanceId("0")
+        .addEvent(new AddDepotEvent(-1, new Point(5, 5)))
+        .addEvent(new AddVehicleEvent(-1, VehicleDTO.builder()
+            .startPosition(new Point(5, 5))
+            .speed(50d)
+            .capacity(1)
+            .availabilityTimeWindow(new TimeWindow(0, 1000000))
+            .build()))
+        .addEvent(new AddParcelEvent(ParcelDTO
+            .builder(new Point(1, 2), new Point(8, 9))
+            .pickupTimeWindow(new TimeWindow(1000, 20000))
+            .deliveryTimeWindow(new TimeWindow(5000, 40000))
+            .neededCapacity(0)
+            .orderAnnounceTime(500)
+            .pickupDuration(300)
+            .deliveryDuration(300)
+            .build()))
+        .addEvent(new TimedEvent(PDPScenarioEvent.TIME_OUT, 1000000))
+        .build();
+
+    final Path file = Files.createTempFile("scenario",
+        BinaryScenarioIO.EXTENSION);
+    try {
+      BinaryScenarioIO.write(original, file);
+      final Scenario read = BinaryScenarioIO.read(file);
+      assertEquals(original, read);
+      assertEquals(original, ScenarioIO.read(ScenarioIO.write(read)));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.dynurg.CellSummaries.Cell;
+import com.github.rinde.dynurg.CellSummaries.Summary;
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link CellSummaries}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class CellSummariesTest {
+  static final ImmutableList<String> SCENARIOS = ImmutableList.of(
+      "5-0.20#0", "5-0.20#1", "35-0.50#0", "5-0.80#3");
+  static final double EPSILON = 1e-9;
+
+  File dir;
+
+  /**
+   * Creates a temporary directory.
+   */
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+  }
+
+  /**
+   * Removes the temporary directory.
+   */
+  @After
+  public void tearDown() {
+    ResultWriterTest.delete(dir);
+  }
+
+  /**
+   * Rows are grouped by configuration, urgency level and dynamism level, the
+   * count, mean and variance are exact.
+   */
+  @Test
+  public void add() {
+    final CellSummaries summaries = new CellSummaries();
+    summaries.add("b", row("5-0.20#0", 10d));
+    summaries.add("a", row("5-0.20#0", 1d));
+    summaries.add("a", row("5-0.20#4", 2d));
+    summaries.add("a", row("35-0.20#0", 3d));
+    summaries.add("a", row("5-0.20#1", 6d));
+
+    final List<Cell> cells = summaries.cells();
+    assertEquals(3, cells.size());
+    check(cells.get(0), "a", 5, .2, 3);
+    check(cells.get(1), "a", 35, .2, 1);
+    check(cells.get(2), "b", 5, .2, 1);
+
+    final Summary cost = cells.get(0).get("cost");
+    assertEquals(3d, cost.mean(), EPSILON);
+    assertEquals(7d, cost.variance(), EPSILON);
+    assertEquals(6d, cost.quantile(1d), 0d);
+    assertEquals(Double.NaN, cells.get(1).get("cost").variance(), 0d);
+    // the other metrics are derived from the cost, see row(..)
+    assertEquals(30d, cells.get(0).get("comp_time").mean(), EPSILON);
+  }
+
+  /**
+   * Merging the summaries of several workers gives the same summaries as
+   * adding all rows to one instance, except for rounding of the mean and
+   * variance.
+   */
+  @Test
+  public void merge() {
+    final Random rng = new Random(123L);
+    final CellSummaries all = new CellSummaries();
+    final CellSummaries[] workers = {new CellSummaries(), new CellSummaries(),
+        new CellSummaries()};
+    for (int i = 0; i < 3000; i++) {
+      final String config = rng.nextBoolean() ? "a" : "b";
+      final ImmutableMap<String, Object> row = row(
+          SCENARIOS.get(rng.nextInt(SCENARIOS.size())),
+          rng.nextDouble() * 1000d);
+      all.add(config, row);
+      workers[rng.nextInt(workers.length)].add(config, row);
+    }
+    final CellSummaries merged = new CellSummaries();
+    for (final CellSummaries worker : workers) {
+      merged.merge(worker);
+    }
+    assertSame(all, merged);
+  }
+
+  /**
+   * A snapshot is read back unchanged.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void saveAndLoad() throws IOException {
+    final CellSummaries summaries = new CellSummaries();
+    for (int i = 0; i < 100; i++) {
+      summaries.add("a", row(SCENARIOS.get(i % SCENARIOS.size()), i));
+    }
+    final File file = new File(dir, "snapshot.ser.gz");
+    summaries.save(file);
+    assertSame(summaries, CellSummaries.load(file));
+  }
+
+  /**
+   * The rows of result files are added, the CSV has one line per cell.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void addResultsAndWriteCsv() throws IOException {
+    final ResultWriter.Builder builder = ResultWriter.builder(dir)
+        .addColumn("scenario_id", ColumnType.STRING);
+    for (final String metric : CellSummaries.METRICS) {
+      builder.addColumn(metric, ColumnType.DOUBLE);
+    }
+    final ResultWriter writer = builder.build();
+    final CellSummaries expected = new CellSummaries();
+    for (int i = 0; i < 20; i++) {
+      final ImmutableMap<String, Object> row = row(SCENARIOS.get(i % 2), i);
+      expected.add("a", row);
+      writer.write("a", ImmutableList.copyOf(row.values()));
+    }
+    writer.close();
+
+    final CellSummaries summaries = new CellSummaries();
+    summaries.addResults(dir, asList("a", "missing"));
+    assertSame(expected, summaries);
+
+    final File csv = new File(dir, "summary.csv");
+    summaries.writeCsv(csv);
+    final List<String> lines = Files.readLines(csv, Charsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).startsWith("configuration,urgency,dynamism,count,"
+        + "cost_mean,cost_var,cost_p10,cost_p50,cost_p90,"));
+    assertTrue(lines.get(1).startsWith("a,5,0.2,20,"));
+  }
+
+  /**
+   * The listener writes the summary files when it is closed.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void listener() throws IOException {
+    final CellSummaries.Listener listener = new CellSummaries.Listener(dir,
+        Long.MAX_VALUE);
+    listener.receive("a", row("5-0.20#0", 1d));
+    listener.flush();
+    assertTrue(!new File(dir, CellSummaries.Listener.SUMMARY).exists());
+    listener.close();
+    assertTrue(new File(dir, CellSummaries.Listener.SUMMARY).exists());
+    assertSame(listener.summaries(), CellSummaries.load(new File(dir,
+        CellSummaries.Listener.SNAPSHOT)));
+  }
+
+  static void check(Cell cell, String config, long urgency, double dynamism,
+      long count) {
+    assertEquals(config, cell.configuration);
+    assertEquals(urgency, cell.urgency);
+    assertEquals(dynamism, cell.dynamism, 0d);
+    assertEquals(count, cell.count());
+  }
+
+  static void assertSame(CellSummaries expected, CellSummaries actual) {
+    final List<Cell> e = expected.cells();
+    final List<Cell> a = actual.cells();
+    assertEquals(e.size(), a.size());
+    for (int i = 0; i < e.size(); i++) {
+      check(a.get(i), e.get(i).configuration, e.get(i).urgency,
+          e.get(i).dynamism, e.get(i).count());
+      for (final String metric : CellSummaries.METRICS) {
+        final Summary es = e.get(i).get(metric);
+        final Summary as = a.get(i).get(metric);
+        assertEquals(es.mean(), as.mean(), EPSILON * Math.abs(es.mean()));
+        assertEquals(es.variance(), as.variance(),
+            EPSILON * Math.abs(es.variance()));
+        for (final double q : CellSummaries.QUANTILES) {
+          assertEquals(es.quantile(q), as.quantile(q), 0d);
+        }
+      }
+    }
+  }
+
+  // a result row of which all metrics are derived from the cost
+  static ImmutableMap<String, Object> row(String scenarioId, double cost) {
+    return ImmutableMap.<String, Object> of("scenario_id", scenarioId,
+        "cost", cost, "tardiness", cost / 2d, "travel_time", cost * 2d,
+        "comp_time", cost * 10d);
+  }
+}
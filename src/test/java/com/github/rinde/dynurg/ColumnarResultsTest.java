@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.github.rinde.dynurg.ResultWriter.Format;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link ColumnarResults} with files written by {@link ResultWriter}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class ColumnarResultsTest {
+  static final int NUM_ROWS = 10;
+  static final int BATCH_SIZE = 4;
+
+  File dir;
+  File file;
+
+  /**
+   * Creates a temporary directory.
+   */
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+    file = new File(dir, "a" + Format.COLUMNAR.extension);
+  }
+
+  /**
+   * Removes the temporary directory.
+   */
+  @After
+  public void tearDown() {
+    ResultWriterTest.delete(dir);
+  }
+
+  /**
+   * All values of all column types are read back in order.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void roundTrip() throws IOException {
+    write();
+    final ColumnarResults results = ColumnarResults.read(file.toPath());
+    assertEquals(ImmutableList.of("d", "l", "i", "b", "s"),
+        results.getColumnNames());
+    assertEquals(NUM_ROWS, results.size());
+    assertValues(results, NUM_ROWS);
+  }
+
+  /**
+   * The incomplete last block of an interrupted run is ignored.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void truncated() throws IOException {
+    write();
+    final long length = file.length();
+    // removes the last byte of the string column of the last block
+    truncate(length - 1);
+    ColumnarResults results = ColumnarResults.read(file.toPath());
+    assertEquals(2 * BATCH_SIZE, results.size());
+    assertValues(results, 2 * BATCH_SIZE);
+
+    // only the row count of the last block remains
+    truncate(length - 1 - 30);
+    results = ColumnarResults.read(file.toPath());
+    assertEquals(2 * BATCH_SIZE, results.size());
+  }
+
+  /**
+   * A file with an incomplete header is rejected.
+   * @throws IOException If the file has an incomplete header.
+   */
+  @Test(expected = IOException.class)
+  public void truncatedHeader() throws IOException {
+    write();
+    truncate(10);
+    ColumnarResults.read(file.toPath());
+  }
+
+  void write() throws IOException {
+    final ResultWriter writer = ResultWriter.builder(dir)
+        .format(Format.COLUMNAR)
+        .batchSize(BATCH_SIZE)
+        .addColumn("d", ColumnType.DOUBLE)
+        .addColumn("l", ColumnType.LONG)
+        .addColumn("i", ColumnType.INT)
+        .addColumn("b", ColumnType.BOOLEAN)
+        .addColumn("s", ColumnType.STRING)
+        .build();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      writer.write("a", asList(i / 2d, 1000000000000L * i, -i, i % 3 == 0,
+          "row " + i));
+    }
+    writer.close();
+  }
+
+  void truncate(long length) throws IOException {
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(length);
+    }
+  }
+
+  static void assertValues(ColumnarResults results, int numRows) {
+    final double[] doubles = new double[numRows];
+    final long[] longs = new long[numRows];
+    final int[] ints = new int[numRows];
+    final boolean[] booleans = new boolean[numRows];
+    final String[] strings = new String[numRows];
+    for (int i = 0; i < numRows; i++) {
+      doubles[i] = i / 2d;
+      longs[i] = 1000000000000L * i;
+      ints[i] = -i;
+      booleans[i] = i % 3 == 0;
+      strings[i] = "row " + i;
+    }
+    assertArrayEquals(doubles, results.doubles("d"), 0d);
+    assertArrayEquals(longs, results.longs("l"));
+    assertArrayEquals(ints, results.ints("i"));
+    assertArrayEquals(booleans, results.booleans("b"));
+    assertArrayEquals(strings, results.strings("s"));
+  }
+}
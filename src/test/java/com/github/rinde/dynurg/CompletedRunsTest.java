@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link CompletedRuns}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class CompletedRunsTest {
+  File dir;
+
+  /**
+   * Creates a temporary directory.
+   */
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+  }
+
+  /**
+   * Removes the temporary directory.
+   */
+  @After
+  public void tearDown() {
+    ResultWriterTest.delete(dir);
+  }
+
+  /**
+   * The runs written by a {@link ResultWriter} are found, also those that
+   * were appended by a resumed run.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void read() throws IOException {
+    write(false, asList("pc1", "0", 1L), asList("pc1", "0", 2L),
+        asList("pc1", "1", 1L));
+    // resume, the duplicate is counted once
+    write(true, asList("pc1", "1", 2L), asList("pc1", "1", 2L));
+
+    final CompletedRuns runs = CompletedRuns.read(dir,
+        asList("config", "missing"));
+    assertEquals(4, runs.size());
+    assertTrue(runs.contains("config", "pc10", 1L));
+    assertTrue(runs.contains("config", "pc11", 2L));
+    assertFalse(runs.contains("config", "pc11", 3L));
+    assertFalse(runs.contains("missing", "pc10", 1L));
+    assertTrue(runs.isComplete("config", "pc10", 2));
+    assertFalse(runs.isComplete("config", "pc10", 3));
+    assertFalse(runs.isComplete("config", "pc12", 1));
+  }
+
+  /**
+   * A file with rows that do not match its header (e.g. rows that were
+   * appended with other columns) is rejected instead of silently ignored.
+   * @throws IOException If a file can not be used.
+   */
+  @Test(expected = IOException.class)
+  public void inconsistentFile() throws IOException {
+    Files.write("scenario_id,random_seed\npc10,1\npc10,2,3.5\n",
+        new File(dir, "config.csv"), Charsets.UTF_8);
+    CompletedRuns.read(dir, asList("config"));
+  }
+
+  // writes rows of problem class, instance id and seed
+  void write(boolean append, List<?>... rows) throws IOException {
+    final ResultWriter.Builder builder = ResultWriter.builder(dir)
+        .addColumn("problem_class", ColumnType.STRING)
+        .addColumn("instance_id", ColumnType.STRING)
+        .addColumn("random_seed", ColumnType.LONG)
+        .addColumn("scenario_id", ColumnType.STRING);
+    if (append) {
+      builder.append();
+    }
+    final ResultWriter writer = builder.build();
+    for (final List<?> row : rows) {
+      final List<Object> values = Lists.<Object> newArrayList(row);
+      values.add(row.get(0).toString() + row.get(1));
+      writer.write("config", values);
+    }
+    writer.close();
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions;
+import com.github.rinde.rinsim.scenario.generator.IntensityFunctions.IntensityFunction;
+import com.github.rinde.rinsim.scenario.generator.TimeSeries.TimeSeriesGenerator;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+
+/**
+ * Tests {@link ConditionalTimeSeries}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class ConditionalTimeSeriesTest {
+  static final double LENGTH = 8 * 60 * 60 * 1000d;
+  static final double PERIOD = 60 * 60 * 1000d;
+  static final int NUM_EVENTS = 50;
+
+  /**
+   * The homogenous Poisson process generates exactly the specified number of
+   * uniformly distributed events.
+   */
+  @Test
+  public void homogenousPoisson() {
+    final TimeSeriesGenerator generator = ConditionalTimeSeries
+        .homogenousPoisson(LENGTH, NUM_EVENTS);
+    double sum = 0d;
+    for (long seed = 0; seed < 200; seed++) {
+      final List<Double> times = generator.generate(seed);
+      check(times);
+      for (final double t : times) {
+        sum += t;
+      }
+    }
+    // the mean of 10000 uniform values in [0,LENGTH)
+    assertEquals(LENGTH / 2d, sum / (200 * NUM_EVENTS), LENGTH / 100d);
+  }
+
+  /**
+   * The non-homogenous Poisson process generates exactly the specified number
+   * of events.
+   */
+  @Test
+  public void nonHomogenousPoisson() {
+    check(ConditionalTimeSeries.nonHomogenousPoisson(LENGTH, NUM_EVENTS,
+        IntensityFunctions.sineIntensity()
+            .area(NUM_EVENTS / (LENGTH / PERIOD))
+            .period(PERIOD)
+            .height(StochasticSuppliers.uniformDouble(-.99, 1.5d))
+            .phaseShift(StochasticSuppliers.uniformDouble(0, PERIOD))
+            .buildStochasticSupplier()));
+  }
+
+  /**
+   * The normal renewal process generates exactly the specified number of
+   * events.
+   */
+  @Test
+  public void normal() {
+    check(ConditionalTimeSeries.normal(LENGTH, NUM_EVENTS, 2.4 * 60 * 1000));
+  }
+
+  /**
+   * The uniform renewal process generates exactly the specified number of
+   * events, also without deviation.
+   */
+  @Test
+  public void uniform() {
+    check(ConditionalTimeSeries.uniform(LENGTH, NUM_EVENTS,
+        StochasticSuppliers.constant(LENGTH / NUM_EVENTS / 2d)));
+    check(ConditionalTimeSeries.uniform(LENGTH, NUM_EVENTS,
+        StochasticSuppliers.constant(0d)));
+  }
+
+  /**
+   * Simpson's rule is exact for polynomials up to degree three.
+   */
+  @Test
+  public void integrate() {
+    // lambda(t) = 1 + t^2 on [0,3], the integral is 3 + 27 / 3
+    final IntensityFunction lambda = new IntensityFunction() {
+      @Override
+      public double getMax() {
+        return 10d;
+      }
+
+      @Override
+      public Double apply(Double t) {
+        return 1d + t * t;
+      }
+    };
+    assertEquals(12d, ConditionalTimeSeries.integrate(lambda, 3d), 1e-9);
+  }
+
+  /**
+   * The acceptance probability is the ratio of two Poisson probabilities, it
+   * is one if the mean equals the number of events.
+   */
+  @Test
+  public void poissonAcceptanceProbability() {
+    assertEquals(1d, ConditionalTimeSeries.poissonAcceptanceProbability(
+        NUM_EVENTS, NUM_EVENTS), 1e-12);
+    assertEquals(0d,
+        ConditionalTimeSeries.poissonAcceptanceProbability(NUM_EVENTS, 0d),
+        0d);
+    for (final double mean : new double[] {1d, 20d, 49.5, 50.5, 80d}) {
+      final double expected = Math.exp(logPoisson(NUM_EVENTS, mean)
+          - logPoisson(NUM_EVENTS, NUM_EVENTS));
+      final double p = ConditionalTimeSeries.poissonAcceptanceProbability(
+          NUM_EVENTS, mean);
+      assertEquals(expected, p, 1e-12);
+      assertTrue(p < 1d);
+    }
+  }
+
+  static double logPoisson(int n, double mean) {
+    double logFactorial = 0d;
+    for (int i = 2; i <= n; i++) {
+      logFactorial += Math.log(i);
+    }
+    return n * Math.log(mean) - mean - logFactorial;
+  }
+
+  // generates several time series and checks their number of events, order
+  // and bounds, the same seed must yield the same time series
+  static void check(TimeSeriesGenerator generator) {
+    for (long seed = 0; seed < 20; seed++) {
+      final List<Double> times = generator.generate(seed);
+      check(times);
+      assertEquals(times, generator.generate(seed));
+    }
+  }
+
+  static void check(List<Double> times) {
+    assertEquals(NUM_EVENTS, times.size());
+    double prev = 0d;
+    for (final double t : times) {
+      assertTrue(t >= prev);
+      assertTrue(t < LENGTH);
+      prev = t;
+    }
+  }
+}
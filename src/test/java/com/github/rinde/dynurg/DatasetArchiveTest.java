@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.dynurg.DatasetArchive.Entry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests {@link DatasetArchive}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class DatasetArchiveTest {
+  File dir;
+  Path archive;
+
+  /**
+   * Creates a temporary directory.
+   */
+  @Before
+  public void setUp() {
+    dir = com.google.common.io.Files.createTempDir();
+    archive = dir.toPath().resolve("dataset" + DatasetArchive.EXTENSION);
+  }
+
+  /**
+   * Removes the temporary directory.
+   */
+  @After
+  public void tearDown() {
+    ResultWriterTest.delete(dir);
+  }
+
+  /**
+   * All files of a dataset directory are packed, and read back unchanged.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void packAndRead() throws IOException {
+    final Path dataset = Files.createDirectory(dir.toPath().resolve("data"));
+    write(dataset.resolve("a.properties"), "problem_class = pc1\nid = 0");
+    write(dataset.resolve("a.scen"), "scenario a");
+    write(dataset.resolve("a.times"), "1\n2\n3");
+    write(dataset.resolve("b.properties"), "problem_class = pc2\nid = 7");
+    write(dataset.resolve("b.scen"), "scenario b");
+    // not a part of a scenario
+    write(dataset.resolve("other.txt"), "other");
+
+    assertEquals(2, DatasetArchive.pack(dataset, archive));
+
+    try (final DatasetArchive da = DatasetArchive.open(archive)) {
+      assertEquals(2, da.size());
+      assertTrue(da.contains("pc10"));
+      assertTrue(da.contains("pc27"));
+      assertFalse(da.contains("pc11"));
+
+      final Entry a = da.get("pc1", "0");
+      assertEquals("pc10", a.scenarioId());
+      assertEquals(ImmutableSet.of(".properties", ".scen", ".times"),
+          a.extensions());
+      assertEquals("scenario a", read(da, a, ".scen"));
+      assertEquals("1\n2\n3", read(da, a, ".times"));
+      assertEquals("scenario b", read(da, da.get("pc27"), ".scen"));
+
+      final Path unpacked = Paths.get("unpacked");
+      assertEquals(ImmutableSet.of(unpacked.resolve("pc10.scen"),
+          unpacked.resolve("pc27.scen")), ImmutableSet.copyOf(
+          da.files(unpacked)));
+      try {
+        da.read(a, ".points");
+        fail();
+      } catch (final IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Parts of any size are written and read in the order of the writer.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void writeAndRead() throws IOException {
+    final byte[] large = random(100000);
+    try (final DatasetArchive.Writer writer = DatasetArchive.writer(archive)) {
+      writer.add("pc", "1", ImmutableMap.of(".properties", new byte[0],
+          BinaryScenarioIO.EXTENSION, large));
+      writer.add("pc", "0", ImmutableMap.of(".properties", "p".getBytes(
+          StandardCharsets.UTF_8), ".scen", random(10)));
+      assertEquals(2, writer.size());
+    }
+    try (final DatasetArchive da = DatasetArchive.open(archive)) {
+      final ImmutableList<Entry> entries = ImmutableList.copyOf(da.entries());
+      assertEquals("pc1", entries.get(0).scenarioId());
+      assertEquals("pc0", entries.get(1).scenarioId());
+      assertArrayEquals(large, da.read(entries.get(0),
+          BinaryScenarioIO.EXTENSION));
+      assertArrayEquals(new byte[0], da.read(entries.get(0), ".properties"));
+    }
+  }
+
+  /**
+   * A scenario without properties can not be added.
+   * @throws IOException If a file can not be used.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void missingProperties() throws IOException {
+    try (final DatasetArchive.Writer writer = DatasetArchive.writer(archive)) {
+      writer.add("pc", "0", ImmutableMap.of(".scen", new byte[1]));
+    }
+  }
+
+  /**
+   * An archive of which the writer was never closed (e.g. because the
+   * process was killed) has no index and is rejected.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void writerNotClosed() throws IOException {
+    final DatasetArchive.Writer writer = DatasetArchive.writer(archive);
+    try {
+      // larger than the buffer of the writer, such that a part of the
+      // archive is on disk
+      writer.add("pc", "0", ImmutableMap.of(".properties", new byte[0],
+          ".scen", random(100000)));
+      assertTrue(Files.size(archive) > 0);
+      try {
+        DatasetArchive.open(archive).close();
+        fail();
+      } catch (final IOException e) {
+        // expected
+      }
+    } finally {
+      writer.close();
+    }
+    // once closed the archive is complete
+    DatasetArchive.open(archive).close();
+  }
+
+  static String read(DatasetArchive da, Entry entry, String extension)
+      throws IOException {
+    return new String(da.read(entry, extension), StandardCharsets.UTF_8);
+  }
+
+  static void write(Path file, String contents) throws IOException {
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static byte[] random(int length) {
+    final byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+}
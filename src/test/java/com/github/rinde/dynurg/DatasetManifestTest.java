@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.rinde.dynurg.DatasetManifest.Entry;
+import com.github.rinde.dynurg.DatasetManifest.Selector;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests {@link DatasetManifest} and its {@link Selector}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class DatasetManifestTest {
+  static final DatasetManifest MANIFEST = manifest();
+
+  static DatasetManifest manifest() {
+    final ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    final String[] classes = {"5-0.20", "5-0.50", "20-0.80", "35-0.20"};
+    for (int i = 0; i < classes.length; i++) {
+      for (int j = 0; j < 3; j++) {
+        entries.add(new Entry(classes[i], "#" + j, .1 * i + .01 * j,
+            60000d * i, 1000d, j == 2 ? "HOMOGENOUS" : "SINE"));
+      }
+    }
+    return new DatasetManifest(entries.build());
+  }
+
+  /**
+   * The levels are parsed from the problem class.
+   */
+  @Test
+  public void levels() {
+    assertEquals(35, DatasetManifest.urgencyLevel("35-0.20"));
+    assertEquals(.2, DatasetManifest.dynamismLevel("35-0.20"), 0d);
+    final Entry entry = MANIFEST.entries().get(4);
+    assertEquals("5-0.50#1", entry.scenarioId());
+    assertEquals("5-0.50#1.scen", entry.fileName());
+    assertEquals(1, entry.instance);
+    assertEquals(5, entry.urgency);
+    assertEquals(.5, entry.dynamismLevel, 0d);
+    assertEquals("SINE", DatasetManifest.timeSeriesType("sine Poisson"));
+  }
+
+  /**
+   * Without conditions all scenarios are selected.
+   */
+  @Test
+  public void selectAll() {
+    assertEquals(MANIFEST.entries(),
+        DatasetManifest.selector().select(MANIFEST));
+  }
+
+  /**
+   * The ranges include their bounds.
+   */
+  @Test
+  public void ranges() {
+    assertEquals(ImmutableSet.of("5-0.20", "5-0.50", "35-0.20"),
+        problemClasses(DatasetManifest.selector().dynamism(.2, .5)));
+    assertEquals(ImmutableSet.of("5-0.50", "20-0.80"),
+        problemClasses(DatasetManifest.selector().dynamismLevels(.5, .8)));
+    assertEquals(ImmutableSet.of("20-0.80", "35-0.20"),
+        problemClasses(DatasetManifest.selector().urgency(20, 35)));
+    assertEquals(ImmutableSet.of("5-0.20", "5-0.50", "20-0.80"),
+        problemClasses(DatasetManifest.selector().maxUrgency(20)));
+  }
+
+  /**
+   * All conditions must hold, the order of the manifest is kept.
+   */
+  @Test
+  public void combined() {
+    final List<Entry> selected = DatasetManifest.selector()
+        .dynamism(.2, .6)
+        .maxUrgency(20)
+        .instances(2)
+        .select(MANIFEST);
+    assertEquals(ImmutableList.of("5-0.20#0", "5-0.20#1", "5-0.50#0",
+        "5-0.50#1"), scenarioIds(selected));
+
+    assertEquals(ImmutableList.of("5-0.20#2", "35-0.20#2"),
+        scenarioIds(DatasetManifest.selector()
+            .timeSeries("HOMOGENOUS")
+            .dynamismLevels(.2)
+            .select(MANIFEST)));
+  }
+
+  /**
+   * The selection is resolved to files without listing the directory, the
+   * path filter accepts the same files.
+   */
+  @Test
+  public void files() {
+    final Path dir = Paths.get("dataset");
+    final Selector selector = DatasetManifest.selector()
+        .urgency(35, 35)
+        .instances(2);
+    assertEquals(ImmutableSet.of(dir.resolve("35-0.20#0.scen"),
+        dir.resolve("35-0.20#1.scen")), selector.files(MANIFEST, dir));
+
+    final Predicate<Path> filter = selector.pathFilter(MANIFEST);
+    assertTrue(filter.apply(dir.resolve("35-0.20#1.scen")));
+    assertFalse(filter.apply(dir.resolve("35-0.20#2.scen")));
+    assertFalse(filter.apply(dir.resolve("5-0.20#0.scen")));
+  }
+
+  /**
+   * A written manifest is read back unchanged.
+   * @throws IOException If the file can not be used.
+   */
+  @Test
+  public void writeAndRead() throws IOException {
+    final Path file = Files.createTempFile("manifest", ".csv");
+    try {
+      MANIFEST.write(file);
+      final DatasetManifest read = DatasetManifest.read(file);
+      assertEquals(MANIFEST.size(), read.size());
+      for (int i = 0; i < MANIFEST.size(); i++) {
+        final Entry expected = MANIFEST.entries().get(i);
+        final Entry actual = read.entries().get(i);
+        assertEquals(expected.scenarioId(), actual.scenarioId());
+        assertEquals(expected.dynamism, actual.dynamism, 0d);
+        assertEquals(expected.urgencyMean, actual.urgencyMean, 0d);
+        assertEquals(expected.urgencySd, actual.urgencySd, 0d);
+        assertEquals(expected.timeSeries, actual.timeSeries);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * A file with another header is not a manifest.
+   * @throws IOException If the file is not a manifest.
+   */
+  @Test(expected = IOException.class)
+  public void readInvalid() throws IOException {
+    final Path file = Files.createTempFile("manifest", ".csv");
+    try {
+      Files.write(file, "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+      DatasetManifest.read(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  static ImmutableSet<String> problemClasses(Selector selector) {
+    final ImmutableSet.Builder<String> classes = ImmutableSet.builder();
+    for (final Entry e : selector.select(MANIFEST)) {
+      classes.add(e.problemClass);
+    }
+    return classes.build();
+  }
+
+  static ImmutableList<String> scenarioIds(List<Entry> entries) {
+    final ImmutableList.Builder<String> ids = ImmutableList.builder();
+    for (final Entry e : entries) {
+      ids.add(e.scenarioId());
+    }
+    return ids.build();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.scenario.measure.Metrics;
+import com.google.common.primitives.Doubles;
+
+/**
+ * Tests {@link DynamismKernel}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class DynamismKernelTest {
+  static final double LENGTH_OF_DAY = 1000d;
+
+  /**
+   * The results are identical (up to the last bit) to
+   * {@link Metrics#measureDynamism(Iterable, double)}, for all overloads.
+   */
+  @Test
+  public void sameAsMetrics() {
+    final Random rng = new Random(123L);
+    // a small capacity such that the buffer is grown
+    final DynamismKernel kernel = new DynamismKernel(4);
+    for (int i = 0; i < 200; i++) {
+      final int num = 2 + rng.nextInt(100);
+      final double[] times = new double[num];
+      final long[] longTimes = new long[num];
+      for (int j = 0; j < num; j++) {
+        // clustered times, such that deviations accumulate
+        longTimes[j] = rng.nextInt(4) == 0 ? rng.nextInt(1000)
+            : 500 + rng.nextInt(20);
+        times[j] = longTimes[j];
+      }
+      final double[] copy = times.clone();
+      final List<Double> list = Doubles.asList(times.clone());
+      final double expected = Metrics.measureDynamism(list, LENGTH_OF_DAY);
+
+      assertEquals(expected, kernel.measure(times, LENGTH_OF_DAY), 0d);
+      assertEquals(expected, kernel.measure(longTimes, num, LENGTH_OF_DAY),
+          0d);
+      assertEquals(expected, kernel.measure(list, LENGTH_OF_DAY), 0d);
+      // the input is not modified
+      assertArrayEquals(copy, times, 0d);
+
+      assertEquals(expected,
+          DynamismKernel.measureInPlace(times, num, LENGTH_OF_DAY), 0d);
+      Arrays.sort(copy);
+      assertArrayEquals(copy, times, 0d);
+    }
+  }
+
+  /**
+   * Only the first <code>numTimes</code> values are used.
+   */
+  @Test
+  public void prefix() {
+    final DynamismKernel kernel = new DynamismKernel();
+    final double[] times = {100d, 300d, 200d, 999d, 0d};
+    assertEquals(kernel.measure(new double[] {100d, 300d, 200d},
+        LENGTH_OF_DAY), kernel.measure(times, 3, LENGTH_OF_DAY), 0d);
+  }
+
+  /**
+   * At least two times are required.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void tooFewTimes() {
+    new DynamismKernel().measure(new double[] {1d}, LENGTH_OF_DAY);
+  }
+
+  /**
+   * Times outside the day are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void timeOutsideDay() {
+    new DynamismKernel().measure(new double[] {1d, LENGTH_OF_DAY},
+        LENGTH_OF_DAY);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.rinde.dynurg.OnlineDynamism.RollingWindow;
+
+/**
+ * Compares {@link OnlineDynamism} with {@link DynamismKernel}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class OnlineDynamismTest {
+  static final double DAY_LENGTH = 1000d;
+  static final int NUM_EVENTS = 100;
+  // the expected inter arrival time of the tracker
+  static final double EXPECTED_IAT = DAY_LENGTH / NUM_EVENTS;
+  static final double EPSILON = 1e-9;
+
+  final DynamismKernel kernel = new DynamismKernel();
+
+  /**
+   * With the expected number of arrivals, the dynamism equals the dynamism
+   * computed by {@link DynamismKernel}, independent of the order in which the
+   * arrivals are added.
+   */
+  @Test
+  public void allArrivals() {
+    final Random rng = new Random(123L);
+    for (int i = 0; i < 200; i++) {
+      final double[] times = uniform(rng, NUM_EVENTS, 0d, DAY_LENGTH);
+      final OnlineDynamism tracker = new OnlineDynamism(DAY_LENGTH,
+          NUM_EVENTS);
+      for (final double t : times) {
+        tracker.add(t);
+      }
+      assertEquals(NUM_EVENTS, tracker.size());
+      assertEquals(kernel.measure(times, DAY_LENGTH), tracker.dynamism(),
+          EPSILON);
+    }
+  }
+
+  /**
+   * A range query returns the dynamism of the arrivals in the range only, and
+   * leaves the tracker unchanged.
+   */
+  @Test
+  public void rangeQuery() {
+    final Random rng = new Random(456L);
+    for (int i = 0; i < 200; i++) {
+      // four times the expected density, such that the arrivals of a range
+      // fit in the day length of the kernel
+      final double[] times = uniform(rng, 4 * NUM_EVENTS, 0d, DAY_LENGTH);
+      final OnlineDynamism tracker = new OnlineDynamism(DAY_LENGTH,
+          NUM_EVENTS);
+      for (final double t : times) {
+        tracker.add(t);
+      }
+      final double from = rng.nextDouble() * DAY_LENGTH / 2d;
+      final double to = from + 50d + rng.nextDouble() * DAY_LENGTH / 2d;
+
+      assertEquals(expected(times, from, to), tracker.dynamism(from, to),
+          EPSILON);
+      assertEquals(4 * NUM_EVENTS, tracker.size());
+      // a second query must give the same answer
+      assertEquals(expected(times, from, to), tracker.dynamism(from, to),
+          EPSILON);
+    }
+  }
+
+  /**
+   * A range with less than two arrivals is rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void rangeQueryTooFewArrivals() {
+    final OnlineDynamism tracker = new OnlineDynamism(DAY_LENGTH, NUM_EVENTS);
+    tracker.add(10d);
+    tracker.add(20d);
+    tracker.add(30d);
+    tracker.dynamism(15d, 25d);
+  }
+
+  /**
+   * Removing an arrival restores the previous dynamism.
+   */
+  @Test
+  public void remove() {
+    final Random rng = new Random(789L);
+    final double[] times = uniform(rng, NUM_EVENTS, 0d, DAY_LENGTH);
+    final OnlineDynamism tracker = new OnlineDynamism(DAY_LENGTH, NUM_EVENTS);
+    for (final double t : times) {
+      tracker.add(t);
+    }
+    final double before = tracker.dynamism();
+    tracker.add(500d);
+    assertTrue(tracker.remove(500d));
+    assertFalse(tracker.remove(500d));
+    assertEquals(before, tracker.dynamism(), EPSILON);
+  }
+
+  /**
+   * The dynamism of a rolling window equals the dynamism of the arrivals in
+   * [latest - windowLength, latest].
+   */
+  @Test
+  public void rollingWindow() {
+    final Random rng = new Random(1011L);
+    final double windowLength = 200d;
+    final double[] times = uniform(rng, 4 * NUM_EVENTS, 0d, DAY_LENGTH);
+    Arrays.sort(times);
+    final RollingWindow window = OnlineDynamism.rollingWindow(DAY_LENGTH,
+        NUM_EVENTS, windowLength);
+    for (int i = 0; i < times.length; i++) {
+      assertTrue(window.add(times[i]));
+      final double from = times[i] - windowLength;
+      final double[] inWindow = between(times, from,
+          Math.nextUp(times[i]));
+      assertEquals(inWindow.length, window.size());
+      if (inWindow.length >= 2) {
+        assertEquals(expected(times, from, Math.nextUp(times[i])),
+            window.dynamism(), EPSILON);
+      }
+    }
+    // an arrival before the window is ignored
+    assertFalse(window.add(times[times.length - 1] - windowLength - 1d));
+  }
+
+  // the dynamism as computed by the kernel of the times in [from,to), with
+  // the expected inter arrival time of the tracker
+  double expected(double[] times, double from, double to) {
+    final double[] range = between(times, from, to);
+    Arrays.sort(range);
+    // the dynamism only depends on the inter arrival times
+    final double first = range[0];
+    for (int i = 0; i < range.length; i++) {
+      range[i] -= first;
+    }
+    final double lengthOfDay = range.length * EXPECTED_IAT;
+    assertTrue(range[range.length - 1] < lengthOfDay);
+    return kernel.measure(range, lengthOfDay);
+  }
+
+  static double[] between(double[] times, double from, double to) {
+    final double[] result = new double[times.length];
+    int num = 0;
+    for (final double t : times) {
+      if (t >= from && t < to) {
+        result[num] = t;
+        num++;
+      }
+    }
+    return Arrays.copyOf(result, num);
+  }
+
+  static double[] uniform(Random rng, int num, double from, double to) {
+    final double[] times = new double[num];
+    for (int i = 0; i < num; i++) {
+      times[i] = from + rng.nextDouble() * (to - from);
+    }
+    return times;
+  }
+}
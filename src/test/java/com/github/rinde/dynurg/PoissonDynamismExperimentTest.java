@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.github.rinde.dynurg.PoissonDynamismExperiment.ArrivalProcess;
+import com.github.rinde.dynurg.PoissonDynamismExperiment.DynamismSummary;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests the parallel histogram mode of {@link PoissonDynamismExperiment}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class PoissonDynamismExperimentTest {
+  // more than two chunks, the last one is incomplete
+  static final long REPETITIONS = 25123;
+
+  /**
+   * The summary of the repetitions must not depend on the number of threads.
+   */
+  @Test
+  public void sameResultForAnyNumberOfThreads() {
+    final DynamismSummary single = summarize(1);
+    final DynamismSummary multi = summarize(4);
+
+    assertEquals(REPETITIONS, single.numSeries);
+    assertEquals(REPETITIONS, single.histogram.totalCount());
+    assertEquals(single.numSeries, multi.numSeries);
+    assertEquals(single.sumNumEvents, multi.sumNumEvents);
+    assertEquals(single.sumSquaredNumEvents, multi.sumSquaredNumEvents);
+    for (int i = 0; i < single.histogram.numBins(); i++) {
+      assertEquals(single.histogram.count(i), multi.histogram.count(i));
+    }
+    assertEquals(single.histogram.underflow(), multi.histogram.underflow());
+    assertEquals(single.histogram.overflow(), multi.histogram.overflow());
+    for (final double q : PoissonDynamismExperiment.QUANTILES) {
+      assertEquals(single.sketch.quantile(q), multi.sketch.quantile(q), 0d);
+    }
+  }
+
+  /**
+   * Values outside the bins, such as a dynamism of exactly 1, are written in
+   * the first and last rows of the histogram file.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void writeOutOfBounds() throws IOException {
+    final DynamismSummary summary = new DynamismSummary();
+    for (final double dynamism : new double[] {.5, 1d, 1d}) {
+      summary.histogram.add(dynamism);
+      summary.sketch.add(dynamism);
+    }
+    final File dir = Files.createTempDir();
+    final File histogram = new File(dir, "histogram.csv");
+    final File quantiles = new File(dir, "quantiles.csv");
+    try {
+      summary.write(histogram, quantiles);
+      final List<String> lines = Files.readLines(histogram, Charsets.UTF_8);
+      assertEquals(summary.histogram.numBins() + 3, lines.size());
+      assertEquals("-Infinity,0.0,0", lines.get(1));
+      assertEquals("1.0,Infinity,2", lines.get(lines.size() - 1));
+      long total = 0;
+      for (final String line : lines.subList(1, lines.size())) {
+        total += Long.parseLong(line.substring(line.lastIndexOf(',') + 1));
+      }
+      assertEquals(3, total);
+    } finally {
+      histogram.delete();
+      quantiles.delete();
+      dir.delete();
+    }
+  }
+
+  static DynamismSummary summarize(int threads) {
+    final ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      return PoissonDynamismExperiment.summarize(ArrivalProcess.HOMOG_POISSON,
+          123L, REPETITIONS, pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link QuantileSketch}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class QuantileSketchTest {
+  static final double ACCURACY = .01;
+  static final double[] QUANTILES = {0d, .01, .1, .25, .5, .75, .9, .99, 1d};
+
+  /**
+   * Each estimate is within the relative accuracy of the exact quantile.
+   */
+  @Test
+  public void accuracy() {
+    final double[] values = values(new Random(123L), 10000);
+    final QuantileSketch sketch = sketch();
+    for (final double v : values) {
+      sketch.add(v);
+    }
+    Arrays.sort(values);
+    assertEquals(values.length, sketch.count());
+    assertEquals(values[0], sketch.min(), 0d);
+    assertEquals(values[values.length - 1], sketch.max(), 0d);
+    for (final double q : QUANTILES) {
+      final double exact = values[(int) Math.floor(q * (values.length - 1))];
+      final double estimate = sketch.quantile(q);
+      assertTrue(q + ": " + estimate + " vs " + exact,
+          Math.abs(estimate - exact) <= ACCURACY * exact);
+    }
+  }
+
+  /**
+   * Merging gives exactly the same result as adding all values to one
+   * sketch, regardless of the order.
+   */
+  @Test
+  public void merge() {
+    final double[] values = values(new Random(456L), 3000);
+    final QuantileSketch all = sketch();
+    final QuantileSketch[] parts = {sketch(), sketch(), sketch()};
+    for (int i = 0; i < values.length; i++) {
+      all.add(values[i]);
+      parts[i % 3].add(values[i]);
+    }
+    final QuantileSketch forward = sketch();
+    final QuantileSketch backward = sketch();
+    for (int i = 0; i < parts.length; i++) {
+      forward.merge(parts[i]);
+      backward.merge(parts[parts.length - 1 - i]);
+    }
+    for (final QuantileSketch merged : new QuantileSketch[] {forward,
+        backward}) {
+      assertEquals(all.count(), merged.count());
+      assertEquals(all.min(), merged.min(), 0d);
+      assertEquals(all.max(), merged.max(), 0d);
+      for (final double q : QUANTILES) {
+        assertEquals(all.quantile(q), merged.quantile(q), 0d);
+      }
+    }
+    // merging an empty sketch changes nothing
+    forward.merge(sketch());
+    assertEquals(all.count(), forward.count());
+    assertEquals(all.min(), forward.min(), 0d);
+  }
+
+  /**
+   * Values below the minimum value are counted as zero, the exact minimum is
+   * still returned.
+   */
+  @Test
+  public void smallValues() {
+    final QuantileSketch sketch = sketch();
+    sketch.add(0d);
+    sketch.add(.0001);
+    sketch.add(5d);
+    assertEquals(0d, sketch.quantile(0d), 0d);
+    assertEquals(0d, sketch.quantile(.5), 0d);
+    assertEquals(5d, sketch.quantile(1d), 0d);
+  }
+
+  /**
+   * Sketches with other parameters can not be merged.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeOtherParameters() {
+    sketch().merge(new QuantileSketch(ACCURACY, .01, 1e6));
+  }
+
+  /**
+   * Negative values are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeValue() {
+    sketch().add(-1d);
+  }
+
+  /**
+   * An empty sketch has no quantiles.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void empty() {
+    sketch().quantile(.5);
+  }
+
+  static QuantileSketch sketch() {
+    return new QuantileSketch(ACCURACY, .001, 1e6);
+  }
+
+  // log-normally distributed values, spanning several orders of magnitude
+  static double[] values(Random rng, int num) {
+    final double[] values = new double[num];
+    for (int i = 0; i < num; i++) {
+      values[i] = Math.exp(2d * rng.nextGaussian());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.dynurg.ResultWriter.ColumnType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link ResultWriter}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class ResultWriterTest {
+  File dir;
+
+  /**
+   * Creates a temporary directory.
+   */
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+  }
+
+  /**
+   * Removes the temporary directory.
+   */
+  @After
+  public void tearDown() {
+    delete(dir);
+  }
+
+  /**
+   * The rows written in CSV format are read back by
+   * {@link ResultWriter#readCsv(File)}, all lines end with the same line
+   * separator.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void csvRoundTrip() throws IOException {
+    final ResultWriter writer = builder().batchSize(2).build();
+    for (int i = 0; i < 5; i++) {
+      writer.write("a", asList(i, 10 * i));
+    }
+    writer.close();
+
+    final File file = new File(dir, "a.csv");
+    final ImmutableList.Builder<ImmutableMap<String, String>> expected =
+        ImmutableList.builder();
+    for (int i = 0; i < 5; i++) {
+      expected.add(row(Integer.toString(i), Integer.toString(10 * i)));
+    }
+    assertEquals(expected.build(), ResultWriter.readCsv(file));
+    assertEquals("x,y\n0,0\n1,10\n2,20\n3,30\n4,40\n",
+        Files.toString(file, Charsets.UTF_8));
+  }
+
+  /**
+   * Appending keeps the existing rows and removes an incomplete last line.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void append() throws IOException {
+    final File file = new File(dir, "a.csv");
+    Files.write("x,y\n1,2\n3,", file, Charsets.UTF_8);
+
+    final ResultWriter writer = builder().append().build();
+    writer.write("a", asList(5, 6));
+    writer.close();
+
+    assertEquals(ImmutableList.of(row("1", "2"), row("5", "6")),
+        ResultWriter.readCsv(file));
+  }
+
+  /**
+   * Rows can not be appended to a file with other columns, they would be
+   * ignored when the file is read.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void appendOtherColumns() throws IOException {
+    final File file = new File(dir, "a.csv");
+    final String contents = "x\n1\n";
+    Files.write(contents, file, Charsets.UTF_8);
+
+    final ResultWriter writer = builder().append().build();
+    try {
+      writer.write("a", asList(5, 6));
+      fail();
+    } catch (final IOException e) {
+      // expected
+    }
+    writer.close();
+    assertEquals(contents, Files.toString(file, Charsets.UTF_8));
+  }
+
+  /**
+   * An incomplete last line is ignored, an inconsistent complete line is
+   * rejected.
+   * @throws IOException If a file can not be used.
+   */
+  @Test
+  public void readCsv() throws IOException {
+    final File file = new File(dir, "a.csv");
+    Files.write("x,y\n1,2\n3", file, Charsets.UTF_8);
+    assertEquals(ImmutableList.of(row("1", "2")), ResultWriter.readCsv(file));
+
+    Files.write("x,y\n1,2\n3\n4,5\n", file, Charsets.UTF_8);
+    try {
+      ResultWriter.readCsv(file);
+      fail();
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  ResultWriter.Builder builder() {
+    return ResultWriter.builder(dir)
+        .addColumn("x", ColumnType.INT)
+        .addColumn("y", ColumnType.INT);
+  }
+
+  static ImmutableMap<String, String> row(String x, String y) {
+    return ImmutableMap.of("x", x, "y", y);
+  }
+
+  static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
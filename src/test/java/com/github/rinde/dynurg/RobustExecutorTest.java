@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.github.rinde.dynurg.RobustExecutor.Listener;
+import com.github.rinde.dynurg.RobustExecutor.Node;
+import com.github.rinde.dynurg.RobustExecutor.Report;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Range;
+
+/**
+ * Tests {@link RobustExecutor} with the stand-in nodes of
+ * {@link SimulationNodes}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class RobustExecutorTest {
+  static final List<Integer> TASKS = ImmutableList.copyOf(ContiguousSet
+      .create(Range.closedOpen(0, 200), DiscreteDomain.integers()));
+
+  static final Node<Integer, Integer> LOCAL = new Node<Integer, Integer>() {
+    @Override
+    public Integer execute(Integer task) {
+      return task * 2;
+    }
+  };
+
+  /**
+   * Each task gets exactly one result, despite a slow, a failing and a dead
+   * node.
+   */
+  @Test(timeout = 60000L)
+  public void exactlyOneResultPerTask() throws InterruptedException {
+    final RobustExecutor<Integer, Integer> executor = RobustExecutor
+        .<Integer, Integer> builder()
+        .addNode(LOCAL)
+        .addNode(SimulationNodes.slow(LOCAL, 5))
+        .addNode(SimulationNodes.slow(LOCAL, 300))
+        .addNode(SimulationNodes.failing(LOCAL, .3, 123L))
+        .addNode(SimulationNodes.<Integer, Integer> dead())
+        .timeout(100)
+        .maxAttempts(10)
+        // without speculation the task of the dead node can only time out
+        .speculateAfter(1d)
+        .build();
+
+    final Counter counter = new Counter();
+    final Report<Integer, Integer> report = executor.execute(TASKS, counter);
+
+    assertTrue(report.failures.isEmpty());
+    assertEquals(TASKS.size(), report.results.size());
+    assertEquals(TASKS.size(), counter.received.size());
+    for (final Integer task : TASKS) {
+      assertEquals(1, counter.received.count(task));
+      assertEquals(task * 2, (int) report.results.get(task));
+    }
+    assertTrue(report.timeouts >= 1);
+    assertTrue(report.retries > report.timeouts);
+  }
+
+  /**
+   * The execution ends when all nodes are dead, the remaining tasks fail.
+   */
+  @Test(timeout = 60000L)
+  public void failWhenAllNodesAreDead() throws InterruptedException {
+    final RobustExecutor<Integer, Integer> executor = RobustExecutor
+        .<Integer, Integer> builder()
+        .addNode(SimulationNodes.<Integer, Integer> dead())
+        .addNode(SimulationNodes.<Integer, Integer> dead())
+        .timeout(50)
+        .unresponsiveTimeout(200)
+        .build();
+
+    final Counter counter = new Counter();
+    final Report<Integer, Integer> report = executor.execute(TASKS, counter);
+
+    assertTrue(report.results.isEmpty());
+    assertTrue(counter.received.isEmpty());
+    assertEquals(TASKS.size(), report.failures.size());
+    for (final Throwable failure : report.failures.values()) {
+      assertTrue(failure instanceof TimeoutException);
+    }
+  }
+
+  static class Counter implements Listener<Integer, Integer> {
+    final Multiset<Integer> received = HashMultiset.create();
+
+    @Override
+    public void receive(Integer task, Integer result) {
+      received.add(task);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
+import org.junit.Test;
+
+/**
+ * Tests {@link SequentialStopping}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class SequentialStoppingTest {
+  final SequentialStopping rule = SequentialStopping.builder()
+      .relativeWidth(.1)
+      .minRepetitions(5)
+      .maxRepetitions(30)
+      .build();
+
+  /**
+   * The half width is the Student t quantile times the standard error.
+   */
+  @Test
+  public void halfWidth() {
+    // t quantile of .975 with 9 degrees of freedom
+    final double t = 2.262157;
+    assertEquals(t * 3d / Math.sqrt(10), rule.halfWidth(summary(100d, 3d, 10)),
+        1e-5);
+  }
+
+  /**
+   * The minimum number of repetitions is always performed.
+   */
+  @Test
+  public void belowMinimum() {
+    assertEquals(3, rule.additionalRepetitions(summary(100d, 50d, 2)));
+  }
+
+  /**
+   * The repetitions stop at the maximum, even if the interval is too wide.
+   */
+  @Test
+  public void atMaximum() {
+    assertEquals(0, rule.additionalRepetitions(summary(100d, 50d, 30)));
+  }
+
+  /**
+   * The repetitions stop when the interval is narrow enough.
+   */
+  @Test
+  public void narrowInterval() {
+    // half width .72 <= 5
+    assertEquals(0, rule.additionalRepetitions(summary(100d, 1d, 10)));
+  }
+
+  /**
+   * The number of additional repetitions is estimated from the variance and
+   * limited by the maximum.
+   */
+  @Test
+  public void wideInterval() {
+    // half width 5.79 with 10 repetitions, (5.79 / 5)^2 * 10 = 13.4
+    assertEquals(4, rule.additionalRepetitions(summary(100d, 8.1, 10)));
+    // the estimate exceeds the maximum
+    assertEquals(25, rule.additionalRepetitions(summary(100d, 20d, 5)));
+  }
+
+  /**
+   * With a mean of zero no relative width can be reached, the maximum number
+   * of repetitions is performed.
+   */
+  @Test
+  public void zeroMean() {
+    assertEquals(20, rule.additionalRepetitions(summary(0d, 1d, 10)));
+  }
+
+  /**
+   * A relative width is required.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void noRelativeWidth() {
+    SequentialStopping.builder().build();
+  }
+
+  /**
+   * The maximum may not be below the minimum.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void maximumBelowMinimum() {
+    SequentialStopping.builder()
+        .relativeWidth(.1)
+        .minRepetitions(10)
+        .maxRepetitions(5)
+        .build();
+  }
+
+  static StatisticalSummary summary(double mean, double sd, long n) {
+    return new StatisticalSummaryValues(mean, sd * sd, n, mean, mean,
+        mean * n);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.dynurg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SplitMix64}.
+ * @author Rinde van Lon <rinde.vanlon@cs.kuleuven.be>
+ */
+public class SplitMix64Test {
+
+  /**
+   * The numbers are the same as those of the reference implementation (e.g.
+   * <code>java.util.SplittableRandom</code> of Java 8).
+   */
+  @Test
+  public void referenceValues() {
+    assertEquals(0xe220a8397b1dcdafL, new SplitMix64(0L).nextLong());
+    final SplitMix64 rng = new SplitMix64(123L);
+    assertEquals(0xb4dc9bd462de412bL, rng.nextLong());
+    assertEquals(0xfa023ce9f06fb77cL, rng.nextLong());
+    assertEquals(0xdc12d311d371cbe8L, rng.nextLong());
+    assertEquals(0.7064912217637067, new SplitMix64(123L).nextDouble(), 0d);
+  }
+
+  /**
+   * Setting the seed restarts the stream.
+   */
+  @Test
+  public void setSeed() {
+    final SplitMix64 rng = new SplitMix64(123L);
+    final long first = rng.nextLong();
+    rng.nextGaussian();
+    rng.setSeed(123L);
+    assertEquals(first, rng.nextLong());
+    rng.setSeed(123);
+    assertEquals(first, rng.nextLong());
+  }
+
+  /**
+   * Values are in the bounds of the methods of the generator.
+   */
+  @Test
+  public void bounds() {
+    final SplitMix64 rng = new SplitMix64(456L);
+    for (int i = 0; i < 10000; i++) {
+      final double d = rng.nextDouble();
+      assertTrue(d >= 0d && d < 1d);
+      final int n = rng.nextInt(7);
+      assertTrue(n >= 0 && n < 7);
+    }
+  }
+
+  /**
+   * A split generator has its own stream, splitting is deterministic.
+   */
+  @Test
+  public void split() {
+    final SplitMix64 parent = new SplitMix64(789L);
+    final SplitMix64 child = parent.split();
+    final SplitMix64 other = new SplitMix64(789L).split();
+    for (int i = 0; i < 100; i++) {
+      final long c = child.nextLong();
+      assertEquals(c, other.nextLong());
+      assertNotEquals(c, parent.nextLong());
+    }
+  }
+}